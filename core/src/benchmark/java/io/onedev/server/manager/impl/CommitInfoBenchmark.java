@@ -0,0 +1,56 @@
+package io.onedev.server.manager.impl;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare bulk contribution lookup with per user and path lookup used by reviewer suggestion 
+ * before, against the synthetic store of {@link DefaultCommitInfoManagerTest}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class CommitInfoBenchmark {
+
+	private final DefaultCommitInfoManagerTest fixture = new DefaultCommitInfoManagerTest();
+	
+	private Map<String, Integer> pathWeights;
+	
+	@Setup
+	public void setup() {
+		fixture.before();
+		pathWeights = fixture.getPathWeights();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		fixture.after();
+	}
+	
+	@Benchmark
+	public Map<Long, Long> oneByOne() {
+		return fixture.getContributionsOneByOne(pathWeights);
+	}
+	
+	@Benchmark
+	public Map<Long, Long> bulk() {
+		return fixture.commitInfoManager.getContributions(fixture.project, fixture.users, pathWeights);
+	}
+	
+}
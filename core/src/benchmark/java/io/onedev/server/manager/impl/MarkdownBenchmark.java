@@ -0,0 +1,82 @@
+package io.onedev.server.manager.impl;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.onedev.server.manager.CacheManager;
+import io.onedev.server.persistence.dao.Dao;
+
+/**
+ * Simulate activity page of an issue or pull request with many comments, each rendered and
+ * processed once per page request. The uncached case creates a markdown manager for each
+ * comment, which rebuilds parser and renderer and starts with empty caches as before.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class MarkdownBenchmark {
+
+	@Param({"50"})
+	private int comments;
+
+	private String[] contents;
+
+	private Dao dao;
+
+	private CacheManager cacheManager;
+
+	private DefaultMarkdownManager markdownManager;
+
+	@Setup
+	public void setup() {
+		contents = new String[comments];
+		for (int i=0; i<contents.length; i++) {
+			StringBuilder builder = new StringBuilder();
+			builder.append("## Comment ").append(i).append("\n\n");
+			for (int j=0; j<20; j++)
+				builder.append("Line ").append(j).append(" with **bold**, `code` and http://example.com/").append(j).append("\n");
+			builder.append("\n- [ ] task one\n- [x] task two\n");
+			contents[i] = builder.toString();
+		}
+		dao = Mockito.mock(Dao.class);
+		cacheManager = Mockito.mock(CacheManager.class);
+		markdownManager = newManager();
+	}
+
+	private DefaultMarkdownManager newManager() {
+		return new DefaultMarkdownManager(dao, cacheManager, new HashSet<>(), new HashSet<>());
+	}
+
+	@Benchmark
+	public void cachedPage(Blackhole blackhole) {
+		for (String content: contents)
+			blackhole.consume(markdownManager.process(null, markdownManager.render(content), null));
+	}
+
+	@Benchmark
+	public void uncachedPage(Blackhole blackhole) {
+		for (String content: contents) {
+			DefaultMarkdownManager markdownManager = newManager();
+			blackhole.consume(markdownManager.process(null, markdownManager.render(content), null));
+		}
+	}
+
+}
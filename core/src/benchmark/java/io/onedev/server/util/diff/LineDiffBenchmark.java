@@ -0,0 +1,105 @@
+package io.onedev.server.util.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare line diff of {@link DiffUtils} with the character based {@link DiffMatchPatch} it
+ * replaces. Lines are mapped to characters for {@link DiffMatchPatch} the same way as before,
+ * and this mapping is included in measurement.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class LineDiffBenchmark {
+
+	@Param({"1000", "10000", "50000"})
+	private int lines;
+
+	/*
+	 * Percentage of lines being deleted, inserted or modified
+	 */
+	@Param({"1", "10"})
+	private int changes;
+
+	private List<String> oldLines;
+
+	private List<String> newLines;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(lines);
+		oldLines = new ArrayList<>();
+		for (int i=0; i<lines; i++) {
+			// Mix in repeated lines as source files have many of them
+			if (i % 5 == 0)
+				oldLines.add("}");
+			else
+				oldLines.add("statement" + random.nextInt(lines) + "();");
+		}
+		newLines = new ArrayList<>();
+		for (String line: oldLines) {
+			if (random.nextInt(100) < changes) {
+				switch (random.nextInt(3)) {
+				case 0:
+					break;
+				case 1:
+					newLines.add(line);
+					newLines.add("inserted" + random.nextInt() + "();");
+					break;
+				default:
+					newLines.add(line + " // modified");
+				}
+			} else {
+				newLines.add(line);
+			}
+		}
+	}
+
+	@Benchmark
+	public List<DiffBlock<String>> sequenceDiff() {
+		return DiffUtils.diff(oldLines, newLines);
+	}
+
+	@Benchmark
+	public List<DiffMatchPatch.Diff> diffMatchPatch() {
+		Map<String, Character> chars = new HashMap<>();
+		String chars1 = linesToChars(oldLines, chars);
+		String chars2 = linesToChars(newLines, chars);
+		return new DiffMatchPatch().diff_main(chars1, chars2, false);
+	}
+
+	private String linesToChars(List<String> lines, Map<String, Character> chars) {
+		StringBuilder builder = new StringBuilder();
+		for (String line: lines) {
+			Character ch = chars.get(line);
+			if (ch == null) {
+				ch = (char) chars.size();
+				chars.put(line, ch);
+			}
+			builder.append(ch.charValue());
+		}
+		return builder.toString();
+	}
+
+}
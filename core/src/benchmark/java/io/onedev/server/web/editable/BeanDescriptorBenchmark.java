@@ -0,0 +1,60 @@
+package io.onedev.server.web.editable;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.onedev.server.model.support.setting.MailSetting;
+
+/**
+ * Measure bean introspection performed when constructing a {@link BeanEditor}, with and without
+ * cached {@link BeanIntrospector}. Wicket components themselves are not constructed as that
+ * requires a running application, and the cost is the same in both cases.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class BeanDescriptorBenchmark {
+
+	private final MailSetting bean = new MailSetting();
+
+	@Benchmark
+	public void cached(Blackhole blackhole) {
+		describe(blackhole);
+	}
+
+	@Benchmark
+	public void uncached(Blackhole blackhole) {
+		BeanIntrospector.invalidate(MailSetting.class);
+		describe(blackhole);
+	}
+
+	/*
+	 * Access property descriptors the same way as BeanEditor does when populating its properties
+	 */
+	private void describe(Blackhole blackhole) {
+		BeanDescriptor beanDescriptor = new BeanDescriptor(bean.getClass());
+		for (PropertyDescriptor propertyDescriptor: beanDescriptor.getPropertyDescriptors()) {
+			if (!propertyDescriptor.isPropertyExcluded()) {
+				blackhole.consume(propertyDescriptor.getDisplayName());
+				blackhole.consume(propertyDescriptor.isPropertyRequired());
+				blackhole.consume(propertyDescriptor.getDescription());
+				blackhole.consume(propertyDescriptor.getPropertyValue(bean));
+			}
+		}
+	}
+
+}
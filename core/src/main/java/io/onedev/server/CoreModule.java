@@ -6,6 +6,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 
 import javax.inject.Singleton;
 import javax.persistence.EntityManager;
@@ -78,15 +79,24 @@ import io.onedev.server.command.RestoreDBCommand;
 import io.onedev.server.command.UpgradeCommand;
 import io.onedev.server.exception.OneException;
 import io.onedev.server.git.GitFilter;
+import io.onedev.server.git.AheadBehindCache;
+import io.onedev.server.git.ArchiveCache;
+import io.onedev.server.git.BlobCache;
+import io.onedev.server.git.CommitCache;
+import io.onedev.server.git.DiffCache;
 import io.onedev.server.git.GitPostReceiveCallback;
 import io.onedev.server.git.GitPreReceiveCallback;
+import io.onedev.server.git.MergeResultCache;
+import io.onedev.server.git.RefCache;
 import io.onedev.server.git.config.GitConfig;
 import io.onedev.server.manager.AttachmentManager;
 import io.onedev.server.manager.BatchWorkManager;
+import io.onedev.server.manager.BlameManager;
 import io.onedev.server.manager.BuildInfoManager;
 import io.onedev.server.manager.BuildManager;
 import io.onedev.server.manager.BuildQuerySettingManager;
 import io.onedev.server.manager.CacheManager;
+import io.onedev.server.manager.CodeCommentInfoManager;
 import io.onedev.server.manager.CodeCommentManager;
 import io.onedev.server.manager.CodeCommentQuerySettingManager;
 import io.onedev.server.manager.CodeCommentRelationInfoManager;
@@ -100,11 +110,13 @@ import io.onedev.server.manager.GroupAuthorizationManager;
 import io.onedev.server.manager.GroupManager;
 import io.onedev.server.manager.IssueChangeManager;
 import io.onedev.server.manager.IssueCommentManager;
+import io.onedev.server.manager.IssueFieldBeanManager;
 import io.onedev.server.manager.IssueFieldUnaryManager;
 import io.onedev.server.manager.IssueManager;
 import io.onedev.server.manager.IssueQuerySettingManager;
 import io.onedev.server.manager.IssueVoteManager;
 import io.onedev.server.manager.IssueWatchManager;
+import io.onedev.server.manager.LastCommitsManager;
 import io.onedev.server.manager.MailManager;
 import io.onedev.server.manager.MarkdownManager;
 import io.onedev.server.manager.MembershipManager;
@@ -113,6 +125,7 @@ import io.onedev.server.manager.ProjectManager;
 import io.onedev.server.manager.PullRequestBuildManager;
 import io.onedev.server.manager.PullRequestChangeManager;
 import io.onedev.server.manager.PullRequestCommentManager;
+import io.onedev.server.manager.PullRequestInfoManager;
 import io.onedev.server.manager.PullRequestManager;
 import io.onedev.server.manager.PullRequestQuerySettingManager;
 import io.onedev.server.manager.PullRequestReviewManager;
@@ -124,13 +137,16 @@ import io.onedev.server.manager.UrlManager;
 import io.onedev.server.manager.UserAuthorizationManager;
 import io.onedev.server.manager.UserInfoManager;
 import io.onedev.server.manager.UserManager;
+import io.onedev.server.manager.WebHookManager;
 import io.onedev.server.manager.WorkExecutor;
 import io.onedev.server.manager.impl.DefaultAttachmentManager;
 import io.onedev.server.manager.impl.DefaultBatchWorkManager;
+import io.onedev.server.manager.impl.DefaultBlameManager;
 import io.onedev.server.manager.impl.DefaultBuildInfoManager;
 import io.onedev.server.manager.impl.DefaultBuildManager;
 import io.onedev.server.manager.impl.DefaultBuildQuerySettingManager;
 import io.onedev.server.manager.impl.DefaultCacheManager;
+import io.onedev.server.manager.impl.DefaultCodeCommentInfoManager;
 import io.onedev.server.manager.impl.DefaultCodeCommentManager;
 import io.onedev.server.manager.impl.DefaultCodeCommentNotificationManager;
 import io.onedev.server.manager.impl.DefaultCodeCommentQuerySettingManager;
@@ -147,12 +163,14 @@ import io.onedev.server.manager.impl.DefaultGroupAuthorizationManager;
 import io.onedev.server.manager.impl.DefaultGroupManager;
 import io.onedev.server.manager.impl.DefaultIssueChangeManager;
 import io.onedev.server.manager.impl.DefaultIssueCommentManager;
+import io.onedev.server.manager.impl.DefaultIssueFieldBeanManager;
 import io.onedev.server.manager.impl.DefaultIssueFieldUnaryManager;
 import io.onedev.server.manager.impl.DefaultIssueManager;
 import io.onedev.server.manager.impl.DefaultIssueNotificationManager;
 import io.onedev.server.manager.impl.DefaultIssueQuerySettingManager;
 import io.onedev.server.manager.impl.DefaultIssueVoteManager;
 import io.onedev.server.manager.impl.DefaultIssueWatchManager;
+import io.onedev.server.manager.impl.DefaultLastCommitsManager;
 import io.onedev.server.manager.impl.DefaultMailManager;
 import io.onedev.server.manager.impl.DefaultMarkdownManager;
 import io.onedev.server.manager.impl.DefaultMembershipManager;
@@ -161,6 +179,7 @@ import io.onedev.server.manager.impl.DefaultProjectManager;
 import io.onedev.server.manager.impl.DefaultPullRequestBuildManager;
 import io.onedev.server.manager.impl.DefaultPullRequestChangeManager;
 import io.onedev.server.manager.impl.DefaultPullRequestCommentManager;
+import io.onedev.server.manager.impl.DefaultPullRequestInfoManager;
 import io.onedev.server.manager.impl.DefaultPullRequestManager;
 import io.onedev.server.manager.impl.DefaultPullRequestNotificationManager;
 import io.onedev.server.manager.impl.DefaultPullRequestQuerySettingManager;
@@ -202,13 +221,16 @@ import io.onedev.server.search.code.DefaultIndexManager;
 import io.onedev.server.search.code.DefaultSearchManager;
 import io.onedev.server.search.code.IndexManager;
 import io.onedev.server.search.code.SearchManager;
+import io.onedev.server.search.entity.EntityQueryCache;
 import io.onedev.server.security.BasicAuthenticationFilter;
+import io.onedev.server.security.CredentialCache;
 import io.onedev.server.security.FilterChainConfigurator;
 import io.onedev.server.security.OneAuthorizingRealm;
 import io.onedev.server.security.OneFilterChainResolver;
 import io.onedev.server.security.OnePasswordService;
 import io.onedev.server.security.OneRememberMeManager;
 import io.onedev.server.security.OneWebSecurityManager;
+import io.onedev.server.util.GroovyUtils;
 import io.onedev.server.util.jackson.ObjectMapperConfigurator;
 import io.onedev.server.util.jackson.ObjectMapperProvider;
 import io.onedev.server.util.jackson.git.GitObjectMapperConfigurator;
@@ -216,6 +238,7 @@ import io.onedev.server.util.jackson.hibernate.HibernateObjectMapperConfigurator
 import io.onedev.server.util.jetty.DefaultJettyRunner;
 import io.onedev.server.util.jetty.JettyRunner;
 import io.onedev.server.util.markdown.MarkdownProcessor;
+import io.onedev.server.util.metric.MetricContribution;
 import io.onedev.server.util.validation.DefaultEntityValidator;
 import io.onedev.server.util.validation.EntityValidator;
 import io.onedev.server.util.validation.ValidatorProvider;
@@ -300,6 +323,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(PullRequestCommentManager.class).to(DefaultPullRequestCommentManager.class);
 		bind(CodeCommentManager.class).to(DefaultCodeCommentManager.class);
 		bind(PullRequestManager.class).to(DefaultPullRequestManager.class);
+		contribute(MetricContribution.class, DefaultPullRequestManager.class);
 		bind(PullRequestUpdateManager.class).to(DefaultPullRequestUpdateManager.class);
 		bind(ProjectManager.class).to(DefaultProjectManager.class);
 		bind(UserManager.class).to(DefaultUserManager.class);
@@ -308,6 +332,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(PullRequestBuildManager.class).to(DefaultPullRequestBuildManager.class);
 		bind(ConfigurationManager.class).to(DefaultConfigurationManager.class);
 		bind(MailManager.class).to(DefaultMailManager.class);
+		contribute(MetricContribution.class, DefaultMailManager.class);
 		bind(IssueManager.class).to(DefaultIssueManager.class);
 		bind(IssueFieldUnaryManager.class).to(DefaultIssueFieldUnaryManager.class);
 		bind(PullRequestWatchManager.class).to(DefaultPullRequestWatchManager.class);
@@ -322,12 +347,32 @@ public class CoreModule extends AbstractPluginModule {
 		bind(CodeCommentReplyManager.class).to(DefaultCodeCommentReplyManager.class);
 		bind(AttachmentManager.class).to(DefaultAttachmentManager.class);
 		bind(CodeCommentRelationInfoManager.class).to(DefaultCodeCommentRelationInfoManager.class);
+		bind(CodeCommentInfoManager.class).to(DefaultCodeCommentInfoManager.class);
 		bind(BuildInfoManager.class).to(DefaultBuildInfoManager.class);
+		bind(PullRequestInfoManager.class).to(DefaultPullRequestInfoManager.class);
+		bind(LastCommitsManager.class).to(DefaultLastCommitsManager.class);
+		bind(BlameManager.class).to(DefaultBlameManager.class);
 		bind(CodeCommentRelationManager.class).to(DefaultCodeCommentRelationManager.class);
 		bind(WorkExecutor.class).to(DefaultWorkExecutor.class);
 		bind(DefaultPullRequestNotificationManager.class);
 		bind(DefaultCommitNotificationManager.class);
 		bind(DefaultIssueNotificationManager.class);
+		bind(EntityQueryCache.class);
+		contribute(MetricContribution.class, EntityQueryCache.class);
+		bind(MergeResultCache.class);
+		contribute(MetricContribution.class, MergeResultCache.class);
+		bind(BlobCache.class);
+		contribute(MetricContribution.class, BlobCache.class);
+		bind(RefCache.class);
+		contribute(MetricContribution.class, RefCache.class);
+		bind(CommitCache.class);
+		contribute(MetricContribution.class, CommitCache.class);
+		bind(AheadBehindCache.class);
+		contribute(MetricContribution.class, AheadBehindCache.class);
+		bind(ArchiveCache.class);
+		contribute(MetricContribution.class, ArchiveCache.class);
+		bind(DiffCache.class);
+		contribute(MetricContribution.class, DiffCache.class);
 		bind(DefaultEntityReferenceManager.class);
 		bind(DefaultCodeCommentNotificationManager.class);
 		bind(CodeCommentManager.class).to(DefaultCodeCommentManager.class);
@@ -336,6 +381,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(IssueVoteManager.class).to(DefaultIssueVoteManager.class);
 		bind(CacheManager.class).to(DefaultCacheManager.class);
 		bind(MilestoneManager.class).to(DefaultMilestoneManager.class);
+		bind(IssueFieldBeanManager.class).to(DefaultIssueFieldBeanManager.class);
 		bind(Session.class).toProvider(SessionProvider.class);
 		bind(EntityManager.class).toProvider(SessionProvider.class);
 		bind(SessionFactory.class).toProvider(SessionFactoryProvider.class);
@@ -346,8 +392,24 @@ public class CoreModule extends AbstractPluginModule {
 		bind(CodeCommentQuerySettingManager.class).to(DefaultCodeCommentQuerySettingManager.class);
 		bind(CommitQuerySettingManager.class).to(DefaultCommitQuerySettingManager.class);
 		bind(BuildQuerySettingManager.class).to(DefaultBuildQuerySettingManager.class);
-		bind(DefaultWebHookManager.class);
+		bind(WebHookManager.class).to(DefaultWebHookManager.class);
+		contribute(MetricContribution.class, DefaultWebHookManager.class);
 
+		contribute(MetricContribution.class, DefaultIssueFieldBeanManager.class);
+		contribute(MetricContribution.class, new MetricContribution() {
+
+			@Override
+			public String getMetricGroup() {
+				return "Groovy Script Cache";
+			}
+
+			@Override
+			public Map<String, String> getMetrics() {
+				return GroovyUtils.getCacheMetrics();
+			}
+			
+		});
+		
 		contribute(ObjectMapperConfigurator.class, GitObjectMapperConfigurator.class);
 	    contribute(ObjectMapperConfigurator.class, HibernateObjectMapperConfigurator.class);
 	    
@@ -358,6 +420,9 @@ public class CoreModule extends AbstractPluginModule {
 		bind(WebSecurityManager.class).to(OneWebSecurityManager.class);
 		bind(FilterChainResolver.class).to(OneFilterChainResolver.class);
 		bind(BasicAuthenticationFilter.class);
+		bind(CredentialCache.class);
+		contribute(MetricContribution.class, CredentialCache.class);
+		contribute(MetricContribution.class, DefaultMarkdownManager.class);
 		bind(PasswordService.class).to(OnePasswordService.class);
 		bind(ShiroFilter.class);
 		install(new ShiroAopModule());
@@ -412,6 +477,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(WebSocketPolicy.class).toProvider(WebSocketPolicyProvider.class);
 		bind(EditSupportRegistry.class).to(DefaultEditSupportRegistry.class);
 		bind(WebSocketManager.class).to(DefaultWebSocketManager.class);
+		contribute(MetricContribution.class, DefaultWebSocketManager.class);
 		
 		contributeFromPackage(EditSupport.class, EditSupport.class);
 		
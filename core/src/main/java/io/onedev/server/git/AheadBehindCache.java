@@ -0,0 +1,293 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.utils.ExceptionUtils;
+
+/**
+ * Cache ahead/behind counts of branches keyed by branch tip and base tip. Missing counts are
+ * calculated in parallel with a bounded thread pool. Each count is calculated by walking from
+ * one tip with the other tip marked uninteresting, so that the walk stops as soon as only shared
+ * history remains.
+ * <p>
+ * When a branch is fast-forwarded, cached counts involving its old tip are derived for the new
+ * tip by only walking the newly added commits.
+ *
+ */
+@Singleton
+public class AheadBehindCache implements MetricContribution {
+
+	private static final Logger logger = LoggerFactory.getLogger(AheadBehindCache.class);
+
+	private static final long MAX_CACHE_SIZE = 50000;
+
+	private final Dao dao;
+
+	private final Cache<AheadBehindKey, AheadBehind> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong derivedCount = new AtomicLong(0);
+
+	@Inject
+	public AheadBehindCache(Dao dao) {
+		this.dao = dao;
+		int threads = Runtime.getRuntime().availableProcessors();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get ahead/behind counts of specified commits against specified base commit
+	 *
+	 * @return
+	 * 			map of compare commit to its ahead/behind counts
+	 */
+	public Map<ObjectId, AheadBehind> getAheadBehinds(Project project, ObjectId baseId,
+			Collection<ObjectId> compareIds) {
+		Repository repository = project.getRepository();
+		Map<ObjectId, AheadBehind> aheadBehinds = new HashMap<>();
+		Map<ObjectId, Future<AheadBehind>> futures = new HashMap<>();
+		for (ObjectId compareId: compareIds) {
+			AheadBehindKey key = new AheadBehindKey(project.getId(), compareId.copy(), baseId.copy());
+			AheadBehind aheadBehind = cache.getIfPresent(key);
+			if (aheadBehind != null) {
+				aheadBehinds.put(compareId, aheadBehind);
+			} else if (!futures.containsKey(compareId)) {
+				futures.put(compareId, executor.submit(new Callable<AheadBehind>() {
+
+					@Override
+					public AheadBehind call() throws Exception {
+						AheadBehind aheadBehind = calculate(repository, key.compareId, key.baseId);
+						cache.put(key, aheadBehind);
+						return aheadBehind;
+					}
+
+				}));
+			}
+		}
+		for (Map.Entry<ObjectId, Future<AheadBehind>> entry: futures.entrySet()) {
+			try {
+				aheadBehinds.put(entry.getKey(), entry.getValue().get());
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+		}
+		return aheadBehinds;
+	}
+
+	private AheadBehind calculate(Repository repository, ObjectId compareId, ObjectId baseId) {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setRetainBody(false);
+			RevCommit compareCommit = revWalk.parseCommit(compareId);
+			RevCommit baseCommit = revWalk.parseCommit(baseId);
+			int ahead = count(revWalk, compareCommit, baseCommit);
+			int behind = count(revWalk, baseCommit, compareCommit);
+			return new AheadBehind(ahead, behind);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Count commits reachable from start commit, but not from any of uninteresting commits
+	 */
+	private int count(RevWalk revWalk, RevCommit start, RevCommit... uninterestings) throws IOException {
+		revWalk.reset();
+		revWalk.markStart(start);
+		for (RevCommit uninteresting: uninterestings)
+			revWalk.markUninteresting(uninteresting);
+		int count = 0;
+		while (revWalk.next() != null)
+			count++;
+		return count;
+	}
+
+	private void derive(Long projectId, Repository repository, ObjectId oldId, ObjectId newId) {
+		List<Map.Entry<AheadBehindKey, AheadBehind>> entries = new ArrayList<>();
+		for (Map.Entry<AheadBehindKey, AheadBehind> entry: cache.asMap().entrySet()) {
+			AheadBehindKey key = entry.getKey();
+			if (key.projectId.equals(projectId) && (key.compareId.equals(oldId) || key.baseId.equals(oldId)))
+				entries.add(entry);
+		}
+		if (entries.isEmpty())
+			return;
+
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setRetainBody(false);
+			RevCommit oldCommit = revWalk.parseCommit(oldId);
+			RevCommit newCommit = revWalk.parseCommit(newId);
+			if (!revWalk.isMergedInto(oldCommit, newCommit))
+				return;
+
+			int added = count(revWalk, newCommit, oldCommit);
+			for (Map.Entry<AheadBehindKey, AheadBehind> entry: entries) {
+				AheadBehindKey key = entry.getKey();
+				AheadBehind aheadBehind = entry.getValue();
+				if (key.compareId.equals(oldId)) {
+					// Added commits not in base make the branch more ahead, and the rest make it less behind
+					int addedOnly = count(revWalk, newCommit, oldCommit, revWalk.parseCommit(key.baseId));
+					cache.put(new AheadBehindKey(projectId, newId, key.baseId),
+							new AheadBehind(aheadBehind.getAhead() + addedOnly,
+									aheadBehind.getBehind() - (added - addedOnly)));
+				} else {
+					int addedOnly = count(revWalk, newCommit, oldCommit, revWalk.parseCommit(key.compareId));
+					cache.put(new AheadBehindKey(projectId, key.compareId, newId),
+							new AheadBehind(aheadBehind.getAhead() - (added - addedOnly),
+									aheadBehind.getBehind() + addedOnly));
+				}
+				derivedCount.incrementAndGet();
+			}
+		} catch (Exception e) {
+			logger.error("Error deriving ahead/behind counts", e);
+		}
+	}
+
+	public void invalidate(Long projectId) {
+		for (Iterator<AheadBehindKey> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+			if (it.next().projectId.equals(projectId))
+				it.remove();
+		}
+	}
+
+	@Listen
+	public void on(RefUpdated event) {
+		if (event.getRefName().startsWith(Constants.R_HEADS)
+				&& !event.getOldCommitId().equals(ObjectId.zeroId())
+				&& !event.getNewCommitId().equals(ObjectId.zeroId())) {
+			Long projectId = event.getProject().getId();
+			Repository repository = event.getProject().getRepository();
+			ObjectId oldId = event.getOldCommitId().copy();
+			ObjectId newId = event.getNewCommitId().copy();
+			try {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						derive(projectId, repository, oldId, newId);
+					}
+
+				});
+			} catch (RejectedExecutionException e) {
+			}
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Ahead Behind Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = MetricUtils.getCacheMetrics(cache);
+		metrics.put("Derived Entries", String.valueOf(derivedCount.get()));
+		metrics.put("Pending Calculations", String.valueOf(executor.getQueue().size()));
+		return metrics;
+	}
+
+	private static class AheadBehindKey {
+
+		private final Long projectId;
+
+		private final ObjectId compareId;
+
+		private final ObjectId baseId;
+
+		public AheadBehindKey(Long projectId, ObjectId compareId, ObjectId baseId) {
+			this.projectId = projectId;
+			this.compareId = compareId;
+			this.baseId = baseId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof AheadBehindKey))
+				return false;
+			if (this == other)
+				return true;
+			AheadBehindKey otherKey = (AheadBehindKey) other;
+			return new EqualsBuilder()
+					.append(projectId, otherKey.projectId)
+					.append(compareId, otherKey.compareId)
+					.append(baseId, otherKey.baseId)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(projectId)
+					.append(compareId)
+					.append(baseId)
+					.toHashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,278 @@
+package io.onedev.server.git;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.api.ArchiveCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.archive.TarFormat;
+import org.eclipse.jgit.archive.ZipFormat;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.launcher.bootstrap.Bootstrap;
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Project;
+import io.onedev.server.util.ParallelGzipOutputStream;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.server.util.serverconfig.ServerConfig;
+import io.onedev.utils.ExceptionUtils;
+import io.onedev.utils.FileUtils;
+
+/**
+ * Cache repository archives on disk. Archives are keyed by commit id and format, so that the same
+ * commit archived via different branches, tags or forks shares the same file. Tree id alone is 
+ * not enough, as modification time of archive entries comes from the commit. Archive of a commit 
+ * is built with the same bytes each time, so an evicted archive can be built again to serve 
+ * remaining ranges of a download. Concurrent
+ * requests of the same archive wait for a single build. Total size of cached archives is limited
+ * by {@link ServerConfig#getArchiveCacheSize()}, and least recently accessed archives are removed
+ * first.
+ * <p>
+ * Tar.gz archives are compressed with multiple threads via {@link ParallelGzipOutputStream}.
+ *
+ */
+@Singleton
+public class ArchiveCache implements MetricContribution {
+
+	private static final Logger logger = LoggerFactory.getLogger(ArchiveCache.class);
+
+	public static final String FORMAT_ZIP = "zip";
+
+	public static final String FORMAT_TGZ = "tgz";
+
+	private static final String FORMAT_TAR = "tar";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File cacheDir;
+
+	private final long maxSize;
+
+	private final ThreadPoolExecutor executor;
+
+	private final int threads;
+
+	private final Map<String, CompletableFuture<File>> builds = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong(0);
+
+	private final AtomicLong buildCount = new AtomicLong(0);
+
+	private final AtomicLong collapsedCount = new AtomicLong(0);
+
+	private final AtomicLong evictionCount = new AtomicLong(0);
+
+	@Inject
+	public ArchiveCache(ServerConfig serverConfig) {
+		cacheDir = new File(Bootstrap.getSiteDir(), "archives");
+		if (cacheDir.exists()) {
+			for (File file: cacheDir.listFiles()) {
+				if (file.getName().endsWith(TEMP_SUFFIX))
+					FileUtils.deleteFile(file);
+			}
+		} else {
+			FileUtils.createDir(cacheDir);
+		}
+		maxSize = Math.max(0, serverConfig.getArchiveCacheSize()) * 1024L * 1024L;
+		threads = Runtime.getRuntime().availableProcessors();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Open archive file of specified commit, building it if not cached yet
+	 *
+	 * @param format
+	 * 			either {@link #FORMAT_ZIP} or {@link #FORMAT_TGZ}
+	 * @return
+	 * 			opened archive file, which should be closed by caller. Content can still be read 
+	 * 			if the file is removed as result of cache eviction after being opened
+	 */
+	public RandomAccessFile openArchive(Project project, RevCommit commit, String format) {
+		while (true) {
+			File file = getArchive(project, commit, format);
+			
+			// Open with the lock held by eviction, and build again if evicted before opening
+			synchronized (this) {
+				if (file.exists()) {
+					try {
+						return new RandomAccessFile(file, "r");
+					} catch (FileNotFoundException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+	}
+	
+	private File getArchive(Project project, RevCommit commit, String format) {
+		String fileName = commit.name() + "." + format;
+		File file = new File(cacheDir, fileName);
+		if (file.exists()) {
+			file.setLastModified(System.currentTimeMillis());
+			hitCount.incrementAndGet();
+			return file;
+		}
+
+		CompletableFuture<File> future = new CompletableFuture<>();
+		CompletableFuture<File> existingFuture = builds.putIfAbsent(fileName, future);
+		if (existingFuture != null) {
+			collapsedCount.incrementAndGet();
+			try {
+				return existingFuture.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+		}
+
+		File tempFile = new File(cacheDir, fileName + "." + UUID.randomUUID() + TEMP_SUFFIX);
+		try {
+			if (!file.exists()) {
+				build(project, commit, format, tempFile);
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				buildCount.incrementAndGet();
+				evict(file);
+			}
+			future.complete(file);
+			return file;
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw ExceptionUtils.unchecked(e);
+		} finally {
+			builds.remove(fileName);
+			if (tempFile.exists())
+				FileUtils.deleteFile(tempFile);
+		}
+	}
+
+	private void build(Project project, RevCommit commit, String format, File file) throws IOException {
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+			if (format.equals(FORMAT_ZIP)) {
+				ArchiveCommand.registerFormat(FORMAT_ZIP, new ZipFormat());
+				try {
+					ArchiveCommand archive = Git.wrap(project.getRepository()).archive();
+					archive.setFormat(FORMAT_ZIP);
+					archive.setTree(commit.getId());
+					archive.setOutputStream(os);
+					archive.call();
+				} finally {
+					ArchiveCommand.unregisterFormat(FORMAT_ZIP);
+				}
+			} else {
+				ArchiveCommand.registerFormat(FORMAT_TAR, new TarFormat());
+				try (OutputStream gzos = new ParallelGzipOutputStream(os, executor, threads*2)) {
+					ArchiveCommand archive = Git.wrap(project.getRepository()).archive();
+					archive.setFormat(FORMAT_TAR);
+					archive.setTree(commit.getId());
+					archive.setOutputStream(gzos);
+					archive.call();
+				} finally {
+					ArchiveCommand.unregisterFormat(FORMAT_TAR);
+				}
+			}
+		} catch (GitAPIException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private synchronized void evict(File keepFile) {
+		List<File> files = new ArrayList<>();
+		long totalSize = 0;
+		for (File file: cacheDir.listFiles()) {
+			if (!file.getName().endsWith(TEMP_SUFFIX)) {
+				files.add(file);
+				totalSize += file.length();
+			}
+		}
+		if (totalSize > maxSize) {
+			files.sort(new Comparator<File>() {
+
+				@Override
+				public int compare(File o1, File o2) {
+					return Long.compare(o1.lastModified(), o2.lastModified());
+				}
+
+			});
+			for (File file: files) {
+				if (totalSize <= maxSize)
+					break;
+				if (!file.equals(keepFile)) {
+					long length = file.length();
+					if (file.delete()) {
+						totalSize -= length;
+						evictionCount.incrementAndGet();
+					} else {
+						logger.warn("Unable to remove cached archive: " + file.getAbsolutePath());
+					}
+				}
+			}
+		}
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Archive Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		int entries = 0;
+		long totalSize = 0;
+		for (File file: cacheDir.listFiles()) {
+			if (!file.getName().endsWith(TEMP_SUFFIX)) {
+				entries++;
+				totalSize += file.length();
+			}
+		}
+		long hits = hitCount.get();
+		long builds = buildCount.get();
+		metrics.put("Entries", String.valueOf(entries));
+		metrics.put("Used Bytes", String.valueOf(totalSize));
+		metrics.put("Max Bytes", String.valueOf(maxSize));
+		if (hits + builds != 0)
+			metrics.put("Hit Ratio", MetricUtils.formatRatio(hits*1.0/(hits+builds)));
+		metrics.put("Hits", String.valueOf(hits));
+		metrics.put("Builds", String.valueOf(builds));
+		metrics.put("Collapsed Requests", String.valueOf(collapsedCount.get()));
+		metrics.put("Evictions", String.valueOf(evictionCount.get()));
+		return metrics;
+	}
+
+}
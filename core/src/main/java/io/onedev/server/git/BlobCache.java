@@ -0,0 +1,181 @@
+package io.onedev.server.git;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.server.util.serverconfig.ServerConfig;
+
+/**
+ * Server wide cache of blob contents keyed by project id and blob id, so that frequently
+ * accessed files such as build specs and readmes do not have to be read from pack files
+ * again each time the project entity is reloaded. Blob content never changes for a given
+ * blob id, hence no invalidation is needed except when project is removed. Total size of
+ * cached contents is limited by {@link ServerConfig#getBlobCacheSize()}, and least recently
+ * used contents are evicted first.
+ * <p>
+ * Partial contents of large blobs are not cached as they are normally only streamed once.
+ *
+ */
+@Singleton
+public class BlobCache implements MetricContribution {
+
+	// Approximate memory used by key and entry of the cache besides the content bytes
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final Dao dao;
+
+	private final Cache<BlobKey, BlobContent> cache;
+
+	private final long maxWeight;
+
+	@Inject
+	public BlobCache(Dao dao, ServerConfig serverConfig) {
+		this.dao = dao;
+		maxWeight = Math.max(0, serverConfig.getBlobCacheSize()) * 1024L * 1024L;
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxWeight)
+				.weigher(new Weigher<BlobKey, BlobContent>() {
+
+					@Override
+					public int weigh(BlobKey key, BlobContent value) {
+						return value.bytes.length + ENTRY_OVERHEAD;
+					}
+
+				})
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Get blob of specified ident, with content read from cache if possible
+	 *
+	 * @param project
+	 * 			project containing the blob
+	 * @param blobIdent
+	 * 			ident of the blob
+	 * @param blobId
+	 * 			id of the blob
+	 * @param objectReader
+	 * 			object reader to read blob content if it is not cached
+	 * @return
+	 * 			blob of specified ident
+	 */
+	public Blob getBlob(Project project, BlobIdent blobIdent, ObjectId blobId, ObjectReader objectReader) {
+		BlobKey key = new BlobKey(project.getId(), blobId.copy());
+		BlobContent content = cache.getIfPresent(key);
+		if (content != null) {
+			return new Blob(blobIdent, blobId, content.bytes, content.size);
+		} else {
+			Blob blob = new Blob(blobIdent, blobId, objectReader);
+			if (!blob.isPartial())
+				cache.put(key, new BlobContent(blob.getBytes(), blob.getSize()));
+			return blob;
+		}
+	}
+
+	public void invalidate(Long projectId) {
+		for (Iterator<BlobKey> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+			if (it.next().projectId.equals(projectId))
+				it.remove();
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Blob Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = MetricUtils.getCacheMetrics(cache);
+		long usedBytes = 0;
+		for (BlobContent content: cache.asMap().values())
+			usedBytes += content.bytes.length;
+		metrics.put("Used Bytes", String.valueOf(usedBytes));
+		metrics.put("Max Bytes", String.valueOf(maxWeight));
+		return metrics;
+	}
+
+	private static class BlobContent {
+
+		private final byte[] bytes;
+
+		private final long size;
+
+		public BlobContent(byte[] bytes, long size) {
+			this.bytes = bytes;
+			this.size = size;
+		}
+
+	}
+
+	private static class BlobKey {
+
+		private final Long projectId;
+
+		private final ObjectId blobId;
+
+		public BlobKey(Long projectId, ObjectId blobId) {
+			this.projectId = projectId;
+			this.blobId = blobId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof BlobKey))
+				return false;
+			if (this == other)
+				return true;
+			BlobKey otherKey = (BlobKey) other;
+			return new EqualsBuilder()
+					.append(projectId, otherKey.projectId)
+					.append(blobId, otherKey.blobId)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(projectId)
+					.append(blobId)
+					.toHashCode();
+		}
+
+	}
+
+}
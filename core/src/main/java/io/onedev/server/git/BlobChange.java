@@ -14,6 +14,7 @@ import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import com.google.common.base.Preconditions;
 
 import io.onedev.jsyntax.Tokenized;
+import io.onedev.server.OneDev;
 import io.onedev.server.util.diff.DiffBlock;
 import io.onedev.server.util.diff.DiffUtils;
 import io.onedev.server.util.diff.WhitespaceOption;
@@ -87,50 +88,17 @@ public abstract class BlobChange implements Serializable {
 		if (diffBlocks == null) {
 			try {
 				if (type == ChangeType.ADD || type == ChangeType.COPY) {
-					if (getNewText() != null) {
-						List<String> newLines = getNewText().getLines();
-						if (newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> oldLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, "a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					diffBlocks = getDiffBlocks(null, "a.txt", 
+							getNewBlob(), newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
+							WhitespaceOption.DEFAULT);
 				} else if (type == ChangeType.DELETE) {
-					if (getOldText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						if (oldLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							List<String> newLines = new ArrayList<>();
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?oldBlobIdent.path:"a.txt", 
-									newLines, "b.txt", 
-									WhitespaceOption.DEFAULT);
-						} else {
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					diffBlocks = getDiffBlocks(getOldBlob(), oldBlobIdent.isFile()?oldBlobIdent.path:"a.txt", 
+							null, "b.txt", 
+							WhitespaceOption.DEFAULT);
 				} else {
-					if (getOldText() != null && getNewText() != null) {
-						List<String> oldLines = getOldText().getLines();
-						List<String> newLines = getNewText().getLines();
-						if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
-							diffBlocks = DiffUtils.diff(
-									oldLines, oldBlobIdent.isFile()?newBlobIdent.path:"a.txt", 
-									newLines, newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
-									whitespaceOption);
-						} else { 
-							diffBlocks = new ArrayList<>();
-						}
-					} else {
-						diffBlocks = new ArrayList<>();
-					}
+					diffBlocks = getDiffBlocks(getOldBlob(), oldBlobIdent.isFile()?newBlobIdent.path:"a.txt", 
+							getNewBlob(), newBlobIdent.isFile()?newBlobIdent.path:"b.txt", 
+							whitespaceOption);
 				}
 			} catch (Exception e) {
 				throw new RuntimeException("Error calculating diff of file: " + getPath(), e);
@@ -139,6 +107,27 @@ public abstract class BlobChange implements Serializable {
 		return diffBlocks;
 	}
 	
+	private List<DiffBlock<Tokenized>> getDiffBlocks(@Nullable Blob oldBlob, String oldFileName, 
+			@Nullable Blob newBlob, String newFileName, WhitespaceOption whitespaceOption) {
+		int lines = 0;
+		if (oldBlob != null) {
+			if (oldBlob.getText() == null)
+				return new ArrayList<>();
+			lines += oldBlob.getText().getLines().size();
+		}
+		if (newBlob != null) {
+			if (newBlob.getText() == null)
+				return new ArrayList<>();
+			lines += newBlob.getText().getLines().size();
+		}
+		if (lines <= DiffUtils.MAX_DIFF_SIZE) {
+			return OneDev.getInstance(DiffCache.class).getDiffBlocks(
+					oldBlob, oldFileName, newBlob, newFileName, whitespaceOption);
+		} else {
+			return new ArrayList<>();
+		}
+	}
+	
 	public int getAdditions() {
 		int additions = 0;
 		for (DiffBlock<Tokenized> diff: getDiffBlocks()) {
@@ -0,0 +1,143 @@
+package io.onedev.server.git;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+
+/**
+ * Cache parsed commits across requests. Only raw commit buffer (commit metadata without trees)
+ * is cached, and a new {@link RevCommit} is parsed from it for each access, as {@link RevCommit}
+ * carries mutable states of the walk parsing it and should not be shared.
+ *
+ */
+@Singleton
+public class CommitCache implements MetricContribution {
+
+	private static final long MAX_CACHE_SIZE = 10000;
+
+	private final Dao dao;
+
+	private final Cache<CommitKey, byte[]> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	@Inject
+	public CommitCache(Dao dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * Get commit of specified object id
+	 *
+	 * @param revId
+	 * 			object id of a commit, or an annotated tag pointing to a commit
+	 * @return
+	 * 			commit of specified object id, or <tt>null</tt> if not found or if object id
+	 * 			can not be peeled to a commit
+	 */
+	@Nullable
+	public RevCommit getCommit(Project project, ObjectId revId) {
+		CommitKey key = new CommitKey(project.getId(), revId.copy());
+		byte[] rawBuffer = cache.getIfPresent(key);
+		if (rawBuffer != null) {
+			return RevCommit.parse(rawBuffer);
+		} else {
+			RevCommit commit;
+			try (RevWalk revWalk = new RevWalk(project.getRepository())) {
+				commit = GitUtils.parseCommit(revWalk, revId);
+			}
+			if (commit != null && commit.getRawBuffer() != null)
+				cache.put(key, commit.getRawBuffer());
+			return commit;
+		}
+	}
+
+	public void invalidate(Long projectId) {
+		for (Iterator<CommitKey> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+			if (it.next().projectId.equals(projectId))
+				it.remove();
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Commit Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return MetricUtils.getCacheMetrics(cache);
+	}
+
+	private static class CommitKey {
+
+		private final Long projectId;
+
+		private final ObjectId revId;
+
+		public CommitKey(Long projectId, ObjectId revId) {
+			this.projectId = projectId;
+			this.revId = revId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof CommitKey))
+				return false;
+			if (this == other)
+				return true;
+			CommitKey otherKey = (CommitKey) other;
+			return new EqualsBuilder()
+					.append(projectId, otherKey.projectId)
+					.append(revId, otherKey.revId)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(projectId)
+					.append(revId)
+					.toHashCode();
+		}
+
+	}
+
+}
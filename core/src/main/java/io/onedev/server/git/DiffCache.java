@@ -0,0 +1,175 @@
+package io.onedev.server.git;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import io.onedev.jsyntax.Tokenized;
+import io.onedev.server.util.diff.DiffBlock;
+import io.onedev.server.util.diff.DiffResult;
+import io.onedev.server.util.diff.DiffUtils;
+import io.onedev.server.util.diff.WhitespaceOption;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.server.util.serverconfig.ServerConfig;
+
+/**
+ * Server wide cache of text diffs keyed by old blob id, new blob id and white space option, so
+ * that diff of the same file is not calculated again each time a commit, compare or pull
+ * request page is viewed. File names are also part of the key as they decide how lines are
+ * tokenized. Blob content never changes for a given blob id, hence no invalidation is needed.
+ * Approximate memory used by cached diffs is limited by {@link ServerConfig#getDiffCacheSize()}, 
+ * and least recently used diffs are evicted first.
+ *
+ */
+@Singleton
+public class DiffCache implements MetricContribution {
+
+	// Approximate memory used by each diff block or line besides the text and tokens
+	private static final int UNIT_OVERHEAD = 64;
+	
+	private final Cache<DiffKey, List<DiffBlock<Tokenized>>> cache;
+	
+	private final long maxWeight;
+	
+	@Inject
+	public DiffCache(ServerConfig serverConfig) {
+		maxWeight = Math.max(0, serverConfig.getDiffCacheSize()) * 1024L * 1024L;
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxWeight)
+				.weigher(new Weigher<DiffKey, List<DiffBlock<Tokenized>>>() {
+
+					@Override
+					public int weigh(DiffKey key, List<DiffBlock<Tokenized>> value) {
+						return (int) Math.min(Integer.MAX_VALUE, getSize(value));
+					}
+
+				})
+				.recordStats()
+				.build();
+	}
+
+	private long getSize(List<DiffBlock<Tokenized>> diffBlocks) {
+		long size = UNIT_OVERHEAD;
+		for (DiffBlock<Tokenized> block: diffBlocks) {
+			size += UNIT_OVERHEAD;
+			for (Tokenized line: block.getUnits())
+				size += line.getText().length() * 2L + line.getTokens().length * 8L + UNIT_OVERHEAD;
+		}
+		return size;
+	}
+	
+	/**
+	 * Get diff blocks between texts of specified blobs, calculating them if not cached yet
+	 *
+	 * @param oldBlob
+	 * 			old blob, or <tt>null</tt> to diff against empty content. Text of the blob
+	 * 			should not be <tt>null</tt>
+	 * @param oldFileName
+	 * 			file name to tokenize old lines with
+	 * @param newBlob
+	 * 			new blob, or <tt>null</tt> to diff against empty content. Text of the blob
+	 * 			should not be <tt>null</tt>
+	 * @param newFileName
+	 * 			file name to tokenize new lines with
+	 * @return
+	 * 			unmodifiable list of diff blocks
+	 */
+	public List<DiffBlock<Tokenized>> getDiffBlocks(@Nullable Blob oldBlob, @Nullable String oldFileName,
+			@Nullable Blob newBlob, @Nullable String newFileName, WhitespaceOption whitespaceOption) {
+		DiffKey key = new DiffKey(oldBlob!=null?oldBlob.getBlobId().copy():null, oldFileName,
+				newBlob!=null?newBlob.getBlobId().copy():null, newFileName, whitespaceOption);
+		List<DiffBlock<Tokenized>> diffBlocks = cache.getIfPresent(key);
+		if (diffBlocks == null) {
+			List<String> oldLines = oldBlob!=null?oldBlob.getText().getLines():new ArrayList<>();
+			List<String> newLines = newBlob!=null?newBlob.getText().getLines():new ArrayList<>();
+			DiffResult<Tokenized> result = DiffUtils.calcDiff(oldLines, oldFileName, 
+					newLines, newFileName, whitespaceOption);
+			diffBlocks = Collections.unmodifiableList(result.getDiffBlocks());
+			// Result of timed out calculation depends on server load, calculate again next time
+			if (!result.isTimedOut())
+				cache.put(key, diffBlocks);
+		}
+		return diffBlocks;
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Diff Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = MetricUtils.getCacheMetrics(cache);
+		long usedBytes = 0;
+		for (List<DiffBlock<Tokenized>> diffBlocks: cache.asMap().values())
+			usedBytes += getSize(diffBlocks);
+		metrics.put("Used Bytes", String.valueOf(usedBytes));
+		metrics.put("Max Bytes", String.valueOf(maxWeight));
+		return metrics;
+	}
+
+	private static class DiffKey {
+
+		private final ObjectId oldBlobId;
+
+		private final String oldFileName;
+
+		private final ObjectId newBlobId;
+
+		private final String newFileName;
+
+		private final WhitespaceOption whitespaceOption;
+
+		public DiffKey(@Nullable ObjectId oldBlobId, @Nullable String oldFileName,
+				@Nullable ObjectId newBlobId, @Nullable String newFileName, WhitespaceOption whitespaceOption) {
+			this.oldBlobId = oldBlobId;
+			this.oldFileName = oldFileName;
+			this.newBlobId = newBlobId;
+			this.newFileName = newFileName;
+			this.whitespaceOption = whitespaceOption;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof DiffKey))
+				return false;
+			if (this == other)
+				return true;
+			DiffKey otherKey = (DiffKey) other;
+			return new EqualsBuilder()
+					.append(oldBlobId, otherKey.oldBlobId)
+					.append(oldFileName, otherKey.oldFileName)
+					.append(newBlobId, otherKey.newBlobId)
+					.append(newFileName, otherKey.newFileName)
+					.append(whitespaceOption, otherKey.whitespaceOption)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(oldBlobId)
+					.append(oldFileName)
+					.append(newBlobId)
+					.append(newFileName)
+					.append(whitespaceOption)
+					.toHashCode();
+		}
+
+	}
+
+}
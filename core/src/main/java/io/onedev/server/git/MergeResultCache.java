@@ -0,0 +1,195 @@
+package io.onedev.server.git;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.support.pullrequest.MergeStrategy;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.server.util.serverconfig.ServerConfig;
+import io.onedev.utils.ExceptionUtils;
+
+/**
+ * Cache merge results by target head, request head, merge strategy and commit message, so that 
+ * identical merges, for instance a pull request re-opened or re-targeted to a previous target 
+ * head, do not have to be calculated again. Commit message is part of the key as it contains 
+ * number of the pull request, and also title and description for squash merge. Number of merges
+ * calculated in parallel is limited by {@link ServerConfig#getMergePreviewConcurrency()}.
+ * <p>
+ * Merge commits are only referenced by merge refs of pull requests, and may be garbage collected
+ * after those refs are updated. Cached merge commit is discarded if it no longer exists in
+ * repository.
+ *
+ */
+@Singleton
+public class MergeResultCache implements MetricContribution {
+
+	private static final long MAX_CACHE_SIZE = 10000;
+
+	private final Dao dao;
+
+	private final Semaphore semaphore;
+
+	private final Cache<MergeKey, Optional<ObjectId>> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	@Inject
+	public MergeResultCache(Dao dao, ServerConfig serverConfig) {
+		this.dao = dao;
+		semaphore = new Semaphore(Math.max(1, serverConfig.getMergePreviewConcurrency()));
+	}
+
+	/**
+	 * Merge head commit of specified request into current head of its target branch
+	 *
+	 * @return
+	 * 			merged commit, or <tt>null</tt> if there are merge conflicts
+	 */
+	@Nullable
+	public ObjectId merge(PullRequest request, MergeStrategy strategy) {
+		Project project = request.getTargetProject();
+		
+		// Commit message is part of merged commit, except that rebased commits keep their messages
+		String commitMessage;
+		if (strategy != MergeStrategy.REBASE_SOURCE_BRANCH_COMMITS)
+			commitMessage = request.getCommitMessage();
+		else
+			commitMessage = null;
+		MergeKey key = new MergeKey(project.getId(), request.getTarget().getObjectName(),
+				request.getHeadCommitHash(), strategy, commitMessage);
+		Callable<Optional<ObjectId>> merger = new Callable<Optional<ObjectId>>() {
+
+			@Override
+			public Optional<ObjectId> call() throws Exception {
+				semaphore.acquire();
+				try {
+					return Optional.ofNullable(strategy.merge(request));
+				} finally {
+					semaphore.release();
+				}
+			}
+
+		};
+		try {
+			Optional<ObjectId> merged = cache.get(key, merger);
+			if (merged.isPresent() && !project.getRepository().hasObject(merged.get())) {
+				cache.invalidate(key);
+				merged = cache.get(key, merger);
+			}
+			return merged.orElse(null);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+
+	public void invalidate(Long projectId) {
+		for (Iterator<MergeKey> it = cache.asMap().keySet().iterator(); it.hasNext();) {
+			if (it.next().projectId.equals(projectId))
+				it.remove();
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Merge Result Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = MetricUtils.getCacheMetrics(cache);
+		metrics.put("Available Merge Slots", String.valueOf(semaphore.availablePermits()));
+		metrics.put("Waiting Merges", String.valueOf(semaphore.getQueueLength()));
+		return metrics;
+	}
+
+	private static class MergeKey {
+
+		private final Long projectId;
+
+		private final String targetHead;
+
+		private final String requestHead;
+
+		private final MergeStrategy strategy;
+
+		private final String commitMessage;
+		
+		public MergeKey(Long projectId, String targetHead, String requestHead, MergeStrategy strategy, 
+				@Nullable String commitMessage) {
+			this.projectId = projectId;
+			this.targetHead = targetHead;
+			this.requestHead = requestHead;
+			this.strategy = strategy;
+			this.commitMessage = commitMessage;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof MergeKey))
+				return false;
+			if (this == other)
+				return true;
+			MergeKey otherKey = (MergeKey) other;
+			return new EqualsBuilder()
+					.append(projectId, otherKey.projectId)
+					.append(targetHead, otherKey.targetHead)
+					.append(requestHead, otherKey.requestHead)
+					.append(strategy, otherKey.strategy)
+					.append(commitMessage, otherKey.commitMessage)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(projectId)
+					.append(targetHead)
+					.append(requestHead)
+					.append(strategy)
+					.append(commitMessage)
+					.toHashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,295 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+
+/**
+ * Cache snapshot of branches, tags and default branch of projects across requests. A snapshot is
+ * immutable, and is built lazily on first access after being invalidated. Snapshot of a project is
+ * invalidated when {@link RefUpdated} is fired, and also when branches, tags or default branch 
+ * are changed via methods of {@link Project}, so that subsequent access in the same request sees 
+ * the change.
+ * <p>
+ * A snapshot built concurrently with an invalidation is discarded instead of being cached, so that
+ * a stale snapshot never replaces an invalidated one.
+ *
+ */
+@Singleton
+public class RefCache implements MetricContribution {
+
+	private static final long MAX_CACHE_SIZE = 1000;
+
+	private final Dao dao;
+
+	private final Cache<Long, RefSnapshot> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+	@Inject
+	public RefCache(Dao dao) {
+		this.dao = dao;
+	}
+
+	public RefSnapshot getSnapshot(Project project) {
+		RefSnapshot snapshot = cache.getIfPresent(project.getId());
+		if (snapshot == null) {
+			AtomicLong version = getVersion(project.getId());
+			long versionValue = version.get();
+			snapshot = new RefSnapshot(project.getRepository());
+			synchronized (version) {
+				if (version.get() == versionValue)
+					cache.put(project.getId(), snapshot);
+			}
+		}
+		return snapshot;
+	}
+
+	private AtomicLong getVersion(Long projectId) {
+		return versions.computeIfAbsent(projectId, key->new AtomicLong(0));
+	}
+
+	public void invalidate(Long projectId) {
+		AtomicLong version = getVersion(projectId);
+		synchronized (version) {
+			version.incrementAndGet();
+			cache.invalidate(projectId);
+		}
+	}
+
+	@Listen
+	public void on(RefUpdated event) {
+		invalidate(event.getProject().getId());
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(projectId);
+					versions.remove(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Ref Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return MetricUtils.getCacheMetrics(cache);
+	}
+
+	/**
+	 * Immutable snapshot of branches, tags and default branch of a repository. Only object ids
+	 * and commit times are kept instead of parsed objects, so that a snapshot can be shared by
+	 * multiple threads
+	 *
+	 */
+	public static class RefSnapshot {
+
+		private final Map<String, Ref> refs = new HashMap<>();
+
+		private final List<RefEntry> branches;
+
+		private final List<RefEntry> tags;
+
+		private final String defaultBranch;
+
+		RefSnapshot(Repository repository) {
+			try (RevWalk revWalk = new RevWalk(repository)) {
+				for (Ref ref: repository.getRefDatabase().getRefsByPrefix(Constants.R_HEADS))
+					refs.put(ref.getName(), ref);
+				for (Ref ref: repository.getRefDatabase().getRefsByPrefix(Constants.R_TAGS))
+					refs.put(ref.getName(), ref);
+				branches = getRefEntries(revWalk, Constants.R_HEADS);
+				tags = getRefEntries(revWalk, Constants.R_TAGS);
+
+				Ref headRef = repository.findRef(Constants.HEAD);
+				if (headRef != null
+						&& headRef.isSymbolic()
+						&& headRef.getTarget().getName().startsWith(Constants.R_HEADS)
+						&& headRef.getObjectId() != null) {
+					defaultBranch = Repository.shortenRefName(headRef.getTarget().getName());
+				} else {
+					defaultBranch = null;
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/*
+		 * Refs not pointing to commits are excluded, and others are sorted the same way as 
+		 * RefInfo, that is, latest tagged or committed first
+		 */
+		private List<RefEntry> getRefEntries(RevWalk revWalk, String prefix) throws IOException {
+			List<RefEntry> refEntries = new ArrayList<>();
+			for (Ref ref: refs.values()) {
+				if (ref.getName().startsWith(prefix)) {
+					RevObject obj = revWalk.parseAny(ref.getObjectId());
+					RevObject peeledObj = revWalk.peel(obj);
+					if (peeledObj instanceof RevCommit) {
+						Date date;
+						if (obj instanceof RevTag && ((RevTag)obj).getTaggerIdent() != null)
+							date = ((RevTag)obj).getTaggerIdent().getWhen();
+						else
+							date = ((RevCommit)peeledObj).getCommitterIdent().getWhen();
+						refEntries.add(new RefEntry(ref, peeledObj.copy(), date.getTime()));
+					}
+				}
+			}
+			refEntries.sort(new Comparator<RefEntry>() {
+
+				@Override
+				public int compare(RefEntry o1, RefEntry o2) {
+					return Long.compare(o1.getTime(), o2.getTime());
+				}
+				
+			});
+			Collections.reverse(refEntries);
+			return Collections.unmodifiableList(refEntries);
+		}
+
+		public List<RefEntry> getBranches() {
+			return branches;
+		}
+
+		public List<RefEntry> getTags() {
+			return tags;
+		}
+
+		public List<Ref> getRefs(String prefix) {
+			List<Ref> refsWithPrefix = new ArrayList<>();
+			for (Ref ref: refs.values()) {
+				if (ref.getName().startsWith(prefix))
+					refsWithPrefix.add(ref);
+			}
+			return refsWithPrefix;
+		}
+
+		@Nullable
+		public String getDefaultBranch() {
+			return defaultBranch;
+		}
+
+		/**
+		 * Find branch or tag ref of specified revision, following the search order of git for
+		 * short ref names
+		 *
+		 * @return
+		 * 			branch or tag ref of specified revision, or <tt>null</tt> if revision can not
+		 * 			be resolved as branch or tag via this snapshot
+		 */
+		@Nullable
+		public Ref findRef(String revision) {
+			Ref ref = refs.get(revision);
+			if (ref == null)
+				ref = refs.get(Constants.R_REFS + revision);
+			if (ref == null)
+				ref = refs.get(Constants.R_TAGS + revision);
+			if (ref == null)
+				ref = refs.get(Constants.R_HEADS + revision);
+			return ref;
+		}
+
+		/**
+		 * Resolve object id of specified revision if it is name of a branch or tag
+		 *
+		 * @return
+		 * 			object id of specified revision, or <tt>null</tt> if revision can not be
+		 * 			resolved via this snapshot
+		 */
+		@Nullable
+		public ObjectId resolve(String revision) {
+			Ref ref = findRef(revision);
+			return ref != null? ref.getObjectId(): null;
+		}
+
+	}
+
+	/**
+	 * Branch or tag pointing to a commit, directly or via annotated tag
+	 *
+	 */
+	public static class RefEntry {
+		
+		private final Ref ref;
+		
+		private final ObjectId commitId;
+		
+		private final long time;
+		
+		RefEntry(Ref ref, ObjectId commitId, long time) {
+			this.ref = ref;
+			this.commitId = commitId;
+			this.time = time;
+		}
+
+		public Ref getRef() {
+			return ref;
+		}
+
+		/**
+		 * @return
+		 * 			id of the commit this ref points to after peeling
+		 */
+		public ObjectId getCommitId() {
+			return commitId;
+		}
+
+		/**
+		 * @return
+		 * 			tag time of annotated tag, or commit time otherwise
+		 */
+		public long getTime() {
+			return time;
+		}
+		
+	}
+	
+}
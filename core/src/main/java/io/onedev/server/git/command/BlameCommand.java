@@ -12,8 +12,6 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 
-import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
-import org.apache.commons.collections4.map.ReferenceMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +30,6 @@ public class BlameCommand extends GitCommand<Collection<BlameBlock>> {
 
 	private static final Logger logger = LoggerFactory.getLogger(BlameCommand.class);
 	
-	private static final ReferenceMap<String, Collection<BlameBlock>> cache = 
-			new ReferenceMap<>(ReferenceStrength.HARD, ReferenceStrength.SOFT);
-	
-	private static final int CACHE_THRESHOLD = 1000;
-	
 	private String commitHash;
 	
 	private String file;
@@ -81,12 +74,6 @@ public class BlameCommand extends GitCommand<Collection<BlameBlock>> {
 		Preconditions.checkArgument(commitHash!=null && GitUtils.isHash(commitHash), "commit hash has to be specified.");
 		Preconditions.checkNotNull(file, "file parameter has to be specified.");
 
-		String cacheKey = commitHash + ":" + file + ":" + (range!=null?range.toString():"");
-		
-		Collection<BlameBlock> cached = cache.get(cacheKey);
-		if (cached != null)
-			return cached;
-		
 		Commandline cmd = buildCmd();
 		
 		Map<String, BlameBlock> blocks = new HashMap<>();
@@ -108,8 +95,6 @@ public class BlameCommand extends GitCommand<Collection<BlameBlock>> {
 			endLine = new AtomicInteger(0);
 		}
 		
-		long time = System.currentTimeMillis();
-		
 		ExecuteResult result = cmd.execute(new LineConsumer() {
 
 			@Override
@@ -179,9 +164,6 @@ public class BlameCommand extends GitCommand<Collection<BlameBlock>> {
 			block.getRanges().add(new Range(beginLine.get(), endLine.get()-1));
 		}
 		
-		if (System.currentTimeMillis()-time > CACHE_THRESHOLD)
-			cache.put(cacheKey, blocks.values());
-		
 		return blocks.values();
 	}
 
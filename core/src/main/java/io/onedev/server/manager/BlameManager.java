@@ -0,0 +1,30 @@
+package io.onedev.server.manager;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.model.Project;
+import io.onedev.utils.Range;
+
+public interface BlameManager {
+
+	/**
+	 * Get blame of specified file.
+	 *
+	 * @param commitId
+	 * 			commit to get blame of
+	 * @param file
+	 * 			path of the file to get blame of
+	 * @param range
+	 * 			range of lines to get blame of, 0-indexed and inclusive for from and to. Use
+	 * 			<tt>null</tt> to get blame of all lines
+	 * @return
+	 * 			blame blocks of the file, one block for each commit
+	 */
+	Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String file, @Nullable Range range);
+
+}
@@ -0,0 +1,22 @@
+package io.onedev.server.manager;
+
+import java.util.Map;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import io.onedev.server.model.Project;
+
+public interface CodeCommentInfoManager {
+
+	/**
+	 * Get line mapping of a file between two commits, used to map positions of code comments 
+	 * made on historical revisions of the file. Line mappings are calculated once for each pair 
+	 * of old and new blob, and are loaded from storage afterwards
+	 * 
+	 * @return
+	 * 			map of old line number to new line number, with unmapped lines omitted
+	 */
+	Map<Integer, Integer> getLineMapping(Project project, RevCommit oldCommit, String oldPath, 
+			RevCommit newCommit, String newPath);
+	
+}
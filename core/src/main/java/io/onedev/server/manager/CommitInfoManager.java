@@ -20,6 +20,22 @@ public interface CommitInfoManager {
 	
 	int getEdits(ProjectFacade project, UserFacade user, String path);
 	
+	/**
+	 * Get contributions of specified users to specified files in one go. This is much faster than 
+	 * calling {@link #getEdits(ProjectFacade, UserFacade, String)} for each user and file. 
+	 * <p>
+	 * Contribution of a user to a file is edits of the user to the file multiplied by weight of 
+	 * the file. If none of specified users edited the file, its nearest ancestor directory edited by 
+	 * any of the users will be used instead, falling back to the repository root.
+	 * 
+	 * @param pathWeights
+	 * 			map of file path to weight of the file
+	 * @return
+	 * 			map of user id to aggregated contributions of the user
+	 */
+	Map<Long, Long> getContributions(ProjectFacade project, Collection<UserFacade> users, 
+			Map<String, Integer> pathWeights);
+	
 	int getCommitCount(Project project);
 	
 	List<NameAndEmail> getUsers(Project project);
@@ -0,0 +1,34 @@
+package io.onedev.server.manager;
+
+import java.io.Serializable;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.Project;
+
+public interface IssueFieldBeanManager {
+
+	/**
+	 * Get bean class defining issue fields of specified project. The class is generated from global 
+	 * issue setting, and is cached until issue setting changes
+	 * 
+	 * @param project
+	 * 			project to get bean class for
+	 * @return
+	 * 			bean class defining issue fields 
+	 */
+	Class<? extends Serializable> defineBeanClass(Project project);
+	
+	/**
+	 * Load bean class with specified class name
+	 * 
+	 * @param className
+	 * 			name of the class to load
+	 * @return
+	 * 			bean class with specified name, or <tt>null</tt> if specified name is not a bean 
+	 * 			class name
+	 */
+	@Nullable
+	Class<? extends Serializable> loadBeanClass(String className);
+	
+}
@@ -24,6 +24,14 @@ public interface IssueManager extends EntityManager<Issue> {
     @Nullable
     Issue find(Project project, long number);
     
+    /**
+     * Find issues of specified numbers in specified project with a single query
+     * 
+     * @return
+     * 			found issues. Issues not found will not be included
+     */
+    Collection<Issue> query(Project project, Collection<Long> numbers);
+    
 	void open(Issue issue);
 	
 	List<Issue> query(Project project, User user, EntityQuery<Issue> issueQuery, int firstResult, int maxResults);
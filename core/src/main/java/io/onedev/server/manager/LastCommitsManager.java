@@ -0,0 +1,23 @@
+package io.onedev.server.manager;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
+
+import io.onedev.server.model.Project;
+
+public interface LastCommitsManager {
+
+	/**
+	 * Get last commits of children of specified tree path.
+	 *
+	 * @param revision
+	 * 			revision to get last commits no newer than
+	 * @param path
+	 * 			path of the tree, use <tt>null</tt> or empty string to refer to repository root
+	 * @return
+	 * 			map of child name to last commit of the child
+	 */
+	LastCommitsOfChildren getLastCommitsOfChildren(Project project, String revision, @Nullable String path);
+
+}
@@ -2,6 +2,8 @@ package io.onedev.server.manager;
 
 import java.util.Collection;
 
+import javax.annotation.Nullable;
+
 import io.onedev.server.model.support.setting.MailSetting;
 
 public interface MailManager {
@@ -12,4 +14,13 @@ public interface MailManager {
 	
 	void sendMailAsync(Collection<String> toList, String subject, String body);
 	
+	/**
+	 * Send mail asynchronously after current transaction is committed
+	 * 
+	 * @param digestKey
+	 * 			if not <tt>null</tt>, mails with the same digest key sent to the same recipient within 
+	 * 			a short period will be merged into one mail 
+	 */
+	void sendMailAsync(Collection<String> toList, String subject, String body, @Nullable String digestKey);
+	
 }
@@ -0,0 +1,35 @@
+package io.onedev.server.manager;
+
+import java.util.Collection;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.server.git.command.FileChange;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequestUpdate;
+
+public interface PullRequestInfoManager {
+
+	/**
+	 * Get changed files of specified update. Changed files are calculated once and persisted, 
+	 * and are loaded from storage afterwards
+	 * 
+	 * @param update
+	 * 			persisted pull request update
+	 * @return
+	 * 			changed files of specified update since previous update
+	 */
+	Collection<String> getChangedFiles(PullRequestUpdate update);
+	
+	/**
+	 * Get file changes between specified commits. File changes are calculated once and persisted, 
+	 * and are loaded from storage afterwards
+	 * 
+	 * @param project
+	 * 			project containing specified commits
+	 * @return
+	 * 			file changes between specified commits, without rename detection
+	 */
+	Collection<FileChange> getFileChanges(Project project, ObjectId oldCommitId, ObjectId newCommitId);
+	
+}
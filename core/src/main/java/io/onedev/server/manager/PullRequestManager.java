@@ -30,6 +30,14 @@ public interface PullRequestManager extends EntityManager<PullRequest> {
     @Nullable
     PullRequest find(Project targetProject, long number);
     
+    /**
+     * Find pull requests of specified numbers targeting specified project with a single query
+     * 
+     * @return
+     * 			found pull requests. Pull requests not found will not be included
+     */
+    Collection<PullRequest> query(Project targetProject, Collection<Long> numbers);
+    
 	@Nullable
 	PullRequest findLatest(Project targetProject, User submitter);
 	
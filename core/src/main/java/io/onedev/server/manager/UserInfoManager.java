@@ -1,6 +1,8 @@
 package io.onedev.server.manager;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -18,6 +20,17 @@ public interface UserInfoManager {
 	
 	@Nullable
 	Date getVisitDate(UserFacade user, ProjectFacade project);
+	
+	/**
+	 * Get visit dates of specified projects in one go. This is much faster than calling 
+	 * {@link #getVisitDate(UserFacade, ProjectFacade)} for each project when there are many 
+	 * projects
+	 * 
+	 * @return
+	 * 			map of project id to visit date. Projects never visited by specified user will 
+	 * 			not be included in the map  
+	 */
+	Map<Long, Date> getVisitDates(UserFacade user, Collection<ProjectFacade> projects);
 
 	void visitPullRequest(User user, PullRequest request);
 	
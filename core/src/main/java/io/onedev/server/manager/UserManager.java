@@ -1,5 +1,8 @@
 package io.onedev.server.manager;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 import org.eclipse.jgit.lib.PersonIdent;
@@ -42,6 +45,16 @@ public interface UserManager extends EntityManager<User> {
 	 */
 	@Nullable User findByName(String userName);
 	
+	/**
+	 * Find users of specified names with a single query
+	 * 
+	 * @param userNames
+	 * 			names of the users
+	 * @return
+	 * 			map of user name to user. Names without matching users will not be included
+	 */
+	Map<String, User> findByNames(Collection<String> userNames);
+	
 	/**
 	 * Find user of specified name.
 	 * <p>
@@ -0,0 +1,18 @@
+package io.onedev.server.manager;
+
+import java.util.List;
+
+import io.onedev.server.model.Project;
+import io.onedev.server.model.support.WebHookDelivery;
+
+public interface WebHookManager {
+	
+	/**
+	 * Get recent web hook deliveries of specified project
+	 * 
+	 * @return
+	 * 			recent deliveries, ordered with most recent delivery first
+	 */
+	List<WebHookDelivery> getRecentDeliveries(Project project);
+	
+}
@@ -22,6 +22,7 @@ import com.google.common.base.Charsets;
 
 import jetbrains.exodus.ArrayByteIterable;
 import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.EnvironmentConfig;
 import jetbrains.exodus.env.Environments;
@@ -195,6 +196,37 @@ public abstract class AbstractEnvironmentManager {
 		byte[] bytes = new byte[] {(byte)(value?1:0)};
 		store.put(txn, key, new ArrayByteIterable(bytes));
 	}
+	
+	/**
+	 * Put specified value into store if key does not exist yet. Keys are also recorded in 
+	 * sequences store in the order they are put, and oldest entries are removed from both 
+	 * stores when number of entries exceeds specified limit.
+	 */
+	protected void putCapped(Store store, Store sequencesStore, Transaction txn, ByteIterable key, 
+			ByteIterable value, int maxEntries) {
+		if (store.get(txn, key) != null)
+			return;
+		store.put(txn, key, value);
+
+		long nextSequence;
+		try (Cursor cursor = sequencesStore.openCursor(txn)) {
+			if (cursor.getPrev())
+				nextSequence = ByteBuffer.wrap(cursor.getKey().getBytesUnsafe(), 0, Long.BYTES).getLong() + 1;
+			else
+				nextSequence = 0;
+		}
+		sequencesStore.put(txn, new LongByteIterable(nextSequence), key);
+
+		long count = sequencesStore.count(txn);
+		if (count > maxEntries) {
+			try (Cursor cursor = sequencesStore.openCursor(txn)) {
+				while (count-- > maxEntries && cursor.getNext()) {
+					store.delete(txn, cursor.getValue());
+					cursor.deleteCurrent();
+				}
+			}
+		}
+	}
 
 	static class CommitByteIterable extends ArrayByteIterable {
 		CommitByteIterable(ObjectId commit) {
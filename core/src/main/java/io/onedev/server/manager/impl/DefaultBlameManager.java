@@ -0,0 +1,437 @@
+package io.onedev.server.manager.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.MyersDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.git.BlameCommit;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.manager.BlameManager;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.utils.FileUtils;
+import io.onedev.utils.Range;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Blame of files is stored by commit and file path as runs of lines blamed to the same commit.
+ * When blame of a commit is not stored, history of the file is walked back until a stored
+ * blame is found. On the way, commits not changing the file take blame of the parent as is,
+ * and commits with a single parent changing the file derive blame from blame of the parent
+ * and diff of the file. The walk stops when the file is added, renamed or merged from multiple 
+ * parents, or at a commit whose diff might be chosen differently by git blame, and git blame 
+ * is run once at that commit. If no stored blame is found within a limited number of steps, 
+ * git blame is run on the requested commit directly.
+ * <p>
+ * Number of stored blames is capped per project, and oldest blames are removed first.
+ *
+ */
+@Singleton
+public class DefaultBlameManager extends AbstractEnvironmentManager implements BlameManager {
+
+	private static final int INFO_VERSION = 1;
+
+	private static final String INFO_DIR = "blame";
+
+	private static final String BLAMES_STORE = "blames";
+
+	private static final String SEQUENCES_STORE = "sequences";
+
+	private static final int MAX_ENTRIES = 10000;
+
+	private static final int MAX_DERIVATION_DEPTH = 100;
+
+	private static final int MAX_SUBJECT_LENGTH = 1000;
+
+	private final StorageManager storageManager;
+
+	@Inject
+	public DefaultBlameManager(StorageManager storageManager) {
+		this.storageManager = storageManager;
+	}
+
+	@Override
+	public Collection<BlameBlock> getBlame(Project project, ObjectId commitId, String file, @Nullable Range range) {
+		BlameCommit[] lines = getBlamedLines(project, commitId, file);
+
+		Map<String, BlameBlock> blocks = new LinkedHashMap<>();
+		int from, to;
+		if (range != null) {
+			from = Math.max(0, range.getFrom());
+			to = Math.min(lines.length-1, range.getTo());
+		} else {
+			from = 0;
+			to = lines.length-1;
+		}
+		int begin = from;
+		for (int i=from; i<=to; i++) {
+			if (i == to || !lines[i+1].equals(lines[i])) {
+				BlameCommit commit = lines[i];
+				BlameBlock block = blocks.get(commit.getHash());
+				if (block == null) {
+					block = new BlameBlock(commit, new ArrayList<>());
+					blocks.put(commit.getHash(), block);
+				}
+				block.getRanges().add(new Range(begin, i));
+				begin = i+1;
+			}
+		}
+		return blocks.values();
+	}
+
+	private BlameCommit[] getBlamedLines(Project project, ObjectId commitId, String file) {
+		byte[] pathBytes = file.getBytes(StandardCharsets.UTF_8);
+		Environment env = getEnv(project.getId().toString());
+		Store blamesStore = getStore(env, BLAMES_STORE);
+		Store sequencesStore = getStore(env, SEQUENCES_STORE);
+
+		try (RevWalk revWalk = new RevWalk(project.getRepository())) {
+			ObjectReader reader = revWalk.getObjectReader();
+			RevCommit commit = revWalk.parseCommit(commitId);
+			BlameCommit[] lines = null;
+			List<DerivationStep> steps = new ArrayList<>();
+			while (true) {
+				lines = read(env, blamesStore, getKey(commit, pathBytes));
+				if (lines != null)
+					break;
+				if (steps.size() == MAX_DERIVATION_DEPTH) {
+					// Running git blame at an ancestor this far away is not cheaper than running it directly
+					commit = revWalk.parseCommit(commitId);
+					steps.clear();
+					break;
+				}
+				ObjectId blobId = getBlobId(reader, commit, file);
+				if (blobId == null)
+					break;
+
+				RevCommit unchangedParent = null;
+				for (RevCommit parent: commit.getParents()) {
+					revWalk.parseHeaders(parent);
+					if (blobId.equals(getBlobId(reader, parent, file))) {
+						unchangedParent = parent;
+						break;
+					}
+				}
+				if (unchangedParent != null) {
+					steps.add(new DerivationStep(commit, null, 0));
+					commit = unchangedParent;
+				} else if (commit.getParentCount() == 1) {
+					ObjectId parentBlobId = getBlobId(reader, commit.getParent(0), file);
+					if (parentBlobId == null)
+						break;
+					RawText oldText = new RawText(reader.open(parentBlobId).getCachedBytes(Integer.MAX_VALUE));
+					RawText newText = new RawText(reader.open(blobId).getCachedBytes(Integer.MAX_VALUE));
+					EditList edits = MyersDiff.INSTANCE.diff(RawTextComparator.DEFAULT, oldText, newText);
+					if (isAmbiguous(edits, oldText, newText))
+						break;
+					steps.add(new DerivationStep(commit, edits, newText.size()));
+					commit = commit.getParent(0);
+				} else {
+					break;
+				}
+			}
+
+			if (lines == null) {
+				lines = calculate(project, commit, file);
+				write(env, blamesStore, sequencesStore, getKey(commit, pathBytes), lines);
+			}
+			if (!steps.isEmpty()) {
+				BlameCommit[] derivedLines = derive(lines, steps);
+				if (derivedLines == null)
+					derivedLines = calculate(project, commitId, file);
+				lines = derivedLines;
+				write(env, blamesStore, sequencesStore, getKey(commitId, pathBytes), lines);
+			}
+			return lines;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Nullable
+	private ObjectId getBlobId(ObjectReader reader, RevCommit commit, String file) throws IOException {
+		try (TreeWalk treeWalk = TreeWalk.forPath(reader, file, commit.getTree())) {
+			if (treeWalk != null && treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB)
+				return treeWalk.getObjectId(0);
+			else
+				return null;
+		}
+	}
+
+	protected BlameCommit[] calculate(Project project, ObjectId commitId, String file) {
+		BlameCommand cmd = new BlameCommand(project.getGitDir());
+		cmd.commitHash(commitId.name()).file(file);
+		Collection<BlameBlock> blocks = cmd.call();
+		int lineCount = 0;
+		for (BlameBlock block: blocks) {
+			for (Range range: block.getRanges())
+				lineCount = Math.max(lineCount, range.getTo()+1);
+		}
+		BlameCommit[] lines = new BlameCommit[lineCount];
+		for (BlameBlock block: blocks) {
+			for (Range range: block.getRanges()) {
+				for (int i=range.getFrom(); i<=range.getTo(); i++)
+					lines[i] = block.getCommit();
+			}
+		}
+		return lines;
+	}
+
+	/*
+	 * Apply derivation steps from the oldest one. Lines kept by diff of a step take blame from
+	 * the parent, and other lines are blamed to commit of the step. Git blame may choose another 
+	 * diff than ours if the diff is ambiguous, for instance when repeated lines such as blank 
+	 * lines and braces are added or removed, so the walk never steps over such commits
+	 * 
+	 * @return
+	 * 			derived blame, or <tt>null</tt> if line count of the blame does not match the diff
+	 */
+	@Nullable
+	private BlameCommit[] derive(BlameCommit[] lines, List<DerivationStep> steps) {
+		for (int i=steps.size()-1; i>=0; i--) {
+			DerivationStep step = steps.get(i);
+			if (step.edits == null)
+				continue;
+			int oldLineCount = step.lineCount;
+			for (Edit edit: step.edits)
+				oldLineCount += edit.getLengthA() - edit.getLengthB();
+			if (oldLineCount != lines.length)
+				return null;
+			BlameCommit commit = new BlameCommit(step.commit.name(), step.commit.getCommitterIdent(),
+					step.commit.getAuthorIdent(), step.commit.getShortMessage().trim());
+			BlameCommit[] newLines = new BlameCommit[step.lineCount];
+			int oldIndex = 0, newIndex = 0;
+			for (Edit edit: step.edits) {
+				while (newIndex < edit.getBeginB())
+					newLines[newIndex++] = lines[oldIndex++];
+				while (newIndex < edit.getEndB())
+					newLines[newIndex++] = commit;
+				oldIndex = edit.getEndA();
+			}
+			while (newIndex < newLines.length)
+				newLines[newIndex++] = lines[oldIndex++];
+			lines = newLines;
+		}
+		return lines;
+	}
+
+	/*
+	 * Diff is considered ambiguous if any changed region can be shifted up or down over equal 
+	 * lines, or if histogram diff matches lines differently
+	 */
+	private boolean isAmbiguous(EditList edits, RawText oldText, RawText newText) {
+		for (Edit edit: edits) {
+			if (isShiftable(oldText, edit.getBeginA(), edit.getEndA()) 
+					|| isShiftable(newText, edit.getBeginB(), edit.getEndB())) {
+				return true;
+			}
+		}
+		return !edits.equals(new HistogramDiff().diff(RawTextComparator.DEFAULT, oldText, newText));
+	}
+	
+	private boolean isShiftable(RawText text, int begin, int end) {
+		if (begin == end)
+			return false;
+		else if (begin > 0 && RawTextComparator.DEFAULT.equals(text, begin-1, text, end-1))
+			return true;
+		else
+			return end < text.size() && RawTextComparator.DEFAULT.equals(text, begin, text, end);
+	}
+
+	@Nullable
+	private BlameCommit[] read(Environment env, Store blamesStore, ByteIterable key) {
+		return env.computeInReadonlyTransaction(new TransactionalComputable<BlameCommit[]>() {
+
+			@Override
+			public BlameCommit[] compute(Transaction txn) {
+				byte[] bytes = readBytes(blamesStore, txn, key);
+				return bytes != null? decode(bytes): null;
+			}
+
+		});
+	}
+
+	private void write(Environment env, Store blamesStore, Store sequencesStore, ByteIterable key,
+			BlameCommit[] lines) {
+		ByteIterable value = new ArrayByteIterable(encode(lines));
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				putCapped(blamesStore, sequencesStore, txn, key, value, MAX_ENTRIES);
+			}
+
+		});
+	}
+
+	private ByteIterable getKey(ObjectId commitId, byte[] pathBytes) {
+		byte[] keyBytes = new byte[20 + pathBytes.length];
+		commitId.copyRawTo(keyBytes, 0);
+		System.arraycopy(pathBytes, 0, keyBytes, 20, pathBytes.length);
+		return new ArrayByteIterable(keyBytes);
+	}
+
+	/*
+	 * Distinct commits are written first, followed by runs of consecutive lines blamed to the
+	 * same commit. Each run refers to its commit by index
+	 */
+	private byte[] encode(BlameCommit[] lines) {
+		List<BlameCommit> commits = new ArrayList<>();
+		Map<String, Integer> commitIndexes = new HashMap<>();
+		for (BlameCommit commit: lines) {
+			if (!commitIndexes.containsKey(commit.getHash())) {
+				commitIndexes.put(commit.getHash(), commits.size());
+				commits.add(commit);
+			}
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream os = new DataOutputStream(baos)) {
+			os.writeInt(commits.size());
+			byte[] idBytes = new byte[20];
+			for (BlameCommit commit: commits) {
+				ObjectId.fromString(commit.getHash()).copyRawTo(idBytes, 0);
+				os.write(idBytes);
+				writePerson(os, commit.getAuthor());
+				writePerson(os, commit.getCommitter());
+				os.writeUTF(StringUtils.abbreviate(commit.getSubject(), MAX_SUBJECT_LENGTH));
+			}
+			List<int[]> runs = new ArrayList<>();
+			for (int i=0; i<lines.length; i++) {
+				if (i == 0 || !lines[i].equals(lines[i-1]))
+					runs.add(new int[] {commitIndexes.get(lines[i].getHash()), 1});
+				else
+					runs.get(runs.size()-1)[1]++;
+			}
+			os.writeInt(runs.size());
+			for (int[] run: runs) {
+				os.writeInt(run[0]);
+				os.writeInt(run[1]);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	private void writePerson(DataOutputStream os, PersonIdent person) throws IOException {
+		os.writeUTF(person.getName());
+		os.writeUTF(person.getEmailAddress());
+		os.writeLong(person.getWhen().getTime());
+		os.writeInt(person.getTimeZoneOffset());
+	}
+
+	private BlameCommit[] decode(byte[] bytes) {
+		try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int commitCount = is.readInt();
+			List<BlameCommit> commits = new ArrayList<>(commitCount);
+			byte[] idBytes = new byte[20];
+			for (int i=0; i<commitCount; i++) {
+				is.readFully(idBytes);
+				String hash = ObjectId.fromRaw(idBytes).name();
+				PersonIdent author = readPerson(is);
+				PersonIdent committer = readPerson(is);
+				commits.add(new BlameCommit(hash, committer, author, is.readUTF()));
+			}
+			int runCount = is.readInt();
+			List<BlameCommit> lines = new ArrayList<>();
+			for (int i=0; i<runCount; i++) {
+				BlameCommit commit = commits.get(is.readInt());
+				int length = is.readInt();
+				for (int j=0; j<length; j++)
+					lines.add(commit);
+			}
+			return lines.toArray(new BlameCommit[lines.size()]);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private PersonIdent readPerson(DataInputStream is) throws IOException {
+		String name = is.readUTF();
+		String email = is.readUTF();
+		long when = is.readLong();
+		int timeZoneOffset = is.readInt();
+		return new PersonIdent(name, email, when, timeZoneOffset);
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	private static class DerivationStep {
+
+		private final RevCommit commit;
+
+		// Edits from parent, or null if the file is not changed by this commit
+		private final EditList edits;
+
+		// Line count of the file at this commit
+		private final int lineCount;
+
+		public DerivationStep(RevCommit commit, @Nullable EditList edits, int lineCount) {
+			this.commit = commit;
+			this.edits = edits;
+			this.lineCount = lineCount;
+		}
+
+	}
+
+}
@@ -0,0 +1,148 @@
+package io.onedev.server.manager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import com.google.common.base.Preconditions;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.manager.CodeCommentInfoManager;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.util.diff.DiffResult;
+import io.onedev.server.util.diff.DiffUtils;
+import io.onedev.server.util.diff.WhitespaceOption;
+import io.onedev.utils.FileUtils;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Line mapping between two files only depends on content of the files and the line diff 
+ * algorithm, so it is stored by old and new blob id, and does not need to be invalidated until 
+ * the algorithm changes. Mappings calculated from timed out diffs depend on server load, and 
+ * are not stored.
+ *
+ */
+@Singleton
+public class DefaultCodeCommentInfoManager extends AbstractEnvironmentManager implements CodeCommentInfoManager {
+
+	// Increase this whenever line diff algorithm changes, as stored mappings depend on it
+	private static final int INFO_VERSION = 2;
+	
+	private static final String INFO_DIR = "codeComment";
+	
+	private static final String LINE_MAPPINGS_STORE = "lineMappings";
+	
+	private final StorageManager storageManager;
+	
+	@Inject
+	public DefaultCodeCommentInfoManager(StorageManager storageManager) {
+		this.storageManager = storageManager;
+	}
+	
+	private ObjectId getBlobId(Repository repository, RevCommit commit, String path) {
+		try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+			return Preconditions.checkNotNull(treeWalk).getObjectId(0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public Map<Integer, Integer> getLineMapping(Project project, RevCommit oldCommit, String oldPath, 
+			RevCommit newCommit, String newPath) {
+		Repository repository = project.getRepository();
+		
+		byte[] keyBytes = new byte[40];
+		getBlobId(repository, oldCommit, oldPath).copyRawTo(keyBytes, 0);
+		getBlobId(repository, newCommit, newPath).copyRawTo(keyBytes, 20);
+		ByteIterable key = new ArrayByteIterable(keyBytes);
+		
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, LINE_MAPPINGS_STORE);
+		Map<Integer, Integer> lineMapping = env.computeInReadonlyTransaction(new TransactionalComputable<Map<Integer, Integer>>() {
+
+			@Override
+			public Map<Integer, Integer> compute(Transaction txn) {
+				byte[] bytes = readBytes(store, txn, key);
+				if (bytes != null) {
+					Map<Integer, Integer> lineMapping = new HashMap<>();
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining())
+						lineMapping.put(buffer.getInt(), buffer.getInt());
+					return lineMapping;
+				} else {
+					return null;
+				}
+			}
+			
+		});
+		
+		if (lineMapping == null) {
+			List<String> oldLines = GitUtils.readLines(repository, oldCommit, oldPath, WhitespaceOption.DEFAULT);
+			List<String> newLines = GitUtils.readLines(repository, newCommit, newPath, WhitespaceOption.DEFAULT);
+			DiffResult<String> diffResult = DiffUtils.calcDiff(oldLines, newLines);
+			Map<Integer, Integer> calculatedLineMapping = DiffUtils.mapLines(diffResult.getDiffBlocks());
+			if (!diffResult.isTimedOut()) {
+				env.executeInTransaction(new TransactionalExecutable() {
+	
+					@Override
+					public void execute(Transaction txn) {
+						ByteBuffer buffer = ByteBuffer.allocate(calculatedLineMapping.size()*Integer.BYTES*2);
+						for (Map.Entry<Integer, Integer> entry: calculatedLineMapping.entrySet()) {
+							buffer.putInt(entry.getKey());
+							buffer.putInt(entry.getValue());
+						}
+						store.put(txn, key, new ArrayByteIterable(buffer.array()));
+					}
+					
+				});
+			}
+			lineMapping = calculatedLineMapping;
+		}
+		return lineMapping;
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+	
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists()) 
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+	
+}
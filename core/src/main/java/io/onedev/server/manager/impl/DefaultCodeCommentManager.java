@@ -42,8 +42,8 @@ import io.onedev.server.event.codecomment.CodeCommentCreated;
 import io.onedev.server.event.codecomment.CodeCommentDeleted;
 import io.onedev.server.event.codecomment.CodeCommentEvent;
 import io.onedev.server.event.codecomment.CodeCommentUpdated;
-import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.command.RevListCommand;
+import io.onedev.server.manager.CodeCommentInfoManager;
 import io.onedev.server.manager.CodeCommentManager;
 import io.onedev.server.manager.CommitInfoManager;
 import io.onedev.server.model.CodeComment;
@@ -65,7 +65,6 @@ import io.onedev.server.search.entity.codecomment.CodeCommentQuery;
 import io.onedev.server.search.entity.codecomment.CodeCommentQueryBuildContext;
 import io.onedev.server.util.CodeCommentConstants;
 import io.onedev.server.util.diff.DiffUtils;
-import io.onedev.server.util.diff.WhitespaceOption;
 
 @Singleton
 public class DefaultCodeCommentManager extends AbstractEntityManager<CodeComment> implements CodeCommentManager {
@@ -74,15 +73,21 @@ public class DefaultCodeCommentManager extends AbstractEntityManager<CodeComment
 	
 	private final int MAX_HISTORY_FILES_TO_CHECK = 500;
 	
+	private final int MAX_PATHS_PER_QUERY = 1000;
+	
 	private final ListenerRegistry listenerRegistry;
 	
 	private final CommitInfoManager commitInfoManager;
 	
+	private final CodeCommentInfoManager codeCommentInfoManager;
+	
 	@Inject
-	public DefaultCodeCommentManager(Dao dao, ListenerRegistry listenerRegistry, CommitInfoManager commitInfoManager) {
+	public DefaultCodeCommentManager(Dao dao, ListenerRegistry listenerRegistry, CommitInfoManager commitInfoManager, 
+			CodeCommentInfoManager codeCommentInfoManager) {
 		super(dao);
 		this.listenerRegistry = listenerRegistry;
 		this.commitInfoManager = commitInfoManager;
+		this.codeCommentInfoManager = codeCommentInfoManager;
 	}
 
 	@Transactional
@@ -153,10 +158,12 @@ public class DefaultCodeCommentManager extends AbstractEntityManager<CodeComment
 		Map<CodeComment, TextRange> comments = new HashMap<>();
 		
 		Map<String, Map<String, List<CodeComment>>> possibleComments = new HashMap<>();
-		for (String possibleHistoryPath: commitInfoManager.getHistoryPaths(project, path)) {
+		List<String> possibleHistoryPaths = new ArrayList<>(commitInfoManager.getHistoryPaths(project, path));
+		for (List<String> partition: Lists.partition(possibleHistoryPaths, MAX_PATHS_PER_QUERY)) {
 			EntityCriteria<CodeComment> criteria = EntityCriteria.of(CodeComment.class);
-			criteria.add(Restrictions.eq("markPos.path", possibleHistoryPath));
+			criteria.add(Restrictions.in("markPos.path", partition));
 			for (CodeComment comment: query(criteria)) {
+				String possibleHistoryPath = comment.getMarkPos().getPath();
 				if (comment.getMarkPos().getCommit().equals(commitId.name()) && possibleHistoryPath.equals(path)) {
 					comments.put(comment, comment.getMarkPos().getRange());
 				} else {
@@ -200,8 +207,6 @@ public class DefaultCodeCommentManager extends AbstractEntityManager<CodeComment
 				Set<String> revisions = new HashSet<>(command.call());
 				
 				RevCommit commit = revWalk.parseCommit(commitId);
-				List<String> newLines = GitUtils.readLines(project.getRepository(), commit, path, 
-						WhitespaceOption.DEFAULT);
 
 				Collections.sort(historyCommits, new Comparator<RevCommit>() {
 
@@ -217,9 +222,8 @@ public class DefaultCodeCommentManager extends AbstractEntityManager<CodeComment
 						Map<String, List<CodeComment>> commentsOnCommit = 
 								Preconditions.checkNotNull(possibleComments.get(historyCommit.name()));
 						for (Map.Entry<String, List<CodeComment>> pathEntry: commentsOnCommit.entrySet()) {
-							List<String> oldLines = GitUtils.readLines(project.getRepository(), historyCommit, 
-									pathEntry.getKey(), WhitespaceOption.DEFAULT);
-							Map<Integer, Integer> lineMapping = DiffUtils.mapLines(oldLines, newLines);
+							Map<Integer, Integer> lineMapping = codeCommentInfoManager.getLineMapping(project, 
+									historyCommit, pathEntry.getKey(), commit, path);
 							for (CodeComment comment: pathEntry.getValue()) {
 								TextRange newRange = DiffUtils.mapRange(lineMapping, comment.getMarkPos().getRange());
 								if (newRange != null) 
@@ -921,6 +921,79 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		}
 	}
 	
+	@Override
+	public Map<Long, Long> getContributions(ProjectFacade project, Collection<UserFacade> users, 
+			Map<String, Integer> pathWeights) {
+		Map<Long, Long> contributions = new HashMap<>();
+		for (UserFacade user: users)
+			contributions.put(user.getId(), 0L);
+		
+		Environment env = getEnv(project.getId().toString());
+		Store emailToIndexStore = getStore(env, EMAIL_TO_INDEX_STORE);
+		Store pathToIndexStore = getStore(env, PATH_TO_INDEX_STORE);
+		Store editsStore = getStore(env, EDITS_STORE);
+		env.executeInReadonlyTransaction(new TransactionalExecutable() {
+
+			private int getPathIndex(Transaction txn, Map<String, Integer> pathIndexes, String path) {
+				Integer pathIndex = pathIndexes.get(path);
+				if (pathIndex == null) {
+					pathIndex = readInt(pathToIndexStore, txn, new StringByteIterable(path), -1);
+					pathIndexes.put(path, pathIndex);
+				}
+				return pathIndex;
+			}
+			
+			private int addContributions(Transaction txn, Map<Long, Integer> userIndexes, int pathIndex, int weight) {
+				int addedEdits = 0;
+				if (pathIndex != -1) {
+					for (Map.Entry<Long, Integer> entry: userIndexes.entrySet()) {
+						int userIndex = entry.getValue();
+						long editsKey = (userIndex<<32)|pathIndex;
+						int edits = readInt(editsStore, txn, new LongByteIterable(editsKey), 0);
+						if (edits != 0) {
+							contributions.put(entry.getKey(), contributions.get(entry.getKey()) + weight*edits);
+							addedEdits += edits;
+						}
+					}
+				}
+				return addedEdits;
+			}
+			
+			@Override
+			public void execute(Transaction txn) {
+				Map<Long, Integer> userIndexes = new HashMap<>();
+				for (UserFacade user: users) {
+					if (user.getEmail() != null) {
+						int userIndex = readInt(emailToIndexStore, txn, new StringByteIterable(user.getEmail()), -1);
+						if (userIndex != -1)
+							userIndexes.put(user.getId(), userIndex);
+					}
+				}
+				if (userIndexes.isEmpty())
+					return;
+				
+				// Directories are shared by many files, resolve each path only once
+				Map<String, Integer> pathIndexes = new HashMap<>();
+				for (Map.Entry<String, Integer> entry: pathWeights.entrySet()) {
+					String path = entry.getKey();
+					int weight = entry.getValue();
+					int addedEdits = addContributions(txn, userIndexes, getPathIndex(txn, pathIndexes, path), weight);
+					while (addedEdits == 0) {
+						if (path.contains("/")) {
+							path = StringUtils.substringBeforeLast(path, "/");
+							addedEdits = addContributions(txn, userIndexes, getPathIndex(txn, pathIndexes, path), weight);
+						} else {
+							addContributions(txn, userIndexes, getPathIndex(txn, pathIndexes, ""), weight);
+							break;
+						}
+					}
+				}
+			}
+			
+		});
+		return contributions;
+	}
+	
 	@Override
 	public Collection<ObjectId> getDescendants(Project project, Collection<ObjectId> ancestors) {
 		Environment env = getEnv(project.getId().toString());
@@ -0,0 +1,208 @@
+package io.onedev.server.manager.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.manager.IssueFieldBeanManager;
+import io.onedev.server.manager.SettingManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.Setting;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.GroovyUtils;
+import io.onedev.server.util.inputspec.InputSpec;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.server.web.editable.BeanIntrospector;
+import io.onedev.utils.ExceptionUtils;
+
+@Singleton
+public class DefaultIssueFieldBeanManager implements IssueFieldBeanManager, MetricContribution {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultIssueFieldBeanManager.class);
+	
+	private static final String BEAN_PREFIX = "IssueFieldBean";
+	
+	private static final int MAX_BEAN_CLASSES = 500;
+	
+	private final SettingManager settingManager;
+	
+	private final ExecutorService executorService;
+	
+	private final Dao dao;
+	
+	/*
+	 * Version of global issue setting, increased each time issue setting is saved. Bean classes 
+	 * defined with an older version will be redefined  
+	 */
+	private final AtomicLong issueSettingVersion = new AtomicLong(0);
+	
+	private final Cache<Long, BeanClass> beanClasses = CacheBuilder.newBuilder()
+			.maximumSize(MAX_BEAN_CLASSES)
+			.recordStats()
+			.removalListener(new RemovalListener<Long, BeanClass>() {
+
+				@Override
+				public void onRemoval(RemovalNotification<Long, BeanClass> notification) {
+					Class<?> beanClass = notification.getValue().getBeanClass();
+					BeanIntrospector.invalidate(beanClass);
+					GroovyUtils.unload(beanClass);
+				}
+				
+			})
+			.build();
+	
+	@Inject
+	public DefaultIssueFieldBeanManager(Dao dao, SettingManager settingManager, ExecutorService executorService) {
+		this.dao = dao;
+		this.settingManager = settingManager;
+		this.executorService = executorService;
+	}
+	
+	@Override
+	public Class<? extends Serializable> defineBeanClass(Project project) {
+		return defineBeanClass(project.getId());
+	}
+	
+	@Sessional
+	protected Class<? extends Serializable> defineBeanClass(Long projectId) {
+		long version = issueSettingVersion.get();
+		Callable<BeanClass> loader = new Callable<BeanClass>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public BeanClass call() throws Exception {
+				Class<? extends Serializable> beanClass = (Class<? extends Serializable>) InputSpec.defineClass(
+						BEAN_PREFIX + projectId, settingManager.getIssueSetting().getFieldSpecs());
+				return new BeanClass(version, beanClass);
+			}
+			
+		};
+		try {
+			BeanClass beanClass = beanClasses.get(projectId, loader);
+			if (beanClass.getVersion() != version) {
+				beanClasses.asMap().remove(projectId, beanClass);
+				beanClass = beanClasses.get(projectId, loader);
+			}
+			return beanClass.getBeanClass();
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+
+	@Nullable
+	@Override
+	public Class<? extends Serializable> loadBeanClass(String className) {
+		if (className.startsWith(BEAN_PREFIX)) 
+			return defineBeanClass(Long.valueOf(className.substring(BEAN_PREFIX.length())));
+		else 
+			return null;
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof Setting && ((Setting)event.getEntity()).getKey() == Setting.Key.ISSUE) {
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					issueSettingVersion.incrementAndGet();
+					
+					/*
+					 * Precompile bean classes of recently used projects in background so that 
+					 * users do not have to wait for groovy compilation when open issue pages
+					 */
+					Collection<Long> projectIds = new ArrayList<>(beanClasses.asMap().keySet());
+					executorService.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							for (Long projectId: projectIds) {
+								try {
+									defineBeanClass(projectId);
+								} catch (Exception e) {
+									logger.error("Error defining issue field bean class", e);
+									break;
+								}
+							}
+						}
+						
+					});
+				}
+				
+			});
+		}
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					beanClasses.invalidate(projectId);
+				}
+				
+			});
+		}
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Issue Field Bean Classes";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return MetricUtils.getCacheMetrics(beanClasses);
+	}
+	
+	private static class BeanClass {
+		
+		private final long version;
+		
+		private final Class<? extends Serializable> beanClass;
+		
+		public BeanClass(long version, Class<? extends Serializable> beanClass) {
+			this.version = version;
+			this.beanClass = beanClass;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public Class<? extends Serializable> getBeanClass() {
+			return beanClass;
+		}
+		
+	}
+	
+}
@@ -102,6 +102,17 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 		return find(criteria);
 	}
 	
+	@Sessional
+	@Override
+	public Collection<Issue> query(Project project, Collection<Long> numbers) {
+		if (numbers.isEmpty())
+			return new ArrayList<>();
+		EntityCriteria<Issue> criteria = newCriteria();
+		criteria.add(Restrictions.eq("project", project));
+		criteria.add(Restrictions.in("number", numbers));
+		return query(criteria);
+	}
+	
 	@Transactional
 	@Override
 	public void open(Issue issue) {
@@ -16,6 +16,7 @@ import io.onedev.server.event.issue.IssueCommented;
 import io.onedev.server.event.issue.IssueDeleted;
 import io.onedev.server.event.issue.IssueEvent;
 import io.onedev.server.event.issue.IssueOpened;
+import io.onedev.server.manager.BatchWorkManager;
 import io.onedev.server.manager.IssueWatchManager;
 import io.onedev.server.manager.MailManager;
 import io.onedev.server.manager.MarkdownManager;
@@ -28,15 +29,23 @@ import io.onedev.server.model.User;
 import io.onedev.server.model.support.NamedQuery;
 import io.onedev.server.model.support.QuerySetting;
 import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.search.entity.EntityQuery;
+import io.onedev.server.search.entity.EntityQueryCache;
 import io.onedev.server.search.entity.QueryWatchBuilder;
 import io.onedev.server.search.entity.issue.IssueQuery;
+import io.onedev.server.search.entity.issue.IssueQueryParser.QueryContext;
+import io.onedev.server.util.BatchWorker;
 import io.onedev.server.util.markdown.MentionParser;
+import io.onedev.server.util.watch.QueryWatchWork;
+import io.onedev.utils.concurrent.Prioritized;
 import jersey.repackaged.com.google.common.collect.Lists;
 
 @Singleton
 public class DefaultIssueNotificationManager {
 	
+	private static final int PRIORITY = 50;
+	
 	private final MailManager mailManager;
 	
 	private final UrlManager urlManager;
@@ -47,14 +56,24 @@ public class DefaultIssueNotificationManager {
 	
 	private final UserInfoManager userInfoManager;
 	
+	private final BatchWorkManager batchWorkManager;
+	
+	private final EntityQueryCache entityQueryCache;
+	
+	private final Dao dao;
+	
 	@Inject
 	public DefaultIssueNotificationManager(MarkdownManager markdownManager, MailManager mailManager, 
-			UrlManager urlManager, IssueWatchManager issueWatchManager, UserInfoManager userInfoManager) {
+			UrlManager urlManager, IssueWatchManager issueWatchManager, UserInfoManager userInfoManager, 
+			BatchWorkManager batchWorkManager, EntityQueryCache entityQueryCache, Dao dao) {
 		this.mailManager = mailManager;
 		this.urlManager = urlManager;
 		this.markdownManager = markdownManager;
 		this.issueWatchManager = issueWatchManager;
 		this.userInfoManager = userInfoManager;
+		this.batchWorkManager = batchWorkManager;
+		this.entityQueryCache = entityQueryCache;
+		this.dao = dao;
 	}
 	
 	@Transactional
@@ -64,32 +83,6 @@ public class DefaultIssueNotificationManager {
 			Issue issue = event.getIssue();
 			User user = event.getUser();
 
-			for (Map.Entry<User, Boolean> entry: new QueryWatchBuilder<Issue>() {
-
-				@Override
-				protected Issue getEntity() {
-					return issue;
-				}
-
-				@Override
-				protected Collection<? extends QuerySetting<?>> getQuerySettings() {
-					return issue.getProject().getIssueQuerySettings();
-				}
-
-				@Override
-				protected EntityQuery<Issue> parse(String queryString) {
-					return IssueQuery.parse(issue.getProject(), queryString, true);
-				}
-
-				@Override
-				protected NamedQuery getSavedProjectQuery(String name) {
-					return issue.getProject().getIssueSetting().getSavedQuery(name);
-				}
-				
-			}.getWatches().entrySet()) {
-				watch(issue, entry.getKey(), entry.getValue());
-			}
-			
 			if (user != null)
 				watch(issue, user, true);
 			
@@ -159,8 +152,106 @@ public class DefaultIssueNotificationManager {
 			if (!usersToNotify.isEmpty()) {
 				String subject = String.format("New activities in issue #%d - %s", issue.getNumber(), issue.getTitle());
 				String body = String.format("Visit <a href='%s'>%s</a> for details", url, url);
-				mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), subject, body);
+				mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), 
+						subject, body, "issue-" + issue.getId());
 			}			
+			
+			QueryWatchWork work = new QueryWatchWork(PRIORITY, event.getDate(), true);
+			if (user != null)
+				work.exclude(user.getId());
+			for (User notifiedUser: notifiedUsers)
+				work.exclude(notifiedUser.getId());
+			Long issueId = issue.getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					batchWorkManager.submit(getQueryWatchEvaluator(issueId), work);
+				}
+				
+			});
+		}
+	}
+	
+	private BatchWorker getQueryWatchEvaluator(Long issueId) {
+		return new BatchWorker("issue-" + issueId + "-evaluateQueryWatches") {
+
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				evaluateQueryWatches(issueId, works);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Evaluate saved queries watched by users against specified issue. This is done in batch worker 
+	 * outside of the event transaction, as there can be many watched queries in a project. Users 
+	 * starting to watch the issue by queries will be notified of the events if necessary
+	 */
+	@Transactional
+	public void evaluateQueryWatches(Long issueId, Collection<Prioritized> works) {
+		Issue issue = dao.get(Issue.class, issueId);
+		if (issue == null)
+			return;
+		
+		Collection<User> usersToNotify = new HashSet<>();
+		for (Map.Entry<User, Boolean> entry: new QueryWatchBuilder<Issue>() {
+
+			@Override
+			protected Issue getEntity() {
+				return issue;
+			}
+
+			@Override
+			protected Collection<? extends QuerySetting<?>> getQuerySettings() {
+				return issue.getProject().getIssueQuerySettings();
+			}
+
+			@Override
+			protected EntityQuery<Issue> parse(String queryString) {
+				QueryContext syntax = entityQueryCache.getSyntax(Issue.class, queryString, 
+						new EntityQueryCache.SyntaxParser<QueryContext>() {
+
+					@Override
+					public QueryContext parse(String queryString) {
+						return IssueQuery.parseSyntax(queryString);
+					}
+					
+				});
+				return syntax != null? IssueQuery.bind(issue.getProject(), syntax, true): null;
+			}
+
+			@Override
+			protected NamedQuery getSavedProjectQuery(String name) {
+				return issue.getProject().getIssueSetting().getSavedQuery(name);
+			}
+			
+		}.getWatches().entrySet()) {
+			User user = entry.getKey();
+			IssueWatch watch = (IssueWatch) issue.getWatch(user, true);
+			if (watch.isNew()) {
+				watch.setWatching(entry.getValue());
+				issueWatchManager.save(watch);
+				if (watch.isWatching() && !userInfoManager.isNotified(user, issue)) {
+					Date visitDate = userInfoManager.getIssueVisitDate(user, issue);
+					for (Prioritized work: works) {
+						if (((QueryWatchWork) work).shouldNotify(user.getId(), visitDate)) {
+							usersToNotify.add(user);
+							userInfoManager.setIssueNotified(user, issue, true);
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		if (!usersToNotify.isEmpty()) {
+			String url = urlManager.urlFor(issue);
+			String subject = String.format("New activities in issue #%d - %s", issue.getNumber(), issue.getTitle());
+			String body = String.format("Visit <a href='%s'>%s</a> for details", url, url);
+			mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), 
+					subject, body, "issue-" + issue.getId());
 		}
 	}
 	
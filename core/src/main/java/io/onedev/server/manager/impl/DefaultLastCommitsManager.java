@@ -0,0 +1,315 @@
+package io.onedev.server.manager.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren.Value;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.manager.BatchWorkManager;
+import io.onedev.server.manager.LastCommitsManager;
+import io.onedev.server.manager.ProjectManager;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.UnitOfWork;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.util.BatchWorker;
+import io.onedev.utils.FileUtils;
+import io.onedev.utils.concurrent.Prioritized;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Last commits of children are stored by commit and tree path. As the calculation uses stored
+ * result of any ancestor commit to stop walking early, result of a new commit can be derived
+ * incrementally from result of its parent commits. Last commits of root and top level
+ * directories of default branch are calculated in background when default branch is updated,
+ * and result of other requests is only stored if it takes long to calculate.
+ * <p>
+ * Number of stored results is capped per project, and oldest results are removed first.
+ *
+ */
+@Singleton
+public class DefaultLastCommitsManager extends AbstractEnvironmentManager implements LastCommitsManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultLastCommitsManager.class);
+
+	private static final int INFO_VERSION = 1;
+
+	private static final String INFO_DIR = "lastCommits";
+
+	// Directory used by previous versions to store serialized last commits
+	private static final String LEGACY_INFO_DIR = "last_commits";
+
+	private static final String LAST_COMMITS_STORE = "lastCommits";
+
+	private static final String SEQUENCES_STORE = "sequences";
+
+	private static final int MAX_ENTRIES = 5000;
+
+	private static final long CALCULATION_THRESHOLD = 1000;
+	
+	private static final int MAX_SUMMARY_LENGTH = 1000;
+
+	private static final int PRIORITY = 100;
+
+	private final StorageManager storageManager;
+
+	private final ProjectManager projectManager;
+
+	private final BatchWorkManager batchWorkManager;
+
+	private final UnitOfWork unitOfWork;
+
+	@Inject
+	public DefaultLastCommitsManager(StorageManager storageManager, ProjectManager projectManager,
+			BatchWorkManager batchWorkManager, UnitOfWork unitOfWork) {
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+		this.batchWorkManager = batchWorkManager;
+		this.unitOfWork = unitOfWork;
+	}
+
+	@Override
+	public LastCommitsOfChildren getLastCommitsOfChildren(Project project, String revision, @Nullable String path) {
+		return calculate(project, project.getObjectId(revision), path, false);
+	}
+
+	private LastCommitsOfChildren calculate(Project project, ObjectId commitId, @Nullable String path,
+			boolean alwaysStore) {
+		String treePath = GitUtils.normalizePath(path);
+		if (treePath == null)
+			treePath = "";
+		byte[] pathBytes = treePath.getBytes(StandardCharsets.UTF_8);
+
+		Environment env = getEnv(project.getId().toString());
+		Store lastCommitsStore = getStore(env, LAST_COMMITS_STORE);
+		Store sequencesStore = getStore(env, SEQUENCES_STORE);
+
+		// Use a single read transaction for stored results looked up while walking commits
+		Transaction readTxn = env.beginReadonlyTransaction();
+		LastCommitsOfChildren lastCommits;
+		long elapsed;
+		try {
+			LastCommitsOfChildren.Cache cache = new LastCommitsOfChildren.Cache() {
+
+				@Override
+				public Map<String, Value> getLastCommitsOfChildren(ObjectId commitId) {
+					byte[] bytes = readBytes(lastCommitsStore, readTxn, getKey(commitId, pathBytes));
+					return bytes != null? decode(bytes): null;
+				}
+
+			};
+
+			long time = System.currentTimeMillis();
+			lastCommits = new LastCommitsOfChildren(project.getRepository(), commitId, treePath, cache);
+			elapsed = System.currentTimeMillis() - time;
+		} finally {
+			readTxn.abort();
+		}
+
+		if (alwaysStore || elapsed > CALCULATION_THRESHOLD) {
+			ByteIterable key = getKey(commitId, pathBytes);
+			ByteIterable value = new ArrayByteIterable(encode(lastCommits));
+			env.executeInTransaction(new TransactionalExecutable() {
+
+				@Override
+				public void execute(Transaction txn) {
+					putCapped(lastCommitsStore, sequencesStore, txn, key, value, MAX_ENTRIES);
+				}
+
+			});
+		}
+		return lastCommits;
+	}
+
+	private ByteIterable getKey(ObjectId commitId, byte[] pathBytes) {
+		byte[] keyBytes = new byte[20 + pathBytes.length];
+		commitId.copyRawTo(keyBytes, 0);
+		System.arraycopy(pathBytes, 0, keyBytes, 20, pathBytes.length);
+		return new ArrayByteIterable(keyBytes);
+	}
+
+	/*
+	 * Many children normally share the same last commit, so distinct commits are written
+	 * first, and each child refers to its commit by index
+	 */
+	private byte[] encode(Map<String, Value> lastCommits) {
+		List<Value> values = new ArrayList<>();
+		Map<ObjectId, Integer> valueIndexes = new HashMap<>();
+		for (Value value: lastCommits.values()) {
+			if (!valueIndexes.containsKey(value.getId())) {
+				valueIndexes.put(value.getId(), values.size());
+				values.add(value);
+			}
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream os = new DataOutputStream(baos)) {
+			os.writeInt(values.size());
+			byte[] idBytes = new byte[20];
+			for (Value value: values) {
+				value.getId().copyRawTo(idBytes, 0);
+				os.write(idBytes);
+				os.writeUTF(value.getAuthor().getName());
+				os.writeUTF(value.getAuthor().getEmailAddress());
+				os.writeLong(value.getAuthor().getWhen().getTime());
+				os.writeInt(value.getAuthor().getTimeZoneOffset());
+				os.writeLong(value.getCommitDate().getTime());
+				os.writeUTF(StringUtils.abbreviate(value.getSummary(), MAX_SUMMARY_LENGTH));
+			}
+			os.writeInt(lastCommits.size());
+			for (Map.Entry<String, Value> entry: lastCommits.entrySet()) {
+				os.writeUTF(entry.getKey());
+				os.writeInt(valueIndexes.get(entry.getValue().getId()));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	private Map<String, Value> decode(byte[] bytes) {
+		try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int valueCount = is.readInt();
+			List<Value> values = new ArrayList<>(valueCount);
+			byte[] idBytes = new byte[20];
+			for (int i=0; i<valueCount; i++) {
+				is.readFully(idBytes);
+				ObjectId id = ObjectId.fromRaw(idBytes);
+				String authorName = is.readUTF();
+				String authorEmail = is.readUTF();
+				long authorWhen = is.readLong();
+				int authorTimeZoneOffset = is.readInt();
+				PersonIdent author = new PersonIdent(authorName, authorEmail, authorWhen, authorTimeZoneOffset);
+				Date commitDate = new Date(is.readLong());
+				String summary = is.readUTF();
+				values.add(new Value(id, author, commitDate, summary));
+			}
+			int childCount = is.readInt();
+			Map<String, Value> lastCommits = new HashMap<>();
+			for (int i=0; i<childCount; i++) {
+				String child = is.readUTF();
+				lastCommits.put(child, values.get(is.readInt()));
+			}
+			return lastCommits;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void precompute(Project project) {
+		String defaultBranch = project.getDefaultBranch();
+		if (defaultBranch == null)
+			return;
+		ObjectId commitId = project.getObjectId(GitUtils.branch2ref(defaultBranch), false);
+		if (commitId == null)
+			return;
+
+		logger.debug("Calculating last commits of default branch in project '{}'...", project.getName());
+
+		calculate(project, commitId, null, true);
+
+		Collection<String> topLevelDirs = new ArrayList<>();
+		try (TreeWalk treeWalk = new TreeWalk(project.getRepository())) {
+			treeWalk.addTree(project.getRevCommit(commitId).getTree());
+			treeWalk.setRecursive(false);
+			while (treeWalk.next()) {
+				if (FileMode.TREE.equals(treeWalk.getFileMode(0)))
+					topLevelDirs.add(treeWalk.getPathString());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		for (String topLevelDir: topLevelDirs)
+			calculate(project, commitId, topLevelDir, true);
+	}
+
+	private BatchWorker getBatchWorker(Long projectId) {
+		return new BatchWorker("project-" + projectId + "-precomputeLastCommits") {
+
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				// Only need to calculate for current head of default branch
+				unitOfWork.run(new Runnable() {
+
+					@Override
+					public void run() {
+						precompute(projectManager.load(projectId));
+					}
+
+				});
+			}
+
+		};
+	}
+
+	@Sessional
+	@Listen
+	public void on(RefUpdated event) {
+		Project project = event.getProject();
+		if (!event.getNewCommitId().equals(ObjectId.zeroId()) && project.getDefaultBranch() != null
+				&& event.getRefName().equals(Constants.R_HEADS + project.getDefaultBranch())) {
+			batchWorkManager.submit(getBatchWorker(project.getId()), new Prioritized(PRIORITY));
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File projectInfoDir = storageManager.getProjectInfoDir(Long.valueOf(envKey));
+		File legacyInfoDir = new File(projectInfoDir, LEGACY_INFO_DIR);
+		if (legacyInfoDir.exists())
+			FileUtils.deleteDir(legacyInfoDir);
+		File infoDir = new File(projectInfoDir, INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+}
@@ -1,72 +1,86 @@
 package io.onedev.server.manager.impl;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Collection;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.codec.CharEncoding;
 import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.HtmlEmail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.onedev.launcher.bootstrap.Bootstrap;
-import io.onedev.server.manager.SettingManager;
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.manager.MailManager;
+import io.onedev.server.manager.SettingManager;
 import io.onedev.server.model.support.setting.MailSetting;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.mail.MailDispatcher;
+import io.onedev.server.util.metric.MetricContribution;
 
 @Singleton
-public class DefaultMailManager implements MailManager {
+public class DefaultMailManager implements MailManager, MetricContribution {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultMailManager.class);
 	
-	private final SettingManager configManager;
+	private static final long DIGEST_WINDOW = 30000;
 	
-	private final ExecutorService executorService;
+	private static final long MIN_SEND_INTERVAL = 100;
+	
+	private final SettingManager configManager;
 	
 	private final Dao dao;
 	
+	private final MailDispatcher dispatcher;
+	
 	@Inject
-	public DefaultMailManager(Dao dao, SettingManager configManager, ExecutorService executorService) {
+	public DefaultMailManager(Dao dao, SettingManager configManager) {
 		this.dao = dao;
 		this.configManager = configManager;
-		this.executorService = executorService;
+		dispatcher = new MailDispatcher(new Supplier<MailSetting>() {
+
+			@Override
+			public MailSetting get() {
+				return configManager.getMailSetting();
+			}
+			
+		}, DIGEST_WINDOW, MIN_SEND_INTERVAL);
 	}
 
-	@Sessional
+	@Listen
+	public void on(SystemStarted event) {
+		dispatcher.start();
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		dispatcher.stop();
+	}
+	
 	@Override
 	public void sendMailAsync(Collection<String> toList, String subject, String body) {
+		sendMailAsync(toList, subject, body, null);
+	}
+	
+	@Sessional
+	@Override
+	public void sendMailAsync(Collection<String> toList, String subject, String body, @Nullable String digestKey) {
 		dao.doAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-				executorService.execute(newSendMailRunnable(toList, subject, body));
+				dispatcher.dispatch(toList, subject, body, digestKey);
 			}
 			
 		});
 	}
 	
-	private Runnable newSendMailRunnable(Collection<String> toList, String subject, String body) {
-		return new Runnable() {
-
-			@Override
-			public void run() {
-				try {
-					sendMail(toList, subject, body);
-				} catch (Exception e) {
-					logger.error("Error sending email (to: " + toList + ", subject: " + subject + ")", e);
-				}		
-			}
-			
-		};
-	}
-
 	@Override
 	public void sendMail(MailSetting mailSetting, Collection<String> toList, String subject, String body) {
 		if (toList.isEmpty())
@@ -78,42 +92,8 @@ public class DefaultMailManager implements MailManager {
 		if (mailSetting == null)
 			throw new RuntimeException("Mail setting is not defined.");
 	
-		HtmlEmail email = new HtmlEmail();
-        email.setSocketConnectionTimeout(Bootstrap.SOCKET_CONNECT_TIMEOUT);
-
-        if (mailSetting.getTimeout() != 0)
-        	email.setSocketTimeout(mailSetting.getTimeout()*1000);
-        
-        email.setStartTLSEnabled(true);
-        email.setSSLOnConnect(mailSetting.isEnableSSL());
-        email.setSSLCheckServerIdentity(false);
-		
-		String senderEmail = mailSetting.getSenderAddress();
-		if (senderEmail == null) {
-			String hostName;
-			try {
-				hostName = InetAddress.getLocalHost().getHostName();
-			} catch (UnknownHostException e) {
-				throw new RuntimeException(e);
-			}
-			senderEmail = "onedev@" + hostName;
-		}
+		HtmlEmail email = MailDispatcher.createEmail(mailSetting, toList, subject, body);
 		try {
-			email.setFrom(senderEmail);
-			for (String address: toList)
-				email.addTo(address);
-	
-			email.setHostName(mailSetting.getSmtpHost());
-			email.setSmtpPort(mailSetting.getSmtpPort());
-			email.setSslSmtpPort(String.valueOf(mailSetting.getSmtpPort()));
-	        String smtpUser = mailSetting.getSmtpUser();
-			if (smtpUser != null)
-				email.setAuthentication(smtpUser, mailSetting.getSmtpPassword());
-			email.setCharset(CharEncoding.UTF_8);
-			
-			email.setSubject(subject);
-			email.setHtmlMsg(body);
-			
 			logger.debug("Sending email (to: {}, subject: {})... ", toList, subject);
 			email.send();
 		} catch (EmailException e) {
@@ -126,4 +106,14 @@ public class DefaultMailManager implements MailManager {
 		sendMail(configManager.getMailSetting(), toList, subject, body);
 	}
 
+	@Override
+	public String getMetricGroup() {
+		return "Mail Dispatcher";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return dispatcher.getMetrics();
+	}
+
 }
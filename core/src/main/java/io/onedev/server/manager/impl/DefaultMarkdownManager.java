@@ -1,17 +1,29 @@
 package io.onedev.server.manager.impl;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.eclipse.jgit.lib.ObjectId;
 import org.jsoup.nodes.Document;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.vladsch.flexmark.Extension;
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.ext.anchorlink.AnchorLinkExtension;
@@ -26,26 +38,82 @@ import com.vladsch.flexmark.parser.ParserEmulationProfile;
 import com.vladsch.flexmark.util.options.MutableDataHolder;
 import com.vladsch.flexmark.util.options.MutableDataSet;
 
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.manager.CacheManager;
 import io.onedev.server.manager.MarkdownManager;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Issue;
 import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.User;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.facade.ProjectFacade;
+import io.onedev.server.util.facade.UserFacade;
 import io.onedev.server.util.markdown.MarkdownProcessor;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
 import io.onedev.utils.HtmlUtils;
 
 @Singleton
-public class DefaultMarkdownManager implements MarkdownManager {
+public class DefaultMarkdownManager implements MarkdownManager, MetricContribution {
 	
-	private final Set<Extension> contributedExtensions;
+	private static final long MAX_CACHE_WEIGHT = 16*1024*1024; // in characters
+	
+	private static final Pattern PATTERN_COMMIT = Pattern.compile("[a-z0-9]{40}");
+	
+	private final Dao dao;
+	
+	private final CacheManager cacheManager;
 	
 	private final Set<MarkdownProcessor> htmlTransformers;
 	
+	private final Parser parser;
+	
+	private final HtmlRenderer htmlRenderer;
+	
+	/*
+	 * Rendered html only depends on markdown content, so it is keyed by hash of the content
+	 */
+	private final Cache<String, String> renderCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHE_WEIGHT)
+			.weigher(new StringWeigher())
+			.recordStats()
+			.build();
+	
+	/*
+	 * Processed html also depends on referenced issues, pull requests, users and commits, but only 
+	 * on their existence, numbers and names. Instead of tracking individual references, we keep a 
+	 * version for each kind of reference, and bump it only when a reference of that kind may be 
+	 * rendered differently, for instance when an issue is created or removed, or when a user or 
+	 * project is renamed. Versions are included in the key only if the html may contain references 
+	 * of that kind, and entries of previous versions age out 
+	 */
+	private final Cache<String, String> processCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHE_WEIGHT)
+			.weigher(new StringWeigher())
+			.recordStats()
+			.build();
+	
+	private final AtomicLong issueVersion = new AtomicLong(0);
+	
+	private final AtomicLong pullRequestVersion = new AtomicLong(0);
+	
+	private final AtomicLong userVersion = new AtomicLong(0);
+	
+	// Commits are only referenced in current project, so their versions are kept per project
+	private final Map<Long, Long> commitVersions = new ConcurrentHashMap<>();
+	
 	@Inject
-	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers) {
-		this.contributedExtensions = contributedExtensions;
+	public DefaultMarkdownManager(Dao dao, CacheManager cacheManager, Set<Extension> contributedExtensions, 
+			Set<MarkdownProcessor> htmlTransformers) {
+		this.dao = dao;
+		this.cacheManager = cacheManager;
 		this.htmlTransformers = htmlTransformers;
-	}
-
-	@Override
-	public String render(String markdown) {
+		
 		List<Extension> extensions = new ArrayList<>();
 		extensions.add(AnchorLinkExtension.create());
 		extensions.add(TablesExtension.create());
@@ -68,12 +136,21 @@ public class DefaultMarkdownManager implements MarkdownManager {
 				.set(TablesExtension.HEADER_SEPARATOR_COLUMN_MATCH, true)
 				.set(Parser.EXTENSIONS, extensions);
 
-		Parser parser = Parser.builder(options).build();
+		// Parser and renderer are immutable and thread-safe once built
+		parser = Parser.builder(options).build();
+		htmlRenderer = HtmlRenderer.builder(options).build();
+	}
 
-		HtmlRenderer htmlRenderer = HtmlRenderer.builder(options).build();
-		
-		Node document = parser.parse(markdown);
-		return htmlRenderer.render(document);
+	@Override
+	public String render(String markdown) {
+		String key = DigestUtils.sha256Hex(markdown);
+		String rendered = renderCache.getIfPresent(key);
+		if (rendered == null) {
+			Node document = parser.parse(markdown);
+			rendered = htmlRenderer.render(document);
+			renderCache.put(key, rendered);
+		}
+		return rendered;
 	}
 
 	@Override
@@ -85,10 +162,173 @@ public class DefaultMarkdownManager implements MarkdownManager {
 
 	@Override
 	public String process(Project project, String rendered, @Nullable Object context) {
+		/*
+		 * Processing with context (for instance blob render context) depends on revision and 
+		 * permission of current user, and is not cached
+		 */
+		if (context == null) {
+			String key = getProcessKey(project, rendered);
+			String processed = processCache.getIfPresent(key);
+			if (processed == null) {
+				processed = doProcess(project, rendered, context);
+				processCache.put(key, processed);
+			}
+			return processed;
+		} else {
+			return doProcess(project, rendered, context);
+		}
+	}
+	
+	private String doProcess(Project project, String rendered, @Nullable Object context) {
 		Document document = HtmlUtils.clean(rendered);
 		for (MarkdownProcessor htmlTransformer: htmlTransformers)
 			htmlTransformer.process(project, document, context);
 		return document.body().html();
 	}
+	
+	private String getProcessKey(@Nullable Project project, String rendered) {
+		StringBuilder builder = new StringBuilder(DigestUtils.sha256Hex(rendered));
+		builder.append(":").append(project!=null?project.getId():"");
+		
+		// Fast scan similar to reference parsers, false positives only make the key more specific
+		if (rendered.indexOf('#') != -1) {
+			String lowerCaseRendered = rendered.toLowerCase();
+			if (lowerCaseRendered.contains("issue"))
+				builder.append(":i").append(issueVersion.get());
+			if (lowerCaseRendered.contains("request"))
+				builder.append(":p").append(pullRequestVersion.get());
+		}
+		if (rendered.indexOf('@') != -1)
+			builder.append(":u").append(userVersion.get());
+		if (project != null && PATTERN_COMMIT.matcher(rendered).find()) {
+			Long commitVersion = commitVersions.get(project.getId());
+			builder.append(":c").append(commitVersion!=null?commitVersion:0);
+		}
+		
+		// Urls generated by processors are relative to base url of current request 
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle != null)
+			builder.append(":").append(requestCycle.getUrlRenderer().getBaseUrl());
+		return builder.toString();
+	}
+	
+	private void increaseVersionAfterCommit(AtomicLong version) {
+		dao.doAfterCommit(new Runnable() {
 
+			@Override
+			public void run() {
+				version.incrementAndGet();
+			}
+			
+		});
+	}
+	
+	private void increaseCommitVersion(Long projectId) {
+		commitVersions.compute(projectId, new BiFunction<Long, Long, Long>() {
+
+			@Override
+			public Long apply(Long projectId, Long version) {
+				return version!=null? version+1: 1;
+			}
+			
+		});
+	}
+	
+	private void increaseCommitVersionAfterCommit(Long projectId) {
+		dao.doAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				increaseCommitVersion(projectId);
+			}
+			
+		});
+	}
+	
+	/*
+	 * Links to issues, pull requests and commits contain project name, and references of other 
+	 * projects are resolved by project name
+	 */
+	private void onProjectRenamedOrRemoved(Long projectId) {
+		increaseVersionAfterCommit(issueVersion);
+		increaseVersionAfterCommit(pullRequestVersion);
+		increaseCommitVersionAfterCommit(projectId);
+	}
+	
+	/*
+	 * Cache manager updates its facades after commit, so names in it are still the old names 
+	 * while the persist event is being handled 
+	 */
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		AbstractEntity entity = event.getEntity();
+		if (entity instanceof Issue) {
+			if (event.isNew())
+				increaseVersionAfterCommit(issueVersion);
+		} else if (entity instanceof PullRequest) {
+			if (event.isNew())
+				increaseVersionAfterCommit(pullRequestVersion);
+		} else if (entity instanceof User) {
+			UserFacade facade = cacheManager.getUser(entity.getId());
+			if (event.isNew() || facade == null || !facade.getName().equals(((User) entity).getName()))
+				increaseVersionAfterCommit(userVersion);
+		} else if (entity instanceof Project) {
+			ProjectFacade facade = cacheManager.getProject(entity.getId());
+			if (!event.isNew() && (facade == null || !facade.getName().equals(((Project) entity).getName())))
+				onProjectRenamedOrRemoved(entity.getId());
+		}
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		AbstractEntity entity = event.getEntity();
+		if (entity instanceof Issue) 
+			increaseVersionAfterCommit(issueVersion);
+		else if (entity instanceof PullRequest) 
+			increaseVersionAfterCommit(pullRequestVersion);
+		else if (entity instanceof User) 
+			increaseVersionAfterCommit(userVersion);
+		else if (entity instanceof Project) 
+			onProjectRenamedOrRemoved(entity.getId());
+	}
+	
+	/*
+	 * New commits may make previously unresolved commit hashes resolvable. Deleting a ref does 
+	 * not remove any commits, so it does not affect processed html
+	 */
+	@Listen
+	public void on(RefUpdated event) {
+		if (!event.getNewCommitId().equals(ObjectId.zeroId()))
+			increaseCommitVersion(event.getProject().getId());
+	}
+	
+	@Override
+	public String getMetricGroup() {
+		return "Markdown Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry: MetricUtils.getCacheMetrics(renderCache).entrySet())
+			metrics.put("Render " + entry.getKey(), entry.getValue());
+		for (Map.Entry<String, String> entry: MetricUtils.getCacheMetrics(processCache).entrySet())
+			metrics.put("Process " + entry.getKey(), entry.getValue());
+		metrics.put("Issue Version", String.valueOf(issueVersion.get()));
+		metrics.put("Pull Request Version", String.valueOf(pullRequestVersion.get()));
+		metrics.put("User Version", String.valueOf(userVersion.get()));
+		return metrics;
+	}
+
+	private static class StringWeigher implements Weigher<String, String> {
+
+		@Override
+		public int weigh(String key, String value) {
+			return key.length() + value.length();
+		}
+		
+	}
+	
 }
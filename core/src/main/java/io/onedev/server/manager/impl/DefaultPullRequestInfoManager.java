@@ -0,0 +1,233 @@
+package io.onedev.server.manager.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.git.command.FileChange;
+import io.onedev.server.git.command.ListFileChangesCommand;
+import io.onedev.server.manager.PullRequestInfoManager;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequestUpdate;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.utils.FileUtils;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Changed files of an update only depend on merge base, base and head commit of the update, 
+ * and file changes only depend on the two commits being compared, so they are stored by these 
+ * commits and never need to be invalidated. Paths are stored as int indexes to save space. 
+ *
+ */
+@Singleton
+public class DefaultPullRequestInfoManager extends AbstractEnvironmentManager implements PullRequestInfoManager {
+
+	private static final int INFO_VERSION = 1;
+	
+	private static final String INFO_DIR = "pullRequest";
+	
+	private static final String DEFAULT_STORE = "default";
+	
+	private static final String CHANGED_FILES_STORE = "changedFiles";
+	
+	private static final String FILE_CHANGES_STORE = "fileChanges";
+	
+	private static final String PATH_TO_INDEX_STORE = "pathToIndex";
+	
+	private static final String INDEX_TO_PATH_STORE = "indexToPath";
+	
+	private static final ByteIterable NEXT_PATH_INDEX_KEY = new StringByteIterable("nextPathIndex");
+	
+	private final StorageManager storageManager;
+	
+	@Inject
+	public DefaultPullRequestInfoManager(StorageManager storageManager) {
+		this.storageManager = storageManager;
+	}
+	
+	@Override
+	public Collection<String> getChangedFiles(PullRequestUpdate update) {
+		Project project = update.getRequest().getTargetProject();
+		Environment env = getEnv(project.getId().toString());
+		Store defaultStore = getStore(env, DEFAULT_STORE);
+		Store changedFilesStore = getStore(env, CHANGED_FILES_STORE);
+		Store pathToIndexStore = getStore(env, PATH_TO_INDEX_STORE);
+		Store indexToPathStore = getStore(env, INDEX_TO_PATH_STORE);
+		
+		ByteIterable key = new ArrayByteIterable(getKeyBytes(update));
+		Collection<String> changedFiles = env.computeInReadonlyTransaction(new TransactionalComputable<Collection<String>>() {
+
+			@Override
+			public Collection<String> compute(Transaction txn) {
+				byte[] bytes = readBytes(changedFilesStore, txn, key);
+				if (bytes != null) {
+					Collection<String> changedFiles = new HashSet<>();
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining()) {
+						String path = readPath(indexToPathStore, txn, buffer.getInt());
+						if (path == null)
+							return null;
+						changedFiles.add(path);
+					}
+					return changedFiles;
+				} else {
+					return null;
+				}
+			}
+			
+		});
+		
+		if (changedFiles == null) {
+			Collection<String> calculatedChangedFiles = update.calcChangedFiles();
+			env.executeInTransaction(new TransactionalExecutable() {
+
+				@Override
+				public void execute(Transaction txn) {
+					ByteBuffer buffer = ByteBuffer.allocate(calculatedChangedFiles.size()*Integer.BYTES);
+					for (String path: calculatedChangedFiles) 
+						buffer.putInt(getPathIndex(defaultStore, pathToIndexStore, indexToPathStore, txn, path));
+					changedFilesStore.put(txn, key, new ArrayByteIterable(buffer.array()));
+				}
+				
+			});
+			changedFiles = calculatedChangedFiles;
+		}
+		return changedFiles;
+	}
+	
+	@Override
+	public Collection<FileChange> getFileChanges(Project project, ObjectId oldCommitId, ObjectId newCommitId) {
+		Environment env = getEnv(project.getId().toString());
+		Store defaultStore = getStore(env, DEFAULT_STORE);
+		Store fileChangesStore = getStore(env, FILE_CHANGES_STORE);
+		Store pathToIndexStore = getStore(env, PATH_TO_INDEX_STORE);
+		Store indexToPathStore = getStore(env, INDEX_TO_PATH_STORE);
+		
+		byte[] keyBytes = new byte[40];
+		oldCommitId.copyRawTo(keyBytes, 0);
+		newCommitId.copyRawTo(keyBytes, 20);
+		ByteIterable key = new ArrayByteIterable(keyBytes);
+		
+		Collection<FileChange> fileChanges = env.computeInReadonlyTransaction(new TransactionalComputable<Collection<FileChange>>() {
+
+			@Override
+			public Collection<FileChange> compute(Transaction txn) {
+				byte[] bytes = readBytes(fileChangesStore, txn, key);
+				if (bytes != null) {
+					Collection<FileChange> fileChanges = new ArrayList<>();
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining()) {
+						String path = readPath(indexToPathStore, txn, buffer.getInt());
+						if (path == null)
+							return null;
+						fileChanges.add(new FileChange(null, path, buffer.getInt(), buffer.getInt()));
+					}
+					return fileChanges;
+				} else {
+					return null;
+				}
+			}
+			
+		});
+		
+		if (fileChanges == null) {
+			ListFileChangesCommand cmd = new ListFileChangesCommand(project.getGitDir());
+			cmd.fromRev(oldCommitId.name());
+			cmd.toRev(newCommitId.name());
+			Collection<FileChange> calculatedFileChanges = cmd.call();
+			env.executeInTransaction(new TransactionalExecutable() {
+
+				@Override
+				public void execute(Transaction txn) {
+					ByteBuffer buffer = ByteBuffer.allocate(calculatedFileChanges.size()*Integer.BYTES*3);
+					for (FileChange change: calculatedFileChanges) {
+						buffer.putInt(getPathIndex(defaultStore, pathToIndexStore, indexToPathStore, txn, 
+								change.getPath()));
+						buffer.putInt(change.getAdditions());
+						buffer.putInt(change.getDeletions());
+					}
+					fileChangesStore.put(txn, key, new ArrayByteIterable(buffer.array()));
+				}
+				
+			});
+			fileChanges = calculatedFileChanges;
+		}
+		return fileChanges;
+	}
+	
+	private int getPathIndex(Store defaultStore, Store pathToIndexStore, Store indexToPathStore, 
+			Transaction txn, String path) {
+		StringByteIterable pathKey = new StringByteIterable(path);
+		int pathIndex = readInt(pathToIndexStore, txn, pathKey, -1);
+		if (pathIndex == -1) {
+			pathIndex = readInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, 0);
+			writeInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, pathIndex+1);
+			writeInt(pathToIndexStore, txn, pathKey, pathIndex);
+			indexToPathStore.put(txn, new IntByteIterable(pathIndex), pathKey);
+		}
+		return pathIndex;
+	}
+	
+	@Nullable
+	private String readPath(Store indexToPathStore, Transaction txn, int pathIndex) {
+		ByteIterable path = indexToPathStore.get(txn, new IntByteIterable(pathIndex));
+		if (path != null)
+			return new String(path.getBytesUnsafe(), 0, path.getLength(), StandardCharsets.UTF_8);
+		else
+			return null;
+	}
+	
+	private byte[] getKeyBytes(PullRequestUpdate update) {
+		byte[] bytes = new byte[60];
+		int index = 0;
+		for (String commitHash: Lists.newArrayList(update.getMergeBaseCommitHash(), 
+				update.getBaseCommitHash(), update.getHeadCommitHash())) {
+			ObjectId.fromString(commitHash).copyRawTo(bytes, index);
+			index += 20;
+		}
+		return bytes;
+	}
+	
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+	
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists()) 
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+	
+}
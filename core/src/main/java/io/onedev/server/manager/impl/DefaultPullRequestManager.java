@@ -18,9 +18,16 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -65,8 +72,10 @@ import io.onedev.server.event.pullrequest.PullRequestDeleted;
 import io.onedev.server.event.pullrequest.PullRequestEvent;
 import io.onedev.server.event.pullrequest.PullRequestMergePreviewCalculated;
 import io.onedev.server.event.pullrequest.PullRequestOpened;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.exception.OneException;
 import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.MergeResultCache;
 import io.onedev.server.git.command.FileChange;
 import io.onedev.server.manager.BatchWorkManager;
 import io.onedev.server.manager.BuildManager;
@@ -124,12 +133,13 @@ import io.onedev.server.util.BatchWorker;
 import io.onedev.server.util.PullRequestConstants;
 import io.onedev.server.util.facade.ProjectFacade;
 import io.onedev.server.util.facade.UserFacade;
+import io.onedev.server.util.metric.MetricContribution;
 import io.onedev.server.util.reviewrequirement.ReviewRequirement;
 import io.onedev.utils.ExceptionUtils;
 import io.onedev.utils.concurrent.Prioritized;
 
 @Singleton
-public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest> implements PullRequestManager {
+public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest> implements PullRequestManager, MetricContribution {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultPullRequestManager.class);
 	
@@ -139,6 +149,12 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 	
 	private static final int BACKEND_PREVIEW_PRIORITY = 50;
 	
+	private static final long RECHECK_DELAY = 5000;
+	
+	private static final long MAX_RECHECK_DELAY = 60000;
+	
+	private static final long ACTIVE_PERIOD = 7L*24*3600*1000;
+	
 	private final PullRequestUpdateManager pullRequestUpdateManager;
 	
 	private final UserManager userManager;
@@ -159,13 +175,28 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 	
 	private final BuildManager buildManager;
 	
+	private final MergeResultCache mergeResultCache;
+	
+	private final ScheduledExecutorService recheckScheduler = Executors.newSingleThreadScheduledExecutor();
+	
+	private final Map<String, PendingRecheck> pendingRechecks = new HashMap<>();
+	
+	private final ThreadLocal<Boolean> lazyMergePreview = new ThreadLocal<>();
+	
+	private final AtomicLong debouncedRechecks = new AtomicLong(0);
+	
+	private final AtomicLong recheckedRequests = new AtomicLong(0);
+	
+	private final AtomicLong deferredMergePreviews = new AtomicLong(0);
+	
 	@Inject
 	public DefaultPullRequestManager(Dao dao, PullRequestUpdateManager pullRequestUpdateManager,  
 			PullRequestReviewManager pullRequestReviewManager, UserManager userManager, 
 			MarkdownManager markdownManager, BatchWorkManager batchWorkManager, 
 			ListenerRegistry listenerRegistry, UnitOfWork unitOfWork, 
 			PullRequestChangeManager pullRequestChangeManager, BuildManager buildManager,
-			ConfigurationManager configurationManager, PullRequestBuildManager pullRequestBuildManager) {
+			ConfigurationManager configurationManager, PullRequestBuildManager pullRequestBuildManager, 
+			MergeResultCache mergeResultCache) {
 		super(dao);
 		
 		this.pullRequestUpdateManager = pullRequestUpdateManager;
@@ -178,6 +209,7 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		this.pullRequestChangeManager = pullRequestChangeManager;
 		this.configurationManager = configurationManager;
 		this.pullRequestBuildManager = pullRequestBuildManager;
+		this.mergeResultCache = mergeResultCache;
 	}
 	
 	@Transactional
@@ -452,6 +484,11 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 			if (request.isOpen() && !request.isMergeIntoTarget()) {
 				if (lastPreview == null || !lastPreview.isUpToDate(request)) {
 					int priority = RequestCycle.get() != null?UI_PREVIEW_PRIORITY:BACKEND_PREVIEW_PRIORITY;			
+					if (priority == BACKEND_PREVIEW_PRIORITY && lazyMergePreview.get() != null) {
+						// Calculate when the request is viewed 
+						deferredMergePreviews.incrementAndGet();
+						return null;
+					}
 					Long requestId = request.getId();
 					dao.doAfterCommit(new Runnable() {
 	
@@ -493,7 +530,7 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 										request.getHeadCommitHash(), request.getMergeStrategy(), null);
 								logger.debug("Calculating merge preview of pull request #{} in project '{}'...", 
 										request.getNumber(), targetProject.getName());
-								ObjectId merged = mergePreview.getMergeStrategy().merge(request);
+								ObjectId merged = mergeResultCache.merge(request, mergePreview.getMergeStrategy());
 								if (merged != null)
 									mergePreview.setMerged(merged.name());
 								mergePreview.syncRef(request);
@@ -535,15 +572,135 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		String branch = GitUtils.ref2branch(event.getRefName());
 		if (branch != null) {
 			ProjectAndBranch projectAndBranch = new ProjectAndBranch(event.getProject(), branch);
-			Criterion criterion = Restrictions.and(
-					ofOpen(), 
-					Restrictions.or(ofSource(projectAndBranch), ofTarget(projectAndBranch)));
+			Criterion criterion = Restrictions.and(ofOpen(), ofSource(projectAndBranch));
 			for (PullRequest request: query(EntityCriteria.of(PullRequest.class).add(criterion))) {
 				check(request);
 			}
+			
+			/*
+			 * Requests targeting the updated branch are re-checked later in background, so that 
+			 * consecutive pushes to a busy branch only cause one round of checks 
+			 */
+			Long projectId = event.getProject().getId();
+			Subject subject = SecurityUtils.getSubject();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					scheduleRecheck(projectId, branch, subject);
+				}
+				
+			});
+		}
+	}
+	
+	private void scheduleRecheck(Long projectId, String branch, Subject subject) {
+		String key = projectId + ":" + branch;
+		synchronized (pendingRechecks) {
+			PendingRecheck pendingRecheck = pendingRechecks.get(key);
+			if (pendingRecheck != null) {
+				pendingRecheck.subject = subject;
+				// Do not postpone forever if the branch is updated continuously
+				if (System.currentTimeMillis() - pendingRecheck.firstScheduleTime < MAX_RECHECK_DELAY - RECHECK_DELAY 
+						&& pendingRecheck.future.cancel(false)) {
+					pendingRecheck.future = scheduleRecheck(key, projectId, branch);
+				}
+				debouncedRechecks.incrementAndGet();
+			} else if (!recheckScheduler.isShutdown()) {
+				pendingRecheck = new PendingRecheck(subject);
+				pendingRecheck.future = scheduleRecheck(key, projectId, branch);
+				pendingRechecks.put(key, pendingRecheck);
+			}
 		}
 	}
+	
+	private ScheduledFuture<?> scheduleRecheck(String key, Long projectId, String branch) {
+		return recheckScheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				PendingRecheck pendingRecheck;
+				synchronized (pendingRechecks) {
+					pendingRecheck = pendingRechecks.remove(key);
+				}
+				if (pendingRecheck != null) {
+					batchWorkManager.submit(getRequestRechecker(projectId, branch), 
+							new RecheckWork(pendingRecheck.subject));
+				}
+			}
+			
+		}, RECHECK_DELAY, TimeUnit.MILLISECONDS);
+	}
+	
+	private BatchWorker getRequestRechecker(Long projectId, String branch) {
+		return new BatchWorker("project-" + projectId + "-branch-" + branch + "-recheckRequests") {
 
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				Subject subject = ((RecheckWork) works.iterator().next()).subject;
+				List<Long> requestIds = unitOfWork.call(new Callable<List<Long>>() {
+
+					@Override
+					public List<Long> call() {
+						List<Long> requestIds = new ArrayList<>();
+						Project project = dao.get(Project.class, projectId);
+						if (project != null) {
+							EntityCriteria<PullRequest> criteria = EntityCriteria.of(PullRequest.class);
+							criteria.add(ofOpen()).add(ofTarget(new ProjectAndBranch(project, branch)));
+							criteria.addOrder(Order.desc("updateDate"));
+							for (PullRequest request: query(criteria))
+								requestIds.add(request.getId());
+						}
+						return requestIds;
+					}
+					
+				});
+				
+				ThreadContext.bind(subject);
+				try {
+					for (Long requestId: requestIds) {
+						try {
+							recheck(requestId);
+						} catch (Exception e) {
+							logger.error("Error checking pull request status", e);
+						}
+					}
+				} finally {
+					ThreadContext.unbindSubject();
+				}
+			}
+			
+		};
+	}
+	
+	/**
+	 * Re-check specified request after its target branch is updated. Merge preview is only calculated 
+	 * eagerly for recently active requests, and is calculated for others when they are viewed
+	 */
+	@Transactional
+	public void recheck(Long requestId) {
+		PullRequest request = get(requestId);
+		if (request != null) {
+			boolean active = request.getUpdateDate().getTime() > System.currentTimeMillis() - ACTIVE_PERIOD;
+			if (!active)
+				lazyMergePreview.set(true);
+			try {
+				check(request);
+			} finally {
+				lazyMergePreview.remove();
+			}
+			recheckedRequests.incrementAndGet();
+		}
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		recheckScheduler.shutdownNow();
+		synchronized (pendingRechecks) {
+			pendingRechecks.clear();
+		}
+	}
+	
 	@Sessional
 	@Override
 	public PullRequest findEffective(ProjectAndBranch target, ProjectAndBranch source) {
@@ -860,58 +1017,35 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 			return;
 		
 		CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
-		Map<User, Long> contributions = new HashMap<>();
-		for (User user: users)
-			contributions.put(user, 0L);
 
-		int count = 0;
+		Map<String, Integer> pathWeights = new LinkedHashMap<>();
 		for (FileChange change: update.getFileChanges()) {
-			String path = change.getPath();
 			int edits = change.getAdditions() + change.getDeletions();
 			if (edits < 0)
 				edits = 100;
 			else if (edits == 0)
 				edits = 1;
-			int addedContributions = addContributions(contributions, commitInfoManager, path, edits, update);
-			while (addedContributions == 0) {
-				if (path.contains("/")) {
-					path = StringUtils.substringBeforeLast(path, "/");
-					addedContributions = addContributions(contributions, commitInfoManager, path, edits, update);
-				} else {
-					addContributions(contributions, commitInfoManager, "", edits, update);
-					break;
-				}
-			}
-			if (++count >= MAX_CONTRIBUTION_FILES)
+			pathWeights.merge(change.getPath(), edits, Integer::sum);
+			if (pathWeights.size() >= MAX_CONTRIBUTION_FILES)
 				break;
 		}
+		
+		Collection<UserFacade> userFacades = new ArrayList<>();
+		for (User user: users)
+			userFacades.add(user.getFacade());
+		Map<Long, Long> contributions = commitInfoManager.getContributions(
+				update.getRequest().getTargetProject().getFacade(), userFacades, pathWeights);
 
 		Collections.sort(users, new Comparator<User>() {
 
 			@Override
 			public int compare(User o1, User o2) {
-				if (contributions.get(o1) < contributions.get(o2))
-					return 1;
-				else
-					return -1;
+				return contributions.get(o2.getId()).compareTo(contributions.get(o1.getId()));
 			}
 			
 		});
 	}
 	
-	private int addContributions(Map<User, Long> contributions, CommitInfoManager commitInfoManager, 
-			String path, int edits, PullRequestUpdate update) {
-		int addedContributions = 0;
-		for (Map.Entry<User, Long> entry: contributions.entrySet()) {
-			User user = entry.getKey();
-			int pathEdits = commitInfoManager.getEdits(
-					update.getRequest().getTargetProject().getFacade(), user.getFacade(), path);
-			entry.setValue(entry.getValue() + edits*pathEdits);
-			addedContributions += pathEdits;
-		}
-		return addedContributions;
-	}
-	
 	@Transactional
 	@Override
 	public Collection<PullRequest> queryOpenByCommit(String commitHash) {
@@ -1029,6 +1163,17 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		return find(criteria);
 	}
 	
+	@Sessional
+	@Override
+	public Collection<PullRequest> query(Project targetProject, Collection<Long> numbers) {
+		if (numbers.isEmpty())
+			return new ArrayList<>();
+		EntityCriteria<PullRequest> criteria = newCriteria();
+		criteria.add(Restrictions.eq("targetProject", targetProject));
+		criteria.add(Restrictions.in("number", numbers));
+		return query(criteria);
+	}
+	
 	@Sessional
 	@Override
 	public List<PullRequest> query(Project targetProject, String term, int count) {
@@ -1081,4 +1226,46 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		listenerRegistry.post(new PullRequestDeleted(user, request));
 	}
 	
+	@Override
+	public String getMetricGroup() {
+		return "Pull Request Recheck";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		synchronized (pendingRechecks) {
+			metrics.put("Pending Rechecks", String.valueOf(pendingRechecks.size()));
+		}
+		metrics.put("Debounced Rechecks", String.valueOf(debouncedRechecks.get()));
+		metrics.put("Rechecked Requests", String.valueOf(recheckedRequests.get()));
+		metrics.put("Deferred Merge Previews", String.valueOf(deferredMergePreviews.get()));
+		return metrics;
+	}
+	
+	private static class PendingRecheck {
+		
+		private final long firstScheduleTime = System.currentTimeMillis();
+		
+		private volatile Subject subject;
+		
+		private ScheduledFuture<?> future;
+		
+		PendingRecheck(Subject subject) {
+			this.subject = subject;
+		}
+		
+	}
+	
+	private static class RecheckWork extends Prioritized {
+
+		private final Subject subject;
+		
+		RecheckWork(Subject subject) {
+			super(BACKEND_PREVIEW_PRIORITY);
+			this.subject = subject;
+		}
+		
+	}
+	
 }
@@ -27,6 +27,7 @@ import io.onedev.server.event.pullrequest.PullRequestDeleted;
 import io.onedev.server.event.pullrequest.PullRequestEvent;
 import io.onedev.server.event.pullrequest.PullRequestMergePreviewCalculated;
 import io.onedev.server.event.pullrequest.PullRequestUpdated;
+import io.onedev.server.manager.BatchWorkManager;
 import io.onedev.server.manager.MailManager;
 import io.onedev.server.manager.MarkdownManager;
 import io.onedev.server.manager.PullRequestWatchManager;
@@ -47,14 +48,22 @@ import io.onedev.server.model.support.pullrequest.changedata.PullRequestReopenDa
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestRequestedForChangesData;
 import io.onedev.server.persistence.PersistListener;
 import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.search.entity.EntityQuery;
+import io.onedev.server.search.entity.EntityQueryCache;
 import io.onedev.server.search.entity.QueryWatchBuilder;
 import io.onedev.server.search.entity.pullrequest.PullRequestQuery;
+import io.onedev.server.search.entity.pullrequest.PullRequestQueryParser.QueryContext;
+import io.onedev.server.util.BatchWorker;
 import io.onedev.server.util.markdown.MentionParser;
+import io.onedev.server.util.watch.QueryWatchWork;
+import io.onedev.utils.concurrent.Prioritized;
 
 @Singleton
 public class DefaultPullRequestNotificationManager implements PersistListener {
 	
+	private static final int PRIORITY = 50;
+	
 	private final MailManager mailManager;
 	
 	private final UrlManager urlManager;
@@ -65,15 +74,25 @@ public class DefaultPullRequestNotificationManager implements PersistListener {
 	
 	private final UserInfoManager userInfoManager;
 	
+	private final BatchWorkManager batchWorkManager;
+	
+	private final EntityQueryCache entityQueryCache;
+	
+	private final Dao dao;
+	
 	@Inject
 	public DefaultPullRequestNotificationManager(MailManager mailManager, UrlManager urlManager, 
 			MarkdownManager markdownManager, PullRequestWatchManager pullRequestWatchManager, 
-			UserInfoManager userInfoManager) {
+			UserInfoManager userInfoManager, BatchWorkManager batchWorkManager, 
+			EntityQueryCache entityQueryCache, Dao dao) {
 		this.mailManager = mailManager;
 		this.urlManager = urlManager;
 		this.markdownManager = markdownManager;
 		this.pullRequestWatchManager = pullRequestWatchManager;
 		this.userInfoManager = userInfoManager;
+		this.batchWorkManager = batchWorkManager;
+		this.entityQueryCache = entityQueryCache;
+		this.dao = dao;
 	}
 	
 	@Transactional
@@ -83,32 +102,6 @@ public class DefaultPullRequestNotificationManager implements PersistListener {
 			PullRequest request = event.getRequest();
 			User user = event.getUser();
 			
-			for(Map.Entry<User, Boolean> entry: new QueryWatchBuilder<PullRequest>() {
-
-				@Override
-				protected PullRequest getEntity() {
-					return request;
-				}
-
-				@Override
-				protected Collection<? extends QuerySetting<?>> getQuerySettings() {
-					return request.getTargetProject().getPullRequestQuerySettings();
-				}
-
-				@Override
-				protected EntityQuery<PullRequest> parse(String queryString) {
-					return PullRequestQuery.parse(request.getTargetProject(), queryString, true);
-				}
-
-				@Override
-				protected NamedQuery getSavedProjectQuery(String name) {
-					return request.getTargetProject().getSavedPullRequestQuery(name);
-				}
-				
-			}.getWatches().entrySet()) {
-				watch(request, entry.getKey(), entry.getValue());
-			};
-			
 			if (user != null)
 				watch(request, user, true);
 			
@@ -216,9 +209,109 @@ public class DefaultPullRequestNotificationManager implements PersistListener {
 					String url = urlManager.urlFor(request);
 					String subject = String.format("New activities in pull request #%d - %s", request.getNumber(), request.getTitle());
 					String body = String.format("Visit <a href='%s'>%s</a> for details", url, url);
-					mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), subject, body);
+					mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), 
+							subject, body, "pull-request-" + request.getId());
 				}
 			}				
+			
+			QueryWatchWork work = new QueryWatchWork(PRIORITY, event.getDate(), notifyWatchers);
+			if (user != null)
+				work.exclude(user.getId());
+			if (event instanceof PullRequestUpdated && request.getSubmitter() != null)
+				work.exclude(request.getSubmitter().getId());
+			for (User notifiedUser: notifiedUsers)
+				work.exclude(notifiedUser.getId());
+			Long requestId = request.getId();
+			dao.doAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					batchWorkManager.submit(getQueryWatchEvaluator(requestId), work);
+				}
+				
+			});
+		}
+	}
+
+	private BatchWorker getQueryWatchEvaluator(Long requestId) {
+		return new BatchWorker("request-" + requestId + "-evaluateQueryWatches") {
+
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				evaluateQueryWatches(requestId, works);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Evaluate saved queries watched by users against specified pull request. This is done in batch 
+	 * worker outside of the event transaction, as there can be many watched queries in a project. 
+	 * Users starting to watch the pull request by queries will be notified of the events if necessary
+	 */
+	@Transactional
+	public void evaluateQueryWatches(Long requestId, Collection<Prioritized> works) {
+		PullRequest request = dao.get(PullRequest.class, requestId);
+		if (request == null)
+			return;
+		
+		Collection<User> usersToNotify = new HashSet<>();
+		for (Map.Entry<User, Boolean> entry: new QueryWatchBuilder<PullRequest>() {
+
+			@Override
+			protected PullRequest getEntity() {
+				return request;
+			}
+
+			@Override
+			protected Collection<? extends QuerySetting<?>> getQuerySettings() {
+				return request.getTargetProject().getPullRequestQuerySettings();
+			}
+
+			@Override
+			protected EntityQuery<PullRequest> parse(String queryString) {
+				QueryContext syntax = entityQueryCache.getSyntax(PullRequest.class, queryString, 
+						new EntityQueryCache.SyntaxParser<QueryContext>() {
+
+					@Override
+					public QueryContext parse(String queryString) {
+						return PullRequestQuery.parseSyntax(queryString);
+					}
+					
+				});
+				return syntax != null? PullRequestQuery.bind(request.getTargetProject(), syntax, true): null;
+			}
+
+			@Override
+			protected NamedQuery getSavedProjectQuery(String name) {
+				return request.getTargetProject().getSavedPullRequestQuery(name);
+			}
+			
+		}.getWatches().entrySet()) {
+			User user = entry.getKey();
+			PullRequestWatch watch = (PullRequestWatch) request.getWatch(user, true);
+			if (watch.isNew()) {
+				watch.setWatching(entry.getValue());
+				pullRequestWatchManager.save(watch);
+				if (watch.isWatching() && !userInfoManager.isNotified(user, request)) {
+					Date visitDate = userInfoManager.getPullRequestVisitDate(user, request);
+					for (Prioritized work: works) {
+						if (((QueryWatchWork) work).shouldNotify(user.getId(), visitDate)) {
+							usersToNotify.add(user);
+							userInfoManager.setPullRequestNotified(user, request, true);
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		if (!usersToNotify.isEmpty()) {
+			String url = urlManager.urlFor(request);
+			String subject = String.format("New activities in pull request #%d - %s", request.getNumber(), request.getTitle());
+			String body = String.format("Visit <a href='%s'>%s</a> for details", url, url);
+			mailManager.sendMailAsync(usersToNotify.stream().map(User::getEmail).collect(Collectors.toList()), 
+					subject, body, "pull-request-" + request.getId());
 		}
 	}
 
@@ -15,6 +15,7 @@ import io.onedev.launcher.loader.ListenerRegistry;
 import io.onedev.server.event.pullrequest.PullRequestUpdated;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.manager.PullRequestCommentManager;
+import io.onedev.server.manager.PullRequestInfoManager;
 import io.onedev.server.manager.PullRequestManager;
 import io.onedev.server.manager.PullRequestUpdateManager;
 import io.onedev.server.model.Project;
@@ -35,13 +36,17 @@ public class DefaultPullRequestUpdateManager extends AbstractEntityManager<PullR
 	
 	private final PullRequestManager pullRequestManager;
 	
+	private final PullRequestInfoManager pullRequestInfoManager;
+	
 	@Inject
 	public DefaultPullRequestUpdateManager(Dao dao, ListenerRegistry listenerRegistry,
-			PullRequestCommentManager commentManager, PullRequestManager pullRequestManager) {
+			PullRequestCommentManager commentManager, PullRequestManager pullRequestManager, 
+			PullRequestInfoManager pullRequestInfoManager) {
 		super(dao);
 		
 		this.listenerRegistry = listenerRegistry;
 		this.pullRequestManager = pullRequestManager;
+		this.pullRequestInfoManager = pullRequestInfoManager;
 	}
 
 	@Transactional
@@ -83,6 +88,9 @@ public class DefaultPullRequestUpdateManager extends AbstractEntityManager<PullR
 		request.setHeadCommitHash(update.getHeadCommitHash());
 		pullRequestManager.save(request);
 		
+		// Calculate and store changed files while relevant objects are still hot
+		pullRequestInfoManager.getChangedFiles(update);
+		
 		if (independent) {
 			PullRequestUpdated event = new PullRequestUpdated(update);
 			listenerRegistry.post(event);
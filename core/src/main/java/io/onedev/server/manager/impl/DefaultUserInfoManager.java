@@ -1,12 +1,28 @@
 package io.onedev.server.manager.impl;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.joda.time.DateTime;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 
@@ -19,6 +35,8 @@ import io.onedev.server.event.issue.IssueEvent;
 import io.onedev.server.event.pullrequest.PullRequestCodeCommentEvent;
 import io.onedev.server.event.pullrequest.PullRequestDeleted;
 import io.onedev.server.event.pullrequest.PullRequestEvent;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.manager.StorageManager;
 import io.onedev.server.manager.UserInfoManager;
 import io.onedev.server.model.CodeComment;
@@ -29,6 +47,11 @@ import io.onedev.server.model.User;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.util.facade.ProjectFacade;
 import io.onedev.server.util.facade.UserFacade;
+import io.onedev.utils.schedule.SchedulableTask;
+import io.onedev.utils.schedule.TaskScheduler;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.Transaction;
@@ -43,10 +66,14 @@ import jetbrains.exodus.env.TransactionalExecutable;
  *
  */
 @Singleton
-public class DefaultUserInfoManager extends AbstractEnvironmentManager implements UserInfoManager {
+public class DefaultUserInfoManager extends AbstractEnvironmentManager implements UserInfoManager, SchedulableTask {
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultUserInfoManager.class);
+	
 	private static final int INFO_VERSION = 5;
 	
+	private static final int FLUSH_INTERVAL = 5;
+	
 	private static final String PROJECT_VISIT_STORE = "projectVisit";
 	
 	private static final String PULL_REQUEST_VISIT_STORE = "pullRequestVisit";
@@ -63,48 +90,204 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	
 	private final StorageManager storageManager;
 	
+	private final TaskScheduler taskScheduler;
+	
+	/*
+	 * Visit information is written on every page view. Instead of writing them to disk 
+	 * immediately, we keep latest value of each key here and flush them periodically  
+	 */
+	private final Map<PendingKey, byte[]> pendingWrites = new ConcurrentHashMap<>();
+	
+	private String taskId;
+	
 	@Inject
-	public DefaultUserInfoManager(StorageManager storageManager) {
+	public DefaultUserInfoManager(StorageManager storageManager, TaskScheduler taskScheduler) {
 		this.storageManager = storageManager;
+		this.taskScheduler = taskScheduler;
+	}
+	
+	private void writeLater(String envKey, String storeName, ByteIterable key, byte[] value) {
+		pendingWrites.put(new PendingKey(envKey, storeName, key), value);
+	}
+	
+	private void writeLongLater(String envKey, String storeName, ByteIterable key, long value) {
+		writeLater(envKey, storeName, key, ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+	}
+	
+	private void writeBooleanLater(String envKey, String storeName, ByteIterable key, boolean value) {
+		writeLater(envKey, storeName, key, new byte[] {(byte)(value?1:0)});
+	}
+	
+	@Nullable
+	private byte[] read(String envKey, String storeName, ByteIterable key) {
+		byte[] bytes = pendingWrites.get(new PendingKey(envKey, storeName, key));
+		if (bytes == null) {
+			Environment env = getEnv(envKey);
+			Store store = getStore(env, storeName);
+			bytes = env.computeInTransaction(new TransactionalComputable<byte[]>() {
+				
+				@Override
+				public byte[] compute(Transaction txn) {
+					return readBytes(store, txn, key);
+				}
+				
+			});
+		}
+		return bytes;
+	}
+	
+	@Nullable
+	private Date readDate(String envKey, String storeName, ByteIterable key) {
+		byte[] bytes = read(envKey, storeName, key);
+		if (bytes != null)
+			return new Date(ByteBuffer.wrap(bytes).getLong());
+		else
+			return null;
+	}
+	
+	private boolean readBoolean(String envKey, String storeName, ByteIterable key, boolean defaultValue) {
+		byte[] bytes = read(envKey, storeName, key);
+		if (bytes != null)
+			return bytes[0] == 1;
+		else
+			return defaultValue;
+	}
+	
+	/**
+	 * Write all pending writes to disk, with one transaction per environment
+	 */
+	private synchronized void flush() {
+		Map<String, Map<PendingKey, byte[]>> writesByEnv = new HashMap<>();
+		for (Map.Entry<PendingKey, byte[]> entry: pendingWrites.entrySet()) {
+			String envKey = entry.getKey().getEnvKey();
+			Map<PendingKey, byte[]> writesOfEnv = writesByEnv.get(envKey);
+			if (writesOfEnv == null) {
+				writesOfEnv = new HashMap<>();
+				writesByEnv.put(envKey, writesOfEnv);
+			}
+			writesOfEnv.put(entry.getKey(), entry.getValue());
+		}
+		
+		for (Map.Entry<String, Map<PendingKey, byte[]>> entry: writesByEnv.entrySet()) {
+			Map<PendingKey, byte[]> writesOfEnv = entry.getValue();
+			try {
+				Environment env = getEnv(entry.getKey());
+				Map<String, Store> stores = new HashMap<>();
+				for (PendingKey key: writesOfEnv.keySet()) {
+					if (!stores.containsKey(key.getStoreName()))
+						stores.put(key.getStoreName(), getStore(env, key.getStoreName()));
+				}
+				env.executeInTransaction(new TransactionalExecutable() {
+					
+					@Override
+					public void execute(Transaction txn) {
+						for (Map.Entry<PendingKey, byte[]> write: writesOfEnv.entrySet()) {
+							Store store = stores.get(write.getKey().getStoreName());
+							store.put(txn, new ArrayByteIterable(write.getKey().getKey()), 
+									new ArrayByteIterable(write.getValue()));
+						}
+					}
+					
+				});
+				
+				// value might be changed while flushing, and we only remove it if not changed
+				for (Map.Entry<PendingKey, byte[]> write: writesOfEnv.entrySet())
+					pendingWrites.remove(write.getKey(), write.getValue());
+			} catch (Exception e) {
+				// writes are kept in pending map to be flushed again next time
+				logger.error("Error flushing user info", e);
+			}
+		}
+	}
+	
+	@Override
+	public void execute() {
+		flush();
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatSecondlyForever(FLUSH_INTERVAL);
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+	
+	@Listen
+	@Override
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+		flush();
+		super.on(event);
 	}
 	
 	@Override
 	public void visit(User user, Project project) {
-		Environment env = getEnv(user.getId().toString());
-		Store store = getStore(env, PROJECT_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeLong(store, txn, new LongByteIterable(project.getId()), System.currentTimeMillis()+1000L);
-			}
-			
-		});
+		writeLongLater(user.getId().toString(), PROJECT_VISIT_STORE, 
+				new LongByteIterable(project.getId()), System.currentTimeMillis()+1000L);
 	}
 
 	@Override
 	public Date getVisitDate(UserFacade user, ProjectFacade project) {
-		Environment env = getEnv(user.getId().toString());
+		return readDate(user.getId().toString(), PROJECT_VISIT_STORE, new LongByteIterable(project.getId()));
+	}
+
+	@Override
+	public Map<Long, Date> getVisitDates(UserFacade user, Collection<ProjectFacade> projects) {
+		Set<Long> projectIds = new HashSet<>();
+		for (ProjectFacade project: projects)
+			projectIds.add(project.getId());
+		
+		String envKey = user.getId().toString();
+		Environment env = getEnv(envKey);
 		Store store = getStore(env, PROJECT_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
+		Map<Long, Date> visitDates = env.computeInReadonlyTransaction(new TransactionalComputable<Map<Long, Date>>() {
 			
 			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongByteIterable(project.getId()), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
+			public Map<Long, Date> compute(Transaction txn) {
+				Map<Long, Date> visitDates = new HashMap<>();
+				Cursor cursor = store.openCursor(txn);
+				try {
+					while (cursor.getNext()) {
+						long projectId = ByteBuffer.wrap(cursor.getKey().getBytesUnsafe(), 0, Long.BYTES).getLong();
+						if (projectIds.contains(projectId)) {
+							long millis = ByteBuffer.wrap(cursor.getValue().getBytesUnsafe(), 0, Long.BYTES).getLong();
+							visitDates.put(projectId, new Date(millis));
+						}
+					}
+				} finally {
+					cursor.close();
+				}
+				return visitDates;
 			}
 			
 		});
+		
+		for (Map.Entry<PendingKey, byte[]> entry: pendingWrites.entrySet()) {
+			PendingKey key = entry.getKey();
+			if (key.getEnvKey().equals(envKey) && key.getStoreName().equals(PROJECT_VISIT_STORE)) {
+				long projectId = ByteBuffer.wrap(key.getKey()).getLong();
+				if (projectIds.contains(projectId))
+					visitDates.put(projectId, new Date(ByteBuffer.wrap(entry.getValue()).getLong()));
+			}
+		}
+		return visitDates;
 	}
-
+	
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
-		if (event.getEntity() instanceof User)
-			removeEnv(event.getEntity().getId().toString());
+		if (event.getEntity() instanceof User) {
+			String envKey = event.getEntity().getId().toString();
+			for (Iterator<PendingKey> it = pendingWrites.keySet().iterator(); it.hasNext();) {
+				if (it.next().getEnvKey().equals(envKey))
+					it.remove();
+			}
+			removeEnv(envKey);
+		}
 	}
 
 	@Override
@@ -119,138 +302,56 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	
 	@Override
 	public void visitIssue(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), time);
-			}
-			
-		});
-		
+		long time = new DateTime().plusSeconds(1).getMillis();
+		writeLongLater(issue.getProject().getId().toString(), ISSUE_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), time);
 		setIssueNotified(user, issue, false);
 	}
 
 	@Override
 	public void visitPullRequest(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
-			}
-			
-		});
-		
+		long time = new DateTime().plusSeconds(1).getMillis();
+		writeLongLater(request.getTargetProject().getId().toString(), PULL_REQUEST_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
 		setPullRequestNotified(user, request, false);
 	}
 	
 	@Override
 	public void visitPullRequestCodeComments(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_CODE_COMMENTS_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
-			}
-			
-		});
+		long time = new DateTime().plusSeconds(1).getMillis();
+		writeLongLater(request.getTargetProject().getId().toString(), PULL_REQUEST_CODE_COMMENTS_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
 	}
 	
 	@Override
 	public void visitCodeComment(User user, CodeComment comment) {
-		Environment env = getEnv(comment.getProject().getId().toString());
-		Store store = getStore(env, CODE_COMMENT_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), time);
-			}
-			
-		});
+		long time = new DateTime().plusSeconds(1).getMillis();
+		writeLongLater(comment.getProject().getId().toString(), CODE_COMMENT_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), time);
 	}
 
 	@Override
 	public Date getPullRequestVisitDate(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(request.getTargetProject().getId().toString(), PULL_REQUEST_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())));
 	}
 
 	@Override
 	public Date getIssueVisitDate(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(issue.getProject().getId().toString(), ISSUE_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())));
 	}
 	
 	@Override
 	public Date getPullRequestCodeCommentsVisitDate(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_CODE_COMMENTS_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(request.getTargetProject().getId().toString(), PULL_REQUEST_CODE_COMMENTS_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())));
 	}
 	
 	@Override
 	public Date getCodeCommentVisitDate(User user, CodeComment comment) {
-		Environment env = getEnv(comment.getProject().getId().toString());
-		Store store = getStore(env, CODE_COMMENT_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(comment.getProject().getId().toString(), CODE_COMMENT_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())));
 	}
 
 	@Listen
@@ -279,60 +380,77 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 
 	@Override
 	public boolean isNotified(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_NOTIFICATION_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Boolean>() {
-			
-			@Override
-			public Boolean compute(Transaction txn) {
-				return readBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), false);
-			}
-			
-		});
+		return readBoolean(request.getTargetProject().getId().toString(), PULL_REQUEST_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), false);
 	}
 
 	@Override
 	public boolean isNotified(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_NOTIFICATION_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Boolean>() {
-			
-			@Override
-			public Boolean compute(Transaction txn) {
-				return readBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), false);
-			}
-			
-		});
+		return readBoolean(issue.getProject().getId().toString(), ISSUE_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), false);
 	}
 
 	@Override
 	public void setPullRequestNotified(User user, PullRequest request, boolean notified) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		
-		Store store = getStore(env, PULL_REQUEST_NOTIFICATION_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), notified);
-			}
-			
-		});
+		writeBooleanLater(request.getTargetProject().getId().toString(), PULL_REQUEST_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), notified);
 	}
 
 	@Override
 	public void setIssueNotified(User user, Issue issue, boolean notified) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		
-		Store store = getStore(env, ISSUE_NOTIFICATION_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), notified);
-			}
-			
-		});
+		writeBooleanLater(issue.getProject().getId().toString(), ISSUE_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), notified);
 	}
 
+	private static class PendingKey {
+		
+		private final String envKey;
+		
+		private final String storeName;
+		
+		private final byte[] key;
+		
+		public PendingKey(String envKey, String storeName, ByteIterable key) {
+			this.envKey = envKey;
+			this.storeName = storeName;
+			this.key = Arrays.copyOf(key.getBytesUnsafe(), key.getLength());
+		}
+
+		public String getEnvKey() {
+			return envKey;
+		}
+
+		public String getStoreName() {
+			return storeName;
+		}
+
+		public byte[] getKey() {
+			return key;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof PendingKey))
+				return false;
+			if (this == other)
+				return true;
+			PendingKey otherKey = (PendingKey) other;
+			return new EqualsBuilder()
+					.append(envKey, otherKey.envKey)
+					.append(storeName, otherKey.storeName)
+					.append(key, otherKey.key)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(envKey)
+					.append(storeName)
+					.append(key)
+					.toHashCode();
+		}
+		
+	}
+	
 }
@@ -1,6 +1,10 @@
 package io.onedev.server.manager.impl;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -8,6 +12,7 @@ import javax.inject.Singleton;
 import org.apache.shiro.authc.credential.PasswordService;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.hibernate.ReplicationMode;
+import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
 
 import io.onedev.launcher.loader.Listen;
@@ -27,6 +32,7 @@ import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.AbstractEntityManager;
 import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
 import io.onedev.utils.StringUtils;
 
 @Singleton
@@ -171,6 +177,31 @@ public class DefaultUserManager extends AbstractEntityManager<User> implements U
 			return null;
     }
 
+	@Sessional
+	@Override
+	public Map<String, User> findByNames(Collection<String> userNames) {
+		Map<String, Long> ids = new HashMap<>();
+		for (String userName: userNames) {
+			Long id = cacheManager.getUserIdByName(userName);
+			if (id != null)
+				ids.put(userName, id);
+		}
+		Map<String, User> users = new HashMap<>();
+		if (!ids.isEmpty()) {
+			EntityCriteria<User> criteria = newCriteria();
+			criteria.add(Restrictions.in("id", new HashSet<>(ids.values())));
+			Map<Long, User> usersById = new HashMap<>();
+			for (User user: query(criteria))
+				usersById.put(user.getId(), user);
+			for (Map.Entry<String, Long> entry: ids.entrySet()) {
+				User user = usersById.get(entry.getValue());
+				if (user != null)
+					users.put(entry.getKey(), user);
+			}
+		}
+		return users;
+	}
+
 	@Sessional
     @Override
     public User findByEmail(String email) {
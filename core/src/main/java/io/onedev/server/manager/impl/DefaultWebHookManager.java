@@ -1,104 +1,188 @@
 package io.onedev.server.manager.impl;
 
-import java.io.IOException;
-import java.util.concurrent.ExecutorService;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.MediaType;
-
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
+import org.apache.commons.lang3.SerializationUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.onedev.launcher.loader.Listen;
 import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.manager.WebHookManager;
+import io.onedev.server.model.Project;
 import io.onedev.server.model.support.WebHook;
+import io.onedev.server.model.support.WebHookDelivery;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.util.jackson.RestView;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.webhook.WebHookDeliverer;
+import io.onedev.utils.FileUtils;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
 
 @Singleton
-public class DefaultWebHookManager {
+public class DefaultWebHookManager extends AbstractEnvironmentManager implements WebHookManager, MetricContribution {
+
+	private static final int INFO_VERSION = 1;
+
+	private static final String INFO_DIR = "webhook";
+
+	private static final String DELIVERIES_STORE = "deliveries";
+
+	private static final int MAX_DELIVERIES = 100;
+
+	private static final int TIMEOUT = 10000;
+
+	private static final int MAX_CONCURRENCY_PER_ENDPOINT = 4;
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	private static final long INITIAL_BACKOFF = 5000;
 
-	private static final Logger logger = LoggerFactory.getLogger(DefaultWebHookManager.class);
-	
-	private static final String SIGNATURE_HEAD = "X-OneDev-Signature";
-	
 	private final ObjectMapper mapper;
-	
-	private final ExecutorService executor;
+
+	private final StorageManager storageManager;
+
+	private final WebHookDeliverer deliverer;
+
+	// Delivery keys sort by time, and stay unique across server restarts
+	private final AtomicLong deliverySequence = new AtomicLong(System.currentTimeMillis()*1000);
 
 	@Inject
-	public DefaultWebHookManager(ObjectMapper mapper, ExecutorService executor) {
+	public DefaultWebHookManager(ObjectMapper mapper, StorageManager storageManager) {
 		this.mapper = mapper.copy();
 		this.mapper.setConfig(this.mapper.getSerializationConfig().withView(RestView.class));
-		this.executor = executor;
+		this.storageManager = storageManager;
+		deliverer = new WebHookDeliverer(TIMEOUT, MAX_CONCURRENCY_PER_ENDPOINT, MAX_ATTEMPTS, INITIAL_BACKOFF,
+				new WebHookDeliverer.DeliveryListener() {
+
+			@Override
+			public void delivered(WebHookDeliverer.Request request, WebHookDelivery delivery) {
+				log((Long) request.getContext(), delivery);
+			}
+
+		});
 	}
-	
+
 	@Sessional
 	@Listen
 	public void on(ProjectEvent event) {
-		String jsonOfEvent;
-		try {
-			jsonOfEvent = mapper.writeValueAsString(event);
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
-		}
+		String jsonOfEvent = null;
 		for (WebHook webHook: event.getProject().getWebHooks()) {
 			for (WebHook.EventType eventType: webHook.getEventTypes()) {
 				if (eventType.includes(event)) {
-					executor.submit(new Runnable() {
-
-						@Override
-						public void run() {
-							CloseableHttpClient client = HttpClients.createDefault();
-							try {
-							    HttpPost httpPost = new HttpPost(webHook.getPostUrl());
-							 
-							    StringEntity entity = new StringEntity(jsonOfEvent);
-							    httpPost.setEntity(entity);
-							    httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(SIGNATURE_HEAD, webHook.getSecret());
-							 
-							    CloseableHttpResponse response = client.execute(httpPost);
-							    try {
-							    	HttpEntity responseEntity = response.getEntity();
-							    	String responseText = EntityUtils.toString(responseEntity);
-							    	if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
-							    		logger.error("Error calling web hooks: " + responseText);
-							    } finally {
-							    	try {
-										response.close();
-									} catch (IOException e) {
-									}
-							    }
-							} catch (IOException e) {
-								logger.error("Error calling web hooks", e);
-							} finally {
-								try {
-									client.close();
-								} catch (IOException e) {
-								}
-							}
+					if (jsonOfEvent == null) {
+						try {
+							jsonOfEvent = mapper.writeValueAsString(event);
+						} catch (JsonProcessingException e) {
+							throw new RuntimeException(e);
 						}
-						
-					});
+					}
+					deliverer.deliver(new WebHookDeliverer.Request(webHook.getPostUrl(), webHook.getSecret(),
+							eventType.name(), jsonOfEvent, event.getProject().getId()));
 					break;
 				}
 			}
 		}
 	}
-	
+
+	private void log(Long projectId, WebHookDelivery delivery) {
+		Environment env = getEnv(projectId.toString());
+		Store store = getStore(env, DELIVERIES_STORE);
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				store.put(txn, new LongByteIterable(deliverySequence.incrementAndGet()),
+						new ArrayByteIterable(SerializationUtils.serialize(delivery)));
+				long count = store.count(txn);
+				if (count > MAX_DELIVERIES) {
+					try (Cursor cursor = store.openCursor(txn)) {
+						while (count-- > MAX_DELIVERIES && cursor.getNext())
+							cursor.deleteCurrent();
+					}
+				}
+			}
+
+		});
+	}
+
+	@Override
+	public List<WebHookDelivery> getRecentDeliveries(Project project) {
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, DELIVERIES_STORE);
+		return env.computeInReadonlyTransaction(new TransactionalComputable<List<WebHookDelivery>>() {
+
+			@Override
+			public List<WebHookDelivery> compute(Transaction txn) {
+				List<WebHookDelivery> deliveries = new ArrayList<>();
+				try (Cursor cursor = store.openCursor(txn)) {
+					while (cursor.getPrev()) {
+						byte[] bytes = new byte[cursor.getValue().getLength()];
+						System.arraycopy(cursor.getValue().getBytesUnsafe(), 0, bytes, 0, bytes.length);
+						deliveries.add((WebHookDelivery) SerializationUtils.deserialize(bytes));
+					}
+				}
+				return deliveries;
+			}
+
+		});
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Project) {
+			Long projectId = event.getEntity().getId();
+			removeEnv(projectId.toString());
+		}
+	}
+
+	@Listen
+	@Override
+	public void on(SystemStopping event) {
+		deliverer.close();
+		super.on(event);
+	}
+
+	@Override
+	protected File getEnvDir(String envKey) {
+		File infoDir = new File(storageManager.getProjectInfoDir(Long.valueOf(envKey)), INFO_DIR);
+		if (!infoDir.exists())
+			FileUtils.createDir(infoDir);
+		return infoDir;
+	}
+
+	@Override
+	protected int getEnvVersion() {
+		return INFO_VERSION;
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Web Hook Delivery";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return deliverer.getMetrics();
+	}
+
 }
@@ -9,13 +9,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -32,14 +29,12 @@ import javax.persistence.Table;
 import javax.persistence.Version;
 import javax.validation.Valid;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.util.ThreadContext;
 import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.TagCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
@@ -49,8 +44,8 @@ import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
-import org.eclipse.jgit.revwalk.LastCommitsOfChildren.Value;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -68,18 +63,24 @@ import io.onedev.server.OneDev;
 import io.onedev.server.event.RefUpdated;
 import io.onedev.server.git.BlameBlock;
 import io.onedev.server.git.Blob;
+import io.onedev.server.git.BlobCache;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.BlobIdentFilter;
+import io.onedev.server.git.CommitCache;
 import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.RefCache;
+import io.onedev.server.git.RefCache.RefEntry;
+import io.onedev.server.git.RefCache.RefSnapshot;
 import io.onedev.server.git.RefInfo;
 import io.onedev.server.git.Submodule;
-import io.onedev.server.git.command.BlameCommand;
 import io.onedev.server.git.exception.NotFileException;
 import io.onedev.server.git.exception.ObjectNotFoundException;
+import io.onedev.server.manager.BlameManager;
 import io.onedev.server.manager.BuildQuerySettingManager;
 import io.onedev.server.manager.CodeCommentQuerySettingManager;
 import io.onedev.server.manager.CommitQuerySettingManager;
 import io.onedev.server.manager.IssueQuerySettingManager;
+import io.onedev.server.manager.LastCommitsManager;
 import io.onedev.server.manager.ProjectManager;
 import io.onedev.server.manager.PullRequestQuerySettingManager;
 import io.onedev.server.manager.SettingManager;
@@ -104,8 +105,6 @@ import io.onedev.server.web.editable.annotation.Editable;
 import io.onedev.server.web.editable.annotation.Markdown;
 import io.onedev.server.web.editable.annotation.NameOfEmptyValue;
 import io.onedev.utils.ExceptionUtils;
-import io.onedev.utils.FileUtils;
-import io.onedev.utils.LockUtils;
 import io.onedev.utils.PathUtils;
 import io.onedev.utils.Range;
 import io.onedev.utils.StringUtils;
@@ -119,8 +118,6 @@ public class Project extends AbstractEntity {
 
 	private static final long serialVersionUID = 1L;
 	
-	private static final int LAST_COMMITS_CACHE_THRESHOLD = 1000;
-	
 	public static final int MAX_UPLOAD_SIZE = 10; // In mega bytes
 	
 	@ManyToOne(fetch=FetchType.LAZY)
@@ -403,6 +400,11 @@ public class Project extends AbstractEntity {
 	}
 
 	public List<RefInfo> getRefInfos(String prefix) {
+		if (prefix.equals(Constants.R_HEADS))
+			return getRefInfos(getRefSnapshot().getBranches());
+		else if (prefix.equals(Constants.R_TAGS))
+			return getRefInfos(getRefSnapshot().getTags());
+		
 		try (RevWalk revWalk = new RevWalk(getRepository())) {
 			List<Ref> refs = new ArrayList<Ref>(getRepository().getRefDatabase().getRefsByPrefix(prefix));
 			List<RefInfo> refInfos = refs.stream()
@@ -417,6 +419,27 @@ public class Project extends AbstractEntity {
 		}
     }
 
+	/*
+	 * Commits are taken from the commit cache, and only annotated tags need to be parsed here 
+	 */
+	private List<RefInfo> getRefInfos(List<RefEntry> refEntries) {
+		List<RefInfo> refInfos = new ArrayList<>();
+		try (RevWalk revWalk = new RevWalk(getRepository())) {
+			for (RefEntry refEntry: refEntries) {
+				RevCommit commit = getRevCommit(refEntry.getCommitId());
+				RevObject obj;
+				if (refEntry.getRef().getObjectId().equals(refEntry.getCommitId()))
+					obj = commit;
+				else
+					obj = revWalk.parseAny(refEntry.getRef().getObjectId());
+				refInfos.add(new RefInfo(refEntry.getRef(), obj, commit));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return refInfos;
+	}
+	
 	public Git git() {
 		return Git.wrap(getRepository()); 
 	}
@@ -468,21 +491,8 @@ public class Project extends AbstractEntity {
 	
 	@Nullable
 	public String getDefaultBranch() {
-		if (defaultBranchOptional == null) {
-			try {
-				Ref headRef = getRepository().findRef("HEAD");
-				if (headRef != null 
-						&& headRef.isSymbolic() 
-						&& headRef.getTarget().getName().startsWith(Constants.R_HEADS) 
-						&& headRef.getObjectId() != null) {
-					defaultBranchOptional = Optional.of(Repository.shortenRefName(headRef.getTarget().getName()));
-				} else {
-					defaultBranchOptional = Optional.absent();
-				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
+		if (defaultBranchOptional == null) 
+			defaultBranchOptional = Optional.fromNullable(getRefSnapshot().getDefaultBranch());
 		return defaultBranchOptional.orNull();
 	}
 	
@@ -490,6 +500,15 @@ public class Project extends AbstractEntity {
 		RefUpdate refUpdate = GitUtils.getRefUpdate(getRepository(), "HEAD");
 		GitUtils.linkRef(refUpdate, GitUtils.branch2ref(defaultBranchName));
 		defaultBranchOptional = null;
+		invalidateRefSnapshot();
+	}
+	
+	private RefSnapshot getRefSnapshot() {
+		return OneDev.getInstance(RefCache.class).getSnapshot(this);
+	}
+	
+	private void invalidateRefSnapshot() {
+		OneDev.getInstance(RefCache.class).invalidate(getId());
 	}
 	
 	private Map<BlobIdent, Blob> getBlobCache() {
@@ -504,7 +523,8 @@ public class Project extends AbstractEntity {
 	
 	/**
 	 * Read blob content and cache result in repository in case the same blob 
-	 * content is requested again. 
+	 * content is requested again. Blob content is also cached server wide via 
+	 * {@link BlobCache} so that it survives reload of the project entity. 
 	 * 
 	 * We made this method thread-safe as we are using ForkJoinPool to calculate 
 	 * diffs of multiple blob changes concurrently, and this method will be 
@@ -539,7 +559,8 @@ public class Project extends AbstractEntity {
 					} else if (blobIdent.isTree()) {
 						throw new NotFileException("Path '" + blobIdent.path + "' is a tree");
 					} else {
-						blob = new Blob(blobIdent, blobId, treeWalk.getObjectReader());
+						blob = OneDev.getInstance(BlobCache.class).getBlob(this, blobIdent, blobId, 
+								treeWalk.getObjectReader());
 					}
 					getBlobCache().put(blobIdent, blob);
 				} else {
@@ -587,7 +608,12 @@ public class Project extends AbstractEntity {
 		
 		Optional<ObjectId> optional = objectIdCache.get(revision);
 		if (optional == null) {
-			optional = Optional.fromNullable(GitUtils.resolve(getRepository(), revision));
+			ObjectId objectId = null;
+			if (!ObjectId.isId(revision))
+				objectId = getRefSnapshot().resolve(revision);
+			if (objectId == null)
+				objectId = GitUtils.resolve(getRepository(), revision);
+			optional = Optional.fromNullable(objectId);
 			objectIdCache.put(revision, optional);
 		}
 		if (mustExist && !optional.isPresent())
@@ -607,79 +633,7 @@ public class Project extends AbstractEntity {
 	}
 	
 	public LastCommitsOfChildren getLastCommitsOfChildren(String revision, @Nullable String path) {
-		if (path == null)
-			path = "";
-		
-		final File cacheDir = new File(
-				OneDev.getInstance(StorageManager.class).getProjectInfoDir(getId()), 
-				"last_commits/" + path + "/onedev_last_commits");
-		
-		final ReadWriteLock lock;
-		try {
-			lock = LockUtils.getReadWriteLock(cacheDir.getCanonicalPath());
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-		
-		final Set<ObjectId> commitIds = new HashSet<>(); 
-		
-		lock.readLock().lock();
-		try {
-			if (cacheDir.exists()) {
-				for (String each: cacheDir.list()) 
-					commitIds.add(ObjectId.fromString(each));
-			} 	
-		} finally {
-			lock.readLock().unlock();
-		}
-		
-		org.eclipse.jgit.revwalk.LastCommitsOfChildren.Cache cache;
-		if (!commitIds.isEmpty()) {
-			cache = new org.eclipse.jgit.revwalk.LastCommitsOfChildren.Cache() {
-	
-				@SuppressWarnings("unchecked")
-				@Override
-				public Map<String, Value> getLastCommitsOfChildren(ObjectId commitId) {
-					if (commitIds.contains(commitId)) {
-						lock.readLock().lock();
-						try {
-							byte[] bytes = FileUtils.readFileToByteArray(new File(cacheDir, commitId.name()));
-							return (Map<String, Value>) SerializationUtils.deserialize(bytes);
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						} finally {
-							lock.readLock().unlock();
-						}
-					} else {
-						return null;
-					}
-				}
-				
-			};
-		} else {
-			cache = null;
-		}
-
-		final AnyObjectId commitId = getObjectId(revision);
-		
-		long time = System.currentTimeMillis();
-		LastCommitsOfChildren lastCommits = new LastCommitsOfChildren(getRepository(), commitId, path, cache);
-		long elapsed = System.currentTimeMillis()-time;
-		if (elapsed > LAST_COMMITS_CACHE_THRESHOLD) {
-			lock.writeLock().lock();
-			try {
-				if (!cacheDir.exists())
-					FileUtils.createDir(cacheDir);
-				FileUtils.writeByteArrayToFile(
-						new File(cacheDir, commitId.name()), 
-						SerializationUtils.serialize(lastCommits));
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			} finally {
-				lock.writeLock().unlock();
-			}
-		}
-		return lastCommits;
+		return OneDev.getInstance(LastCommitsManager.class).getLastCommitsOfChildren(this, revision, path);
 	}
 
 	@Nullable
@@ -688,11 +642,15 @@ public class Project extends AbstractEntity {
 			refCache = new HashMap<>();
 		Optional<Ref> optional = refCache.get(revision);
 		if (optional == null) {
-			try {
-				optional = Optional.fromNullable(getRepository().findRef(revision));
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+			Ref ref = getRefSnapshot().findRef(revision);
+			if (ref == null) {
+				try {
+					ref = getRepository().findRef(revision);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
 			}
+			optional = Optional.fromNullable(ref);
 			refCache.put(revision, optional);
 		}
 		return optional.orNull();
@@ -737,9 +695,7 @@ public class Project extends AbstractEntity {
 		RevCommit commit;
 		Optional<RevCommit> optional = commitCache.get(revId);
 		if (optional == null) {
-			try (RevWalk revWalk = new RevWalk(getRepository())) {
-				optional = Optional.fromNullable(GitUtils.parseCommit(revWalk, revId));
-			}
+			optional = Optional.fromNullable(OneDev.getInstance(CommitCache.class).getCommit(this, revId));
 			commitCache.put(revId, optional);
 		}
 		commit = optional.orNull();
@@ -755,6 +711,9 @@ public class Project extends AbstractEntity {
 	}
 	
 	public List<Ref> getRefs(String prefix) {
+		if (prefix.startsWith(Constants.R_HEADS) || prefix.startsWith(Constants.R_TAGS))
+			return getRefSnapshot().getRefs(prefix);
+		
 		try {
 			return getRepository().getRefDatabase().getRefsByPrefix(prefix);
 		} catch (IOException e) {
@@ -797,6 +756,8 @@ public class Project extends AbstractEntity {
 		} catch (Exception e) {
 			throw ExceptionUtils.unchecked(e);
 		}
+    	cacheObjectId(refName, null);
+    	invalidateRefSnapshot();
     	
     	Subject subject = SecurityUtils.getSubject();
     	OneDev.getInstance(UnitOfWork.class).doAsync(new Runnable() {
@@ -824,6 +785,7 @@ public class Project extends AbstractEntity {
 			command.setStartPoint(getRevCommit(branchRevision));
 			command.call();
 			cacheObjectId(GitUtils.branch2ref(branchName), commit);
+			invalidateRefSnapshot();
 		} catch (GitAPIException e) {
 			throw new RuntimeException(e);
 		}
@@ -839,6 +801,7 @@ public class Project extends AbstractEntity {
 			tag.setObjectId(getRevCommit(tagRevision));
 			tag.call();
 			cacheObjectId(GitUtils.tag2ref(tagName), tag.getObjectId());
+			invalidateRefSnapshot();
 		} catch (GitAPIException e) {
 			throw new RuntimeException(e);
 		}
@@ -852,6 +815,8 @@ public class Project extends AbstractEntity {
 		} catch (GitAPIException e) {
 			throw new RuntimeException(e);
 		}
+    	cacheObjectId(refName, null);
+    	invalidateRefSnapshot();
     	Subject subject = SecurityUtils.getSubject();
     	OneDev.getInstance(UnitOfWork.class).doAsync(new Runnable() {
 
@@ -1177,14 +1142,9 @@ public class Project extends AbstractEntity {
 	}
 
 	public List<User> getAuthors(String filePath, ObjectId commitId, @Nullable Range range) {
-		BlameCommand cmd = new BlameCommand(getGitDir());
-		cmd.commitHash(commitId.name());
-		cmd.file(filePath);
-		cmd.range(range);
-
 		List<User> authors = new ArrayList<>();
 		UserManager userManager = OneDev.getInstance(UserManager.class);
-		for (BlameBlock block: cmd.call()) {
+		for (BlameBlock block: OneDev.getInstance(BlameManager.class).getBlame(this, commitId, filePath, range)) {
 			User author = userManager.find(block.getCommit().getAuthor());
 			if (author != null && !authors.contains(author))
 				authors.add(author);
@@ -29,9 +29,11 @@ import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 
+import io.onedev.server.OneDev;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.command.FileChange;
 import io.onedev.server.git.command.ListFileChangesCommand;
+import io.onedev.server.manager.PullRequestInfoManager;
 import io.onedev.server.manager.impl.DefaultCodeCommentRelationManager;
 
 @Entity
@@ -105,10 +107,16 @@ public class PullRequestUpdate extends AbstractEntity {
 	
 	public Collection<FileChange> getFileChanges() {
 		if (fileChanges == null) {
-			ListFileChangesCommand cmd = new ListFileChangesCommand(getRequest().getTargetProject().getGitDir());
-			cmd.fromRev(getBaseCommitHash());
-			cmd.toRev(getHeadCommitHash());
-			fileChanges = cmd.call();
+			if (!isNew()) {
+				fileChanges = OneDev.getInstance(PullRequestInfoManager.class).getFileChanges(
+						getRequest().getTargetProject(), ObjectId.fromString(getBaseCommitHash()), 
+						ObjectId.fromString(getHeadCommitHash()));
+			} else {
+				ListFileChangesCommand cmd = new ListFileChangesCommand(getRequest().getTargetProject().getGitDir());
+				cmd.fromRev(getBaseCommitHash());
+				cmd.toRev(getHeadCommitHash());
+				fileChanges = cmd.call();
+			}
 		}
 		return fileChanges;
 	}
@@ -116,71 +124,85 @@ public class PullRequestUpdate extends AbstractEntity {
 	/**
 	 * Get changed files of this update since previous update. This calculation 
 	 * excludes changes introduced by commits from target branch (this will 
-	 * happen if some commits were merged from target branch to source branch)
+	 * happen if some commits were merged from target branch to source branch). 
+	 * Changed files of persisted update are calculated once and loaded from 
+	 * storage afterwards
 	 */
 	public Collection<String> getChangedFiles() {
 		if (changedFiles == null) {
-			changedFiles = new HashSet<>();
-			
-			Repository repository = getRequest().getWorkProject().getRepository();
-			try (	RevWalk revWalk = new RevWalk(repository);
-					TreeWalk treeWalk = new TreeWalk(repository)) {
-				RevCommit mergeBaseCommit = revWalk.parseCommit(ObjectId.fromString(getMergeBaseCommitHash()));
-				RevCommit baseCommit = revWalk.parseCommit(ObjectId.fromString(getBaseCommitHash()));
-				RevCommit headCommit = revWalk.parseCommit(ObjectId.fromString(getHeadCommitHash()));
-				revWalk.markStart(mergeBaseCommit);
-				revWalk.markStart(baseCommit);
-				revWalk.setRevFilter(RevFilter.MERGE_BASE);
-				RevCommit nextMergeBase = Preconditions.checkNotNull(revWalk.next());
-				treeWalk.setRecursive(true);
-				if (nextMergeBase.equals(baseCommit)) {
-					treeWalk.addTree(mergeBaseCommit.getTree());
-					treeWalk.addTree(headCommit.getTree());
-					treeWalk.setFilter(TreeFilter.ANY_DIFF);
-					while (treeWalk.next())
-						changedFiles.add(treeWalk.getPathString());
-				} else if (nextMergeBase.equals(mergeBaseCommit)) {
-					treeWalk.addTree(baseCommit.getTree());
-					treeWalk.addTree(headCommit.getTree());
-					treeWalk.setFilter(TreeFilter.ANY_DIFF);
-					while (treeWalk.next())
-						changedFiles.add(treeWalk.getPathString());
-				} else {
-					treeWalk.addTree(headCommit.getTree());
-					treeWalk.addTree(baseCommit.getTree());
-					treeWalk.addTree(mergeBaseCommit.getTree());
-					treeWalk.setFilter(new TreeFilter() {
-
-						@Override
-						public boolean include(TreeWalk walker)
-								throws MissingObjectException, IncorrectObjectTypeException, IOException {
-							int m0 = walker.getRawMode(0);
-							
-							// only include the path if the file is modified in head commit 
-							// compared to base commit and that modification is not introduced
-							// by commit from target branch
-							return (walker.getRawMode(1) != m0 || !walker.idEqual(1, 0)) 
-									&& (walker.getRawMode(2) != m0 || !walker.idEqual(2, 0));
-						}
-
-						@Override
-						public boolean shouldBeRecursive() {
-							return false;
-						}
-
-						@Override
-						public TreeFilter clone() {
-							return this;
-						}
+			if (!isNew())
+				changedFiles = OneDev.getInstance(PullRequestInfoManager.class).getChangedFiles(this);
+			else
+				changedFiles = calcChangedFiles();
+		}
+		return changedFiles;
+	}
+	
+	/**
+	 * Calculate changed files of this update since previous update. Use {@link #getChangedFiles()} 
+	 * instead unless you want to calculate it again
+	 */
+	public Collection<String> calcChangedFiles() {
+		Collection<String> changedFiles = new HashSet<>();
+		
+		Repository repository = getRequest().getWorkProject().getRepository();
+		try (	RevWalk revWalk = new RevWalk(repository);
+				TreeWalk treeWalk = new TreeWalk(repository)) {
+			RevCommit mergeBaseCommit = revWalk.parseCommit(ObjectId.fromString(getMergeBaseCommitHash()));
+			RevCommit baseCommit = revWalk.parseCommit(ObjectId.fromString(getBaseCommitHash()));
+			RevCommit headCommit = revWalk.parseCommit(ObjectId.fromString(getHeadCommitHash()));
+			revWalk.markStart(mergeBaseCommit);
+			revWalk.markStart(baseCommit);
+			revWalk.setRevFilter(RevFilter.MERGE_BASE);
+			RevCommit nextMergeBase = Preconditions.checkNotNull(revWalk.next());
+			treeWalk.setRecursive(true);
+			if (nextMergeBase.equals(baseCommit)) {
+				treeWalk.addTree(mergeBaseCommit.getTree());
+				treeWalk.addTree(headCommit.getTree());
+				treeWalk.setFilter(TreeFilter.ANY_DIFF);
+				while (treeWalk.next())
+					changedFiles.add(treeWalk.getPathString());
+			} else if (nextMergeBase.equals(mergeBaseCommit)) {
+				treeWalk.addTree(baseCommit.getTree());
+				treeWalk.addTree(headCommit.getTree());
+				treeWalk.setFilter(TreeFilter.ANY_DIFF);
+				while (treeWalk.next())
+					changedFiles.add(treeWalk.getPathString());
+			} else {
+				treeWalk.addTree(headCommit.getTree());
+				treeWalk.addTree(baseCommit.getTree());
+				treeWalk.addTree(mergeBaseCommit.getTree());
+				treeWalk.setFilter(new TreeFilter() {
+
+					@Override
+					public boolean include(TreeWalk walker)
+							throws MissingObjectException, IncorrectObjectTypeException, IOException {
+						int m0 = walker.getRawMode(0);
 						
-					});
-					while (treeWalk.next()) {
-						changedFiles.add(treeWalk.getPathString());
+						// only include the path if the file is modified in head commit 
+						// compared to base commit and that modification is not introduced
+						// by commit from target branch
+						return (walker.getRawMode(1) != m0 || !walker.idEqual(1, 0)) 
+								&& (walker.getRawMode(2) != m0 || !walker.idEqual(2, 0));
+					}
+
+					@Override
+					public boolean shouldBeRecursive() {
+						return false;
 					}
+
+					@Override
+					public TreeFilter clone() {
+						return this;
+					}
+					
+				});
+				while (treeWalk.next()) {
+					changedFiles.add(treeWalk.getPathString());
 				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 		return changedFiles;
 	}
@@ -0,0 +1,90 @@
+package io.onedev.server.model.support;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of delivering an event to a web hook, including all retry attempts
+ *
+ */
+public class WebHookDelivery implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String postUrl;
+	
+	private final String eventType;
+	
+	private final Date date;
+	
+	private final int attempts;
+	
+	private final int statusCode;
+	
+	private final String error;
+	
+	private final long duration;
+	
+	public WebHookDelivery(String postUrl, String eventType, Date date, int attempts, 
+			int statusCode, @Nullable String error, long duration) {
+		this.postUrl = postUrl;
+		this.eventType = eventType;
+		this.date = date;
+		this.attempts = attempts;
+		this.statusCode = statusCode;
+		this.error = error;
+		this.duration = duration;
+	}
+
+	public String getPostUrl() {
+		return postUrl;
+	}
+
+	public String getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * @return
+	 * 			date when the event is submitted for delivery
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return
+	 * 			http status code of last attempt, or <tt>0</tt> if no response is received
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return
+	 * 			error of last attempt, or <tt>null</tt> if delivered successfully
+	 */
+	@Nullable
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * @return
+	 * 			milliseconds from event submission to completion of last attempt 
+	 */
+	public long getDuration() {
+		return duration;
+	}
+	
+	public boolean isSuccessful() {
+		return error == null;
+	}
+	
+}
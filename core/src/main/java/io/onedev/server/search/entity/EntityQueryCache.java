@@ -0,0 +1,113 @@
+package io.onedev.server.search.entity;
+
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+
+/**
+ * Cache parsed syntax of entity queries, so that saved queries watched by many users do not 
+ * have to be parsed again for every issue or pull request event. 
+ * <p>
+ * Only syntax trees are cached. They do not reference any entities, and do not depend on 
+ * project or time, so no invalidation is needed. Queries are built from cached syntax in 
+ * current session, so that referenced entities and relative dates are resolved each time.
+ *
+ */
+@Singleton
+public class EntityQueryCache implements MetricContribution {
+
+	private static final long MAX_CACHE_SIZE = 10000;
+	
+	private final Cache<QueryKey, Optional<ParserRuleContext>> cache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+	
+	/**
+	 * Get parsed syntax of specified query string
+	 * 
+	 * @param parser
+	 * 			parser to parse syntax of the query string if it is not cached
+	 * @return
+	 * 			parsed syntax, or <tt>null</tt> if query string is malformed 
+	 */
+	@SuppressWarnings("unchecked")
+	@Nullable
+	public <C extends ParserRuleContext> C getSyntax(Class<?> entityClass, String queryString, 
+			SyntaxParser<C> parser) {
+		QueryKey key = new QueryKey(entityClass, queryString);
+		Optional<ParserRuleContext> syntax = cache.getIfPresent(key);
+		if (syntax == null) {
+			try {
+				syntax = Optional.of(parser.parse(queryString));
+			} catch (Exception e) {
+				syntax = Optional.empty();
+			}
+			cache.put(key, syntax);
+		}
+		return (C) syntax.orElse(null);
+	}
+	
+	@Override
+	public String getMetricGroup() {
+		return "Entity Query Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return MetricUtils.getCacheMetrics(cache);
+	}
+
+	public static interface SyntaxParser<C extends ParserRuleContext> {
+		
+		C parse(String queryString);
+		
+	}
+	
+	private static class QueryKey {
+		
+		private final Class<?> entityClass;
+		
+		private final String queryString;
+		
+		public QueryKey(Class<?> entityClass, String queryString) {
+			this.entityClass = entityClass;
+			this.queryString = queryString;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof QueryKey))
+				return false;
+			if (this == other)
+				return true;
+			QueryKey otherKey = (QueryKey) other;
+			return new EqualsBuilder()
+					.append(entityClass, otherKey.entityClass)
+					.append(queryString, otherKey.queryString)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(entityClass)
+					.append(queryString)
+					.toHashCode();
+		}
+		
+	}
+	
+}
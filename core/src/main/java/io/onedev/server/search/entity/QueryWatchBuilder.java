@@ -7,12 +7,17 @@ import java.util.Optional;
 
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.onedev.server.model.AbstractEntity;
 import io.onedev.server.model.User;
 import io.onedev.server.model.support.NamedQuery;
 import io.onedev.server.model.support.QuerySetting;
 
 public abstract class QueryWatchBuilder<T extends AbstractEntity> {
+
+	private static final Logger logger = LoggerFactory.getLogger(QueryWatchBuilder.class);
 	
 	private final Map<String, Optional<EntityQuery<T>>> parsedQueries = new HashMap<>();
 	
@@ -45,13 +50,23 @@ public abstract class QueryWatchBuilder<T extends AbstractEntity> {
 			Optional<EntityQuery<T>> entityQuery = parsedQueries.get(namedQuery.getQuery());
 			if (entityQuery == null) {
 				try {
-					entityQuery = Optional.of(parse(namedQuery.getQuery()));
+					entityQuery = Optional.ofNullable(parse(namedQuery.getQuery()));
 				} catch (Exception e) {
 					entityQuery = Optional.empty();
 				}
 				parsedQueries.put(namedQuery.getQuery(), entityQuery);
 			}
-			return entityQuery.isPresent() && entityQuery.get().matches(getEntity(), user); 
+			if (entityQuery.isPresent()) {
+				// Do not let a failing query abort evaluation of other watches
+				try {
+					return entityQuery.get().matches(getEntity(), user);
+				} catch (Exception e) {
+					logger.error("Error evaluating watched query '" + namedQuery.getQuery() + "'", e);
+					return false;
+				}
+			} else {
+				return false;
+			}
 		} else {
 			return false;
 		}
@@ -61,6 +76,13 @@ public abstract class QueryWatchBuilder<T extends AbstractEntity> {
 	
 	protected abstract Collection<? extends QuerySetting<?>> getQuerySettings();
 	
+	/**
+	 * Parse specified query string
+	 * 
+	 * @return
+	 * 			parsed query, or <tt>null</tt> if query string is malformed 
+	 */
+	@Nullable
 	protected abstract EntityQuery<T> parse(String queryString);
 	
 	protected abstract NamedQuery getSavedProjectQuery(String name);
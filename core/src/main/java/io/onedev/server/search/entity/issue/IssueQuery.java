@@ -100,263 +100,277 @@ public class IssueQuery extends EntityQuery<Issue> {
 	}
 
 	public static IssueQuery parse(@Nullable Project project, @Nullable String queryString, boolean validate) {
-		if (queryString != null) {
-			ANTLRInputStream is = new ANTLRInputStream(queryString); 
-			IssueQueryLexer lexer = new IssueQueryLexer(is);
-			lexer.removeErrorListeners();
-			lexer.addErrorListener(new BaseErrorListener() {
+		if (queryString != null)
+			return bind(project, parseSyntax(queryString), validate);
+		else
+			return new IssueQuery();
+	}
+	
+	/**
+	 * Parse syntax of specified query string. Result of this method does not reference any 
+	 * entities, and can be shared to build queries later via {@link #bind(Project, QueryContext, boolean)}
+	 */
+	public static QueryContext parseSyntax(String queryString) {
+		ANTLRInputStream is = new ANTLRInputStream(queryString); 
+		IssueQueryLexer lexer = new IssueQueryLexer(is);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(new BaseErrorListener() {
 
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+					int charPositionInLine, String msg, RecognitionException e) {
+				throw new OneException("Malformed query syntax", e);
+			}
+			
+		});
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		IssueQueryParser parser = new IssueQueryParser(tokens);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		QueryContext queryContext;
+		try {
+			queryContext = parser.query();
+		} catch (Exception e) {
+			if (e instanceof OneException)
+				throw e;
+			else
+				throw new OneException("Malformed query syntax", e);
+		}
+		return queryContext;
+	}
+	
+	/**
+	 * Build query from parsed syntax, with referenced entities loaded in current session
+	 */
+	public static IssueQuery bind(@Nullable Project project, QueryContext queryContext, boolean validate) {
+		CriteriaContext criteriaContext = queryContext.criteria();
+		IssueCriteria issueCriteria;
+		if (criteriaContext != null) {
+			issueCriteria = new IssueQueryBaseVisitor<IssueCriteria>() {
+
+				private long getValueOrdinal(ChoiceInput field, String value) {
+					List<String> choices = new ArrayList<>(field.getChoiceProvider().getChoices(true).keySet());
+					return choices.indexOf(value);
+				}
+				
 				@Override
-				public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
-						int charPositionInLine, String msg, RecognitionException e) {
-					throw new OneException("Malformed query syntax", e);
+				public IssueCriteria visitOperatorCriteria(OperatorCriteriaContext ctx) {
+					switch (ctx.operator.getType()) {
+					case IssueQueryLexer.Mine:
+						return new MineCriteria();
+					case IssueQueryLexer.Outstanding:
+						return new OutstandingCriteria();
+					case IssueQueryLexer.Closed:
+						return new ClosedCriteria();
+					case IssueQueryLexer.SubmittedByMe:
+						return new SubmittedByMeCriteria();
+					default:
+						throw new OneException("Unexpected operator: " + ctx.operator.getText());
+					}
 				}
 				
-			});
-			CommonTokenStream tokens = new CommonTokenStream(lexer);
-			IssueQueryParser parser = new IssueQueryParser(tokens);
-			parser.removeErrorListeners();
-			parser.setErrorHandler(new BailErrorStrategy());
-			QueryContext queryContext;
-			try {
-				queryContext = parser.query();
-			} catch (Exception e) {
-				if (e instanceof OneException)
-					throw e;
-				else
-					throw new OneException("Malformed query syntax", e);
-			}
-			CriteriaContext criteriaContext = queryContext.criteria();
-			IssueCriteria issueCriteria;
-			if (criteriaContext != null) {
-				issueCriteria = new IssueQueryBaseVisitor<IssueCriteria>() {
-
-					private long getValueOrdinal(ChoiceInput field, String value) {
-						List<String> choices = new ArrayList<>(field.getChoiceProvider().getChoices(true).keySet());
-						return choices.indexOf(value);
+				@Override
+				public IssueCriteria visitFieldOperatorCriteria(FieldOperatorCriteriaContext ctx) {
+					String fieldName = getValue(ctx.Quoted().getText());
+					int operator = ctx.operator.getType();
+					if (validate)
+						checkField(fieldName, operator);
+					if (fieldName.equals(FIELD_MILESTONE))
+						return new MilestoneCriteria(null);
+					else if (fieldName.equals(FIELD_DESCRIPTION))
+						return new DescriptionCriteria(null);
+					else if (fieldName.equals(FIELD_SUBMITTER))
+						return new SubmittedByMeCriteria();
+					else
+						return new FieldOperatorCriteria(fieldName, operator);
+				}
+				
+				public IssueCriteria visitOperatorValueCriteria(OperatorValueCriteriaContext ctx) {
+					String value = getValue(ctx.Quoted().getText());
+					if (ctx.SubmittedBy() != null) {
+						return new SubmittedByCriteria(getUser(value), value);
+					} else if (ctx.FixedInBuild() != null) {
+						return new FixedInCriteria(getBuild(project, value));
+					} else {
+						throw new RuntimeException("Unexpected operator: " + ctx.operator.getText());
 					}
-					
-					@Override
-					public IssueCriteria visitOperatorCriteria(OperatorCriteriaContext ctx) {
-						switch (ctx.operator.getType()) {
-						case IssueQueryLexer.Mine:
-							return new MineCriteria();
-						case IssueQueryLexer.Outstanding:
-							return new OutstandingCriteria();
-						case IssueQueryLexer.Closed:
-							return new ClosedCriteria();
-						case IssueQueryLexer.SubmittedByMe:
-							return new SubmittedByMeCriteria();
-						default:
-							throw new OneException("Unexpected operator: " + ctx.operator.getText());
+				}
+				
+				private ObjectId getCommitId(RevisionCriteriaContext revision) {
+					String value = getValue(revision.Quoted().getText());
+					if (revision.Build() != null) {
+						return ObjectId.fromString(getBuild(project, value).getCommitHash());
+					} else {
+						try {
+							return project.getRepository().resolve(value);
+						} catch (RevisionSyntaxException | IOException e) {
+							throw new OneException("Invalid revision: " + value);
 						}
 					}
+				}
+				
+				public IssueCriteria visitFixedBetweenCriteria(FixedBetweenCriteriaContext ctx) {
+					RevisionCriteriaContext sinceRevision = ctx.revisionCriteria(0);
+					int sinceType = sinceRevision.revisionType.getType();
+					String sinceValue = getValue(sinceRevision.Quoted().getText());
+					ObjectId sinceCommitId = getCommitId(sinceRevision);
 					
-					@Override
-					public IssueCriteria visitFieldOperatorCriteria(FieldOperatorCriteriaContext ctx) {
-						String fieldName = getValue(ctx.Quoted().getText());
-						int operator = ctx.operator.getType();
-						if (validate)
-							checkField(fieldName, operator);
-						if (fieldName.equals(FIELD_MILESTONE))
-							return new MilestoneCriteria(null);
-						else if (fieldName.equals(FIELD_DESCRIPTION))
-							return new DescriptionCriteria(null);
-						else if (fieldName.equals(FIELD_SUBMITTER))
-							return new SubmittedByMeCriteria();
-						else
-							return new FieldOperatorCriteria(fieldName, operator);
-					}
-					
-					public IssueCriteria visitOperatorValueCriteria(OperatorValueCriteriaContext ctx) {
-						String value = getValue(ctx.Quoted().getText());
-						if (ctx.SubmittedBy() != null) {
-							return new SubmittedByCriteria(getUser(value), value);
-						} else if (ctx.FixedInBuild() != null) {
-							return new FixedInCriteria(getBuild(project, value));
-						} else {
-							throw new RuntimeException("Unexpected operator: " + ctx.operator.getText());
-						}
-					}
+					RevisionCriteriaContext untilRevision = ctx.revisionCriteria(1);
+					int untilType = untilRevision.revisionType.getType();
+					String untilValue = getValue(untilRevision.Quoted().getText());
+					ObjectId untilCommitId = getCommitId(untilRevision);
+					return new FixedBetweenCriteria(sinceType, sinceValue, sinceCommitId, untilType, untilValue, untilCommitId);
+				}
+				
+				@Override
+				public IssueCriteria visitParensCriteria(ParensCriteriaContext ctx) {
+					return visit(ctx.criteria());
+				}
+
+				@Override
+				public IssueCriteria visitFieldOperatorValueCriteria(FieldOperatorValueCriteriaContext ctx) {
+					String fieldName = getValue(ctx.Quoted(0).getText());
+					String value = getValue(ctx.Quoted(1).getText());
+					int operator = ctx.operator.getType();
+					if (validate)
+						checkField(fieldName, operator);
 					
-					private ObjectId getCommitId(RevisionCriteriaContext revision) {
-						String value = getValue(revision.Quoted().getText());
-						if (revision.Build() != null) {
-							return ObjectId.fromString(getBuild(project, value).getCommitHash());
+					switch (operator) {
+					case IssueQueryLexer.IsBefore:
+					case IssueQueryLexer.IsAfter:
+						Date dateValue = getDateValue(value);
+						if (fieldName.equals(FIELD_SUBMIT_DATE)) 
+							return new SubmitDateCriteria(dateValue, value, operator);
+						else if (fieldName.equals(FIELD_UPDATE_DATE))
+							return new UpdateDateCriteria(dateValue, value, operator);
+						else 
+							return new DateFieldCriteria(fieldName, dateValue, value, operator);
+					case IssueQueryLexer.Contains:
+						if (fieldName.equals(FIELD_TITLE)) {
+							return new TitleCriteria(value);
+						} else if (fieldName.equals(FIELD_DESCRIPTION)) {
+							return new DescriptionCriteria(value);
+						} else if (fieldName.equals(FIELD_COMMENT)) {
+							return new CommentCriteria(value);
 						} else {
-							try {
-								return project.getRepository().resolve(value);
-							} catch (RevisionSyntaxException | IOException e) {
-								throw new OneException("Invalid revision: " + value);
-							}
-						}
-					}
-					
-					public IssueCriteria visitFixedBetweenCriteria(FixedBetweenCriteriaContext ctx) {
-						RevisionCriteriaContext sinceRevision = ctx.revisionCriteria(0);
-						int sinceType = sinceRevision.revisionType.getType();
-						String sinceValue = getValue(sinceRevision.Quoted().getText());
-						ObjectId sinceCommitId = getCommitId(sinceRevision);
-						
-						RevisionCriteriaContext untilRevision = ctx.revisionCriteria(1);
-						int untilType = untilRevision.revisionType.getType();
-						String untilValue = getValue(untilRevision.Quoted().getText());
-						ObjectId untilCommitId = getCommitId(untilRevision);
-						return new FixedBetweenCriteria(sinceType, sinceValue, sinceCommitId, untilType, untilValue, untilCommitId);
-					}
-					
-					@Override
-					public IssueCriteria visitParensCriteria(ParensCriteriaContext ctx) {
-						return visit(ctx.criteria());
-					}
-
-					@Override
-					public IssueCriteria visitFieldOperatorValueCriteria(FieldOperatorValueCriteriaContext ctx) {
-						String fieldName = getValue(ctx.Quoted(0).getText());
-						String value = getValue(ctx.Quoted(1).getText());
-						int operator = ctx.operator.getType();
-						if (validate)
-							checkField(fieldName, operator);
-						
-						switch (operator) {
-						case IssueQueryLexer.IsBefore:
-						case IssueQueryLexer.IsAfter:
-							Date dateValue = getDateValue(value);
-							if (fieldName.equals(FIELD_SUBMIT_DATE)) 
-								return new SubmitDateCriteria(dateValue, value, operator);
-							else if (fieldName.equals(FIELD_UPDATE_DATE))
-								return new UpdateDateCriteria(dateValue, value, operator);
-							else 
-								return new DateFieldCriteria(fieldName, dateValue, value, operator);
-						case IssueQueryLexer.Contains:
-							if (fieldName.equals(FIELD_TITLE)) {
-								return new TitleCriteria(value);
-							} else if (fieldName.equals(FIELD_DESCRIPTION)) {
-								return new DescriptionCriteria(value);
-							} else if (fieldName.equals(FIELD_COMMENT)) {
-								return new CommentCriteria(value);
+							InputSpec fieldSpec = getIssueSetting().getFieldSpec(fieldName);
+							if (fieldSpec instanceof TextInput) {
+								return new StringFieldCriteria(fieldName, value, operator);
 							} else {
-								InputSpec fieldSpec = getIssueSetting().getFieldSpec(fieldName);
-								if (fieldSpec instanceof TextInput) {
-									return new StringFieldCriteria(fieldName, value, operator);
-								} else {
-									long ordinal;
-									if (validate)
-										ordinal = getValueOrdinal((ChoiceInput) fieldSpec, value);
-									else
-										ordinal = 0;
-									return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, true);
-								}
+								long ordinal;
+								if (validate)
+									ordinal = getValueOrdinal((ChoiceInput) fieldSpec, value);
+								else
+									ordinal = 0;
+								return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, true);
 							}
-						case IssueQueryLexer.Is:
-							if (fieldName.equals(FIELD_MILESTONE)) {
-								return new MilestoneCriteria(value);
-							} else if (fieldName.equals(FIELD_STATE)) {
-								return new StateCriteria(value);
-							} else if (fieldName.equals(FIELD_VOTE_COUNT)) {
-								return new VoteCountCriteria(getIntValue(value), operator);
-							} else if (fieldName.equals(FIELD_COMMENT_COUNT)) {
-								return new CommentCountCriteria(getIntValue(value), operator);
-							} else if (fieldName.equals(FIELD_NUMBER)) {
-								return new NumberCriteria(getIntValue(value), operator);
+						}
+					case IssueQueryLexer.Is:
+						if (fieldName.equals(FIELD_MILESTONE)) {
+							return new MilestoneCriteria(value);
+						} else if (fieldName.equals(FIELD_STATE)) {
+							return new StateCriteria(value);
+						} else if (fieldName.equals(FIELD_VOTE_COUNT)) {
+							return new VoteCountCriteria(getIntValue(value), operator);
+						} else if (fieldName.equals(FIELD_COMMENT_COUNT)) {
+							return new CommentCountCriteria(getIntValue(value), operator);
+						} else if (fieldName.equals(FIELD_NUMBER)) {
+							return new NumberCriteria(getIntValue(value), operator);
+						} else {
+							InputSpec field = getIssueSetting().getFieldSpec(fieldName);
+							if (field instanceof IssueChoiceInput || field instanceof BuildChoiceInput 
+									|| field instanceof PullRequestChoiceInput) {
+								value = value.trim();
+								if (value.startsWith("#"))
+									value = value.substring(1);
+								return new ReferenceableFieldCriteria(fieldName, getIntValue(value));
+							} else if (field instanceof BooleanInput) {
+								return new BooleanFieldCriteria(fieldName, getBooleanValue(value));
+							} else if (field instanceof NumberInput) {
+								return new NumberFieldCriteria(fieldName, getIntValue(value), operator);
+							} else if (field instanceof ChoiceInput) { 
+								long ordinal = getValueOrdinal((ChoiceInput) field, value);
+								return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, false);
+							} else if (field instanceof UserChoiceInput 
+									|| field instanceof GroupChoiceInput) {
+								return new ChoiceFieldCriteria(fieldName, value, -1, operator, false);
 							} else {
-								InputSpec field = getIssueSetting().getFieldSpec(fieldName);
-								if (field instanceof IssueChoiceInput || field instanceof BuildChoiceInput 
-										|| field instanceof PullRequestChoiceInput) {
-									value = value.trim();
-									if (value.startsWith("#"))
-										value = value.substring(1);
-									return new ReferenceableFieldCriteria(fieldName, getIntValue(value));
-								} else if (field instanceof BooleanInput) {
-									return new BooleanFieldCriteria(fieldName, getBooleanValue(value));
-								} else if (field instanceof NumberInput) {
-									return new NumberFieldCriteria(fieldName, getIntValue(value), operator);
-								} else if (field instanceof ChoiceInput) { 
-									long ordinal = getValueOrdinal((ChoiceInput) field, value);
-									return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, false);
-								} else if (field instanceof UserChoiceInput 
-										|| field instanceof GroupChoiceInput) {
-									return new ChoiceFieldCriteria(fieldName, value, -1, operator, false);
-								} else {
-									return new StringFieldCriteria(fieldName, value, operator);
-								}
+								return new StringFieldCriteria(fieldName, value, operator);
 							}
-						case IssueQueryLexer.IsLessThan:
-						case IssueQueryLexer.IsGreaterThan:
-							if (fieldName.equals(FIELD_VOTE_COUNT)) {
-								return new VoteCountCriteria(getIntValue(value), operator);
-							} else if (fieldName.equals(FIELD_COMMENT_COUNT)) {
-								return new CommentCountCriteria(getIntValue(value), operator);
-							} else if (fieldName.equals(FIELD_NUMBER)) {
-								return new NumberCriteria(getIntValue(value), operator);
+						}
+					case IssueQueryLexer.IsLessThan:
+					case IssueQueryLexer.IsGreaterThan:
+						if (fieldName.equals(FIELD_VOTE_COUNT)) {
+							return new VoteCountCriteria(getIntValue(value), operator);
+						} else if (fieldName.equals(FIELD_COMMENT_COUNT)) {
+							return new CommentCountCriteria(getIntValue(value), operator);
+						} else if (fieldName.equals(FIELD_NUMBER)) {
+							return new NumberCriteria(getIntValue(value), operator);
+						} else {
+							InputSpec field = getIssueSetting().getFieldSpec(fieldName);
+							if (field instanceof NumberInput) {
+								return new NumberFieldCriteria(fieldName, getIntValue(value), operator);
 							} else {
-								InputSpec field = getIssueSetting().getFieldSpec(fieldName);
-								if (field instanceof NumberInput) {
-									return new NumberFieldCriteria(fieldName, getIntValue(value), operator);
-								} else {
-									long ordinal;
-									if (validate)
-										ordinal = getValueOrdinal((ChoiceInput) field, value);
-									else
-										ordinal = 0;
-									return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, false);
-								}
+								long ordinal;
+								if (validate)
+									ordinal = getValueOrdinal((ChoiceInput) field, value);
+								else
+									ordinal = 0;
+								return new ChoiceFieldCriteria(fieldName, value, ordinal, operator, false);
 							}
-						default:
-							throw new OneException("Unexpected operator " + getRuleName(operator));
 						}
+					default:
+						throw new OneException("Unexpected operator " + getRuleName(operator));
 					}
-					
-					@Override
-					public IssueCriteria visitOrCriteria(OrCriteriaContext ctx) {
-						List<IssueCriteria> childCriterias = new ArrayList<>();
-						for (CriteriaContext childCtx: ctx.criteria())
-							childCriterias.add(visit(childCtx));
-						return new OrCriteria(childCriterias);
-					}
-
-					@Override
-					public IssueCriteria visitAndCriteria(AndCriteriaContext ctx) {
-						List<IssueCriteria> childCriterias = new ArrayList<>();
-						for (CriteriaContext childCtx: ctx.criteria())
-							childCriterias.add(visit(childCtx));
-						return new AndCriteria(childCriterias);
-					}
+				}
+				
+				@Override
+				public IssueCriteria visitOrCriteria(OrCriteriaContext ctx) {
+					List<IssueCriteria> childCriterias = new ArrayList<>();
+					for (CriteriaContext childCtx: ctx.criteria())
+						childCriterias.add(visit(childCtx));
+					return new OrCriteria(childCriterias);
+				}
 
-					@Override
-					public IssueCriteria visitNotCriteria(NotCriteriaContext ctx) {
-						return new NotCriteria(visit(ctx.criteria()));
-					}
-					
-				}.visit(criteriaContext);
-			} else {
-				issueCriteria = null;
-			}
+				@Override
+				public IssueCriteria visitAndCriteria(AndCriteriaContext ctx) {
+					List<IssueCriteria> childCriterias = new ArrayList<>();
+					for (CriteriaContext childCtx: ctx.criteria())
+						childCriterias.add(visit(childCtx));
+					return new AndCriteria(childCriterias);
+				}
 
-			List<EntitySort> issueSorts = new ArrayList<>();
-			for (OrderContext order: queryContext.order()) {
-				String fieldName = getValue(order.Quoted().getText());
-				if (validate && !IssueConstants.ORDER_FIELDS.containsKey(fieldName)) {
-					InputSpec fieldSpec = getIssueSetting().getFieldSpec(fieldName);
-					if (!(fieldSpec instanceof ChoiceInput) && !(fieldSpec instanceof DateInput) 
-							&& !(fieldSpec instanceof NumberInput)) {
-						throw new OneException("Can not order by field: " + fieldName);
-					}
+				@Override
+				public IssueCriteria visitNotCriteria(NotCriteriaContext ctx) {
+					return new NotCriteria(visit(ctx.criteria()));
 				}
 				
-				EntitySort issueSort = new EntitySort();
-				issueSort.setField(fieldName);
-				if (order.direction != null && order.direction.getText().equals("asc"))
-					issueSort.setDirection(Direction.ASCENDING);
-				else
-					issueSort.setDirection(Direction.DESCENDING);
-				issueSorts.add(issueSort);
+			}.visit(criteriaContext);
+		} else {
+			issueCriteria = null;
+		}
+
+		List<EntitySort> issueSorts = new ArrayList<>();
+		for (OrderContext order: queryContext.order()) {
+			String fieldName = getValue(order.Quoted().getText());
+			if (validate && !IssueConstants.ORDER_FIELDS.containsKey(fieldName)) {
+				InputSpec fieldSpec = getIssueSetting().getFieldSpec(fieldName);
+				if (!(fieldSpec instanceof ChoiceInput) && !(fieldSpec instanceof DateInput) 
+						&& !(fieldSpec instanceof NumberInput)) {
+					throw new OneException("Can not order by field: " + fieldName);
+				}
 			}
 			
-			return new IssueQuery(issueCriteria, issueSorts);
-		} else {
-			return new IssueQuery();
+			EntitySort issueSort = new EntitySort();
+			issueSort.setField(fieldName);
+			if (order.direction != null && order.direction.getText().equals("asc"))
+				issueSort.setDirection(Direction.ASCENDING);
+			else
+				issueSort.setDirection(Direction.DESCENDING);
+			issueSorts.add(issueSort);
 		}
+		
+		return new IssueQuery(issueCriteria, issueSorts);
 	}
 	
 	private static GlobalIssueSetting getIssueSetting() {
@@ -52,212 +52,226 @@ public class PullRequestQuery extends EntityQuery<PullRequest> {
 	}
 	
 	public static PullRequestQuery parse(Project project, @Nullable String queryString, boolean validate) {
-		if (queryString != null) {
-			ANTLRInputStream is = new ANTLRInputStream(queryString); 
-			PullRequestQueryLexer lexer = new PullRequestQueryLexer(is);
-			lexer.removeErrorListeners();
-			lexer.addErrorListener(new BaseErrorListener() {
+		if (queryString != null)
+			return bind(project, parseSyntax(queryString), validate);
+		else
+			return new PullRequestQuery();
+	}
+	
+	/**
+	 * Parse syntax of specified query string. Result of this method does not reference any 
+	 * entities, and can be shared to build queries later via {@link #bind(Project, QueryContext, boolean)}
+	 */
+	public static QueryContext parseSyntax(String queryString) {
+		ANTLRInputStream is = new ANTLRInputStream(queryString); 
+		PullRequestQueryLexer lexer = new PullRequestQueryLexer(is);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(new BaseErrorListener() {
+
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+					int charPositionInLine, String msg, RecognitionException e) {
+				throw new OneException("Malformed query syntax", e);
+			}
+			
+		});
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		PullRequestQueryParser parser = new PullRequestQueryParser(tokens);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		QueryContext queryContext;
+		try {
+			queryContext = parser.query();
+		} catch (Exception e) {
+			if (e instanceof OneException)
+				throw e;
+			else
+				throw new OneException("Malformed query syntax", e);
+		}
+		return queryContext;
+	}
+	
+	/**
+	 * Build query from parsed syntax, with referenced entities loaded in current session
+	 */
+	public static PullRequestQuery bind(Project project, QueryContext queryContext, boolean validate) {
+		CriteriaContext criteriaContext = queryContext.criteria();
+		PullRequestCriteria requestCriteria;
+		if (criteriaContext != null) {
+			requestCriteria = new PullRequestQueryBaseVisitor<PullRequestCriteria>() {
 
 				@Override
-				public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
-						int charPositionInLine, String msg, RecognitionException e) {
-					throw new OneException("Malformed query syntax", e);
+				public PullRequestCriteria visitOperatorCriteria(OperatorCriteriaContext ctx) {
+					switch (ctx.operator.getType()) {
+					case PullRequestQueryLexer.Open:
+						return new OpenCriteria();
+					case PullRequestQueryLexer.Merged:
+						return new MergedCriteria();
+					case PullRequestQueryLexer.Discarded:
+						return new DiscardedCriteria();
+					case PullRequestQueryLexer.SubmittedByMe:
+						return new SubmittedByMeCriteria();
+					case PullRequestQueryLexer.ToBeReviewedByMe:
+						return new ToBeReviewedByMeCriteria();
+					case PullRequestQueryLexer.RequestedForChangesByMe:
+						return new RequestForChangesByMeCriteria();
+					case PullRequestQueryLexer.ApprovedByMe:
+						return new ApprovedByMeCriteria();
+					case PullRequestQueryLexer.DiscardedByMe:
+						return new DiscardedByMeCriteria();
+					case PullRequestQueryLexer.SomeoneRequestedForChanges:
+						return new SomeoneRequestedForChangesCriteria();
+					case PullRequestQueryLexer.HasFailedBuilds:
+						return new HasFailedBuildsCriteria();
+					case PullRequestQueryLexer.HasMergeConflicts:
+						return new HasMergeConflictsCriteria();
+					case PullRequestQueryLexer.HasPendingBuilds:
+						return new HasPendingBuildsCriteria();
+					case PullRequestQueryLexer.HasPendingReviews:
+						return new HasPendingReviewsCriteria();
+					default:
+						throw new OneException("Unexpected operator: " + ctx.operator.getText());
+					}
 				}
 				
-			});
-			CommonTokenStream tokens = new CommonTokenStream(lexer);
-			PullRequestQueryParser parser = new PullRequestQueryParser(tokens);
-			parser.removeErrorListeners();
-			parser.setErrorHandler(new BailErrorStrategy());
-			QueryContext queryContext;
-			try {
-				queryContext = parser.query();
-			} catch (Exception e) {
-				if (e instanceof OneException)
-					throw e;
-				else
-					throw new OneException("Malformed query syntax", e);
-			}
-			CriteriaContext criteriaContext = queryContext.criteria();
-			PullRequestCriteria requestCriteria;
-			if (criteriaContext != null) {
-				requestCriteria = new PullRequestQueryBaseVisitor<PullRequestCriteria>() {
+				@Override
+				public PullRequestCriteria visitOperatorValueCriteria(OperatorValueCriteriaContext ctx) {
+					String value = getValue(ctx.Quoted().getText());
+					switch (ctx.operator.getType()) {
+					case PullRequestQueryLexer.ToBeReviewedBy:
+						return new ToBeReviewedByCriteria(getUser(value));
+					case PullRequestQueryLexer.ApprovedBy:
+						return new ApprovedByCriteria(getUser(value));
+					case PullRequestQueryLexer.RequestedForChangesBy:
+						return new RequestForChangesByCriteria(getUser(value));
+					case PullRequestQueryLexer.SubmittedBy:
+						return new SubmittedByCriteria(getUser(value));
+					case PullRequestQueryLexer.DiscardedBy:
+						return new DiscardedByCriteria(getUser(value));
+					case PullRequestQueryLexer.IncludesCommit:
+						return new IncludesCommitCriteria(getCommitId(project, value));
+					case PullRequestQueryLexer.IncludesIssue:
+						return new IncludesIssueCriteria(getIssue(project, value));
+					default:
+						throw new OneException("Unexpected operator: " + ctx.operator.getText());
+					}
+				}
+				
+				@Override
+				public PullRequestCriteria visitParensCriteria(ParensCriteriaContext ctx) {
+					return visit(ctx.criteria());
+				}
 
-					@Override
-					public PullRequestCriteria visitOperatorCriteria(OperatorCriteriaContext ctx) {
-						switch (ctx.operator.getType()) {
-						case PullRequestQueryLexer.Open:
-							return new OpenCriteria();
-						case PullRequestQueryLexer.Merged:
-							return new MergedCriteria();
-						case PullRequestQueryLexer.Discarded:
-							return new DiscardedCriteria();
-						case PullRequestQueryLexer.SubmittedByMe:
-							return new SubmittedByMeCriteria();
-						case PullRequestQueryLexer.ToBeReviewedByMe:
-							return new ToBeReviewedByMeCriteria();
-						case PullRequestQueryLexer.RequestedForChangesByMe:
-							return new RequestForChangesByMeCriteria();
-						case PullRequestQueryLexer.ApprovedByMe:
-							return new ApprovedByMeCriteria();
-						case PullRequestQueryLexer.DiscardedByMe:
-							return new DiscardedByMeCriteria();
-						case PullRequestQueryLexer.SomeoneRequestedForChanges:
-							return new SomeoneRequestedForChangesCriteria();
-						case PullRequestQueryLexer.HasFailedBuilds:
-							return new HasFailedBuildsCriteria();
-						case PullRequestQueryLexer.HasMergeConflicts:
-							return new HasMergeConflictsCriteria();
-						case PullRequestQueryLexer.HasPendingBuilds:
-							return new HasPendingBuildsCriteria();
-						case PullRequestQueryLexer.HasPendingReviews:
-							return new HasPendingReviewsCriteria();
+				@Override
+				public PullRequestCriteria visitFieldOperatorValueCriteria(FieldOperatorValueCriteriaContext ctx) {
+					String fieldName = getValue(ctx.Quoted(0).getText());
+					String value = getValue(ctx.Quoted(1).getText());
+					int operator = ctx.operator.getType();
+					if (validate)
+						checkField(project, fieldName, operator);
+					
+					switch (operator) {
+					case PullRequestQueryLexer.IsBefore:
+					case PullRequestQueryLexer.IsAfter:
+						Date dateValue = getDateValue(value);
+						switch (fieldName) {
+						case PullRequestConstants.FIELD_SUBMIT_DATE:
+							return new SubmitDateCriteria(dateValue, value, operator);
+						case PullRequestConstants.FIELD_UPDATE_DATE:
+							return new UpdateDateCriteria(dateValue, value, operator);
+						case PullRequestConstants.FIELD_CLOSE_DATE:
+							return new CloseDateCriteria(dateValue, value, operator);
 						default:
-							throw new OneException("Unexpected operator: " + ctx.operator.getText());
+							throw new IllegalStateException();
 						}
-					}
-					
-					@Override
-					public PullRequestCriteria visitOperatorValueCriteria(OperatorValueCriteriaContext ctx) {
-						String value = getValue(ctx.Quoted().getText());
-						switch (ctx.operator.getType()) {
-						case PullRequestQueryLexer.ToBeReviewedBy:
-							return new ToBeReviewedByCriteria(getUser(value));
-						case PullRequestQueryLexer.ApprovedBy:
-							return new ApprovedByCriteria(getUser(value));
-						case PullRequestQueryLexer.RequestedForChangesBy:
-							return new RequestForChangesByCriteria(getUser(value));
-						case PullRequestQueryLexer.SubmittedBy:
-							return new SubmittedByCriteria(getUser(value));
-						case PullRequestQueryLexer.DiscardedBy:
-							return new DiscardedByCriteria(getUser(value));
-						case PullRequestQueryLexer.IncludesCommit:
-							return new IncludesCommitCriteria(getCommitId(project, value));
-						case PullRequestQueryLexer.IncludesIssue:
-							return new IncludesIssueCriteria(getIssue(project, value));
+					case PullRequestQueryLexer.Contains:
+						switch (fieldName) {
+						case PullRequestConstants.FIELD_TITLE:
+							return new TitleCriteria(value);
+						case PullRequestConstants.FIELD_DESCRIPTION:
+							return new DescriptionCriteria(value);
+						case PullRequestConstants.FIELD_COMMENT:
+							return new CommentCriteria(value);
 						default:
-							throw new OneException("Unexpected operator: " + ctx.operator.getText());
+							throw new IllegalStateException();
 						}
-					}
-					
-					@Override
-					public PullRequestCriteria visitParensCriteria(ParensCriteriaContext ctx) {
-						return visit(ctx.criteria());
-					}
-
-					@Override
-					public PullRequestCriteria visitFieldOperatorValueCriteria(FieldOperatorValueCriteriaContext ctx) {
-						String fieldName = getValue(ctx.Quoted(0).getText());
-						String value = getValue(ctx.Quoted(1).getText());
-						int operator = ctx.operator.getType();
-						if (validate)
-							checkField(project, fieldName, operator);
-						
-						switch (operator) {
-						case PullRequestQueryLexer.IsBefore:
-						case PullRequestQueryLexer.IsAfter:
-							Date dateValue = getDateValue(value);
-							switch (fieldName) {
-							case PullRequestConstants.FIELD_SUBMIT_DATE:
-								return new SubmitDateCriteria(dateValue, value, operator);
-							case PullRequestConstants.FIELD_UPDATE_DATE:
-								return new UpdateDateCriteria(dateValue, value, operator);
-							case PullRequestConstants.FIELD_CLOSE_DATE:
-								return new CloseDateCriteria(dateValue, value, operator);
-							default:
-								throw new IllegalStateException();
-							}
-						case PullRequestQueryLexer.Contains:
-							switch (fieldName) {
-							case PullRequestConstants.FIELD_TITLE:
-								return new TitleCriteria(value);
-							case PullRequestConstants.FIELD_DESCRIPTION:
-								return new DescriptionCriteria(value);
-							case PullRequestConstants.FIELD_COMMENT:
-								return new CommentCriteria(value);
-							default:
-								throw new IllegalStateException();
-							}
-						case PullRequestQueryLexer.Is:
-							switch (fieldName) {
-							case PullRequestConstants.FIELD_NUMBER:
-								return new NumberCriteria(getIntValue(value), operator);
-							case PullRequestConstants.FIELD_MERGE_STRATEGY:
-								return new MergeStrategyCriteria(MergeStrategy.fromString(value));
-							case PullRequestConstants.FIELD_SOURCE_BRANCH:
-								return new SourceBranchCriteria(value);
-							case PullRequestConstants.FIELD_SOURCE_PROJECT:
-								Project project = OneDev.getInstance(ProjectManager.class).find(value);
-								if (project == null)
-									throw new OneException("Unable to find project: " + value);
-								return new SourceProjectCriteria(project);
-							case PullRequestConstants.FIELD_TARGET_BRANCH:
-								return new TargetBranchCriteria(value);
-							case PullRequestConstants.FIELD_COMMENT_COUNT:
-								return new CommentCountCriteria(getIntValue(value), operator);
-							default: 
-								throw new IllegalStateException();
-							}
-						case PullRequestQueryLexer.IsLessThan:
-						case PullRequestQueryLexer.IsGreaterThan:
-							switch (fieldName) {
-							case PullRequestConstants.FIELD_NUMBER:
-								return new NumberCriteria(getIntValue(value), operator);
-							case PullRequestConstants.FIELD_COMMENT_COUNT:
-								return new CommentCountCriteria(getIntValue(value), operator);
-							default:
-								throw new IllegalStateException();
-							}
+					case PullRequestQueryLexer.Is:
+						switch (fieldName) {
+						case PullRequestConstants.FIELD_NUMBER:
+							return new NumberCriteria(getIntValue(value), operator);
+						case PullRequestConstants.FIELD_MERGE_STRATEGY:
+							return new MergeStrategyCriteria(MergeStrategy.fromString(value));
+						case PullRequestConstants.FIELD_SOURCE_BRANCH:
+							return new SourceBranchCriteria(value);
+						case PullRequestConstants.FIELD_SOURCE_PROJECT:
+							Project project = OneDev.getInstance(ProjectManager.class).find(value);
+							if (project == null)
+								throw new OneException("Unable to find project: " + value);
+							return new SourceProjectCriteria(project);
+						case PullRequestConstants.FIELD_TARGET_BRANCH:
+							return new TargetBranchCriteria(value);
+						case PullRequestConstants.FIELD_COMMENT_COUNT:
+							return new CommentCountCriteria(getIntValue(value), operator);
+						default: 
+							throw new IllegalStateException();
+						}
+					case PullRequestQueryLexer.IsLessThan:
+					case PullRequestQueryLexer.IsGreaterThan:
+						switch (fieldName) {
+						case PullRequestConstants.FIELD_NUMBER:
+							return new NumberCriteria(getIntValue(value), operator);
+						case PullRequestConstants.FIELD_COMMENT_COUNT:
+							return new CommentCountCriteria(getIntValue(value), operator);
 						default:
 							throw new IllegalStateException();
 						}
+					default:
+						throw new IllegalStateException();
 					}
-					
-					@Override
-					public PullRequestCriteria visitOrCriteria(OrCriteriaContext ctx) {
-						List<PullRequestCriteria> childCriterias = new ArrayList<>();
-						for (CriteriaContext childCtx: ctx.criteria())
-							childCriterias.add(visit(childCtx));
-						return new OrCriteria(childCriterias);
-					}
+				}
+				
+				@Override
+				public PullRequestCriteria visitOrCriteria(OrCriteriaContext ctx) {
+					List<PullRequestCriteria> childCriterias = new ArrayList<>();
+					for (CriteriaContext childCtx: ctx.criteria())
+						childCriterias.add(visit(childCtx));
+					return new OrCriteria(childCriterias);
+				}
 
-					@Override
-					public PullRequestCriteria visitAndCriteria(AndCriteriaContext ctx) {
-						List<PullRequestCriteria> childCriterias = new ArrayList<>();
-						for (CriteriaContext childCtx: ctx.criteria())
-							childCriterias.add(visit(childCtx));
-						return new AndCriteria(childCriterias);
-					}
+				@Override
+				public PullRequestCriteria visitAndCriteria(AndCriteriaContext ctx) {
+					List<PullRequestCriteria> childCriterias = new ArrayList<>();
+					for (CriteriaContext childCtx: ctx.criteria())
+						childCriterias.add(visit(childCtx));
+					return new AndCriteria(childCriterias);
+				}
 
-					@Override
-					public PullRequestCriteria visitNotCriteria(NotCriteriaContext ctx) {
-						return new NotCriteria(visit(ctx.criteria()));
-					}
+				@Override
+				public PullRequestCriteria visitNotCriteria(NotCriteriaContext ctx) {
+					return new NotCriteria(visit(ctx.criteria()));
+				}
 
-				}.visit(criteriaContext);
-			} else {
-				requestCriteria = null;
-			}
+			}.visit(criteriaContext);
+		} else {
+			requestCriteria = null;
+		}
 
-			List<EntitySort> requestSorts = new ArrayList<>();
-			for (OrderContext order: queryContext.order()) {
-				String fieldName = getValue(order.Quoted().getText());
-				if (validate && !PullRequestConstants.ORDER_FIELDS.containsKey(fieldName))
-					throw new OneException("Can not order by field: " + fieldName);
-				
-				EntitySort requestSort = new EntitySort();
-				requestSort.setField(fieldName);
-				if (order.direction != null && order.direction.getText().equals("asc"))
-					requestSort.setDirection(Direction.ASCENDING);
-				else
-					requestSort.setDirection(Direction.DESCENDING);
-				requestSorts.add(requestSort);
-			}
+		List<EntitySort> requestSorts = new ArrayList<>();
+		for (OrderContext order: queryContext.order()) {
+			String fieldName = getValue(order.Quoted().getText());
+			if (validate && !PullRequestConstants.ORDER_FIELDS.containsKey(fieldName))
+				throw new OneException("Can not order by field: " + fieldName);
 			
-			return new PullRequestQuery(requestCriteria, requestSorts);
-		} else {
-			return new PullRequestQuery();
+			EntitySort requestSort = new EntitySort();
+			requestSort.setField(fieldName);
+			if (order.direction != null && order.direction.getText().equals("asc"))
+				requestSort.setDirection(Direction.ASCENDING);
+			else
+				requestSort.setDirection(Direction.DESCENDING);
+			requestSorts.add(requestSort);
 		}
+		
+		return new PullRequestQuery(requestCriteria, requestSorts);
 	}
 	
 	public static void checkField(Project project, String fieldName, int operator) {
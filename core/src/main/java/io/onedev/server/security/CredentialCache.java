@@ -0,0 +1,154 @@
+package io.onedev.server.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.shiro.authc.UsernamePasswordToken;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.launcher.loader.Listen;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Membership;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.User;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
+import io.onedev.server.util.metric.MetricUtils;
+
+/**
+ * Cache recently verified credentials so that git and REST clients sending basic auth header with every
+ * request do not pay for password hashing, database access and external authentication each time.
+ * Credentials are never stored in plain text: cache key is a HMAC of user name and password with a key
+ * generated randomly at server startup
+ *
+ */
+@Singleton
+public class CredentialCache implements MetricContribution {
+
+	private static final long CACHE_TTL = 60;
+
+	private static final long MAX_CACHE_SIZE = 10000;
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	private final Dao dao;
+
+	private final SecretKeySpec secretKey;
+
+	private final Cache<String, Long> cache = CacheBuilder.newBuilder()
+			.expireAfterWrite(CACHE_TTL, TimeUnit.SECONDS)
+			.maximumSize(MAX_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	@Inject
+	public CredentialCache(Dao dao) {
+		this.dao = dao;
+		byte[] keyBytes = new byte[32];
+		new SecureRandom().nextBytes(keyBytes);
+		secretKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+	}
+
+	private String getKey(UsernamePasswordToken token) {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(secretKey);
+			mac.update(token.getUsername().getBytes(StandardCharsets.UTF_8));
+			mac.update((byte)0);
+			mac.update(new String(token.getPassword()).getBytes(StandardCharsets.UTF_8));
+			return Hex.encodeHexString(mac.doFinal());
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get id of the user verified previously with specified credentials
+	 *
+	 * @return
+	 * 			id of verified user, or <tt>null</tt> if credentials are not verified recently
+	 */
+	@Nullable
+	public Long getUserId(UsernamePasswordToken token) {
+		if (token.getUsername() != null && token.getPassword() != null)
+			return cache.getIfPresent(getKey(token));
+		else
+			return null;
+	}
+
+	public void cache(UsernamePasswordToken token, Long userId) {
+		if (token.getUsername() != null && token.getPassword() != null)
+			cache.put(getKey(token), userId);
+	}
+
+	public void invalidate(Long userId) {
+		for (Iterator<Map.Entry<String, Long>> it = cache.asMap().entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue().equals(userId))
+				it.remove();
+		}
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	private void invalidateAfterCommit(@Nullable Long userId) {
+		dao.doAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				if (userId != null)
+					invalidate(userId);
+				else
+					invalidateAll();
+			}
+
+		});
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof User)
+			invalidateAfterCommit(event.getEntity().getId());
+		else if (event.getEntity() instanceof Membership)
+			invalidateAfterCommit(((Membership) event.getEntity()).getUser().getId());
+		else if (event.getEntity() instanceof Setting)
+			invalidateAfterCommit(null);
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof User)
+			invalidateAfterCommit(event.getEntity().getId());
+		else if (event.getEntity() instanceof Membership)
+			invalidateAfterCommit(((Membership) event.getEntity()).getUser().getId());
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Credential Cache";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		return MetricUtils.getCacheMetrics(cache);
+	}
+
+}
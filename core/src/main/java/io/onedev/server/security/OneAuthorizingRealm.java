@@ -11,6 +11,7 @@ import javax.inject.Singleton;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.authc.credential.PasswordMatcher;
 import org.apache.shiro.authc.credential.PasswordService;
@@ -61,11 +62,30 @@ public class OneAuthorizingRealm extends AuthorizingRealm {
     private final MembershipManager membershipManager;
     
     private final GroupManager groupManager;
+    
+    private final CredentialCache credentialCache;
         
 	@Inject
     public OneAuthorizingRealm(UserManager userManager, CacheManager cacheManager, SettingManager configManager, 
-    		MembershipManager membershipManager, GroupManager groupManager) {
-	    PasswordMatcher passwordMatcher = new PasswordMatcher();
+    		MembershipManager membershipManager, GroupManager groupManager, CredentialCache credentialCache) {
+	    PasswordMatcher passwordMatcher = new PasswordMatcher() {
+
+			@Override
+			public boolean doCredentialsMatch(AuthenticationToken token, AuthenticationInfo info) {
+				if (info instanceof CachedAuthenticationInfo) {
+					return true;
+				} else if (super.doCredentialsMatch(token, info)) {
+					if (token instanceof UsernamePasswordToken) {
+						credentialCache.cache((UsernamePasswordToken) token, 
+								(Long) info.getPrincipals().getPrimaryPrincipal());
+					}
+					return true;
+				} else {
+					return false;
+				}
+			}
+	    	
+	    };
 	    passwordMatcher.setPasswordService(AppLoader.getInstance(PasswordService.class));
 		setCredentialsMatcher(passwordMatcher);
 		
@@ -74,6 +94,7 @@ public class OneAuthorizingRealm extends AuthorizingRealm {
     	this.configManager = configManager;
     	this.membershipManager = membershipManager;
     	this.groupManager = groupManager;
+    	this.credentialCache = credentialCache;
     }
 
 	private Collection<Permission> getDefaultPermissions() {
@@ -243,8 +264,28 @@ public class OneAuthorizingRealm extends AuthorizingRealm {
 	@Override
 	protected final AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) 
 			throws AuthenticationException {
+		if (token instanceof UsernamePasswordToken) {
+			Long userId = credentialCache.getUserId((UsernamePasswordToken) token);
+			if (userId != null && cacheManager.getUser(userId) != null)
+				return new CachedAuthenticationInfo(userId);
+		}
+		
 		// transaction annotation can not be applied to final method, so we relay to another method
 		return doGetAuthenticationInfoInTransaction(token);
 	}
 	
+	/**
+	 * Authentication info returned for credentials verified recently. Credentials matching is skipped for 
+	 * this info as the credentials cache is keyed by both user name and password 
+	 */
+	private static class CachedAuthenticationInfo extends SimpleAuthenticationInfo {
+
+		private static final long serialVersionUID = 1L;
+
+		public CachedAuthenticationInfo(Long userId) {
+			super(User.asPrincipal(userId), null);
+		}
+		
+	}
+	
 }
@@ -1,26 +1,90 @@
 package io.onedev.server.util;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
-import com.google.common.collect.MapMaker;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.Script;
 import io.onedev.server.exception.ScriptException;
+import io.onedev.server.util.metric.MetricUtils;
+import io.onedev.utils.ExceptionUtils;
 
 public class GroovyUtils {
 	
-	private static Map<String, Class<?>> scriptClassCache = new MapMaker().weakValues().makeMap();
+	private static final Logger logger = LoggerFactory.getLogger(GroovyUtils.class);
+	
+	private static final int MAX_CACHED_SCRIPTS = 1000;
+	
+	/*
+	 * Each script is compiled with its own class loader so that evicted script classes can be 
+	 * unloaded without affecting others
+	 */
+	private static final Cache<String, Class<?>> scriptClassCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_SCRIPTS)
+			.recordStats()
+			.removalListener(new RemovalListener<String, Class<?>>() {
+
+				@Override
+				public void onRemoval(RemovalNotification<String, Class<?>> notification) {
+					unload(notification.getValue());
+				}
+				
+			})
+			.build();
 	
     public static Class<?> compile(String script) {
-		Class<?> scriptClass = scriptClassCache.get(script);
-		if (scriptClass == null) {
-			scriptClass = new GroovyClassLoader(GroovyUtils.class.getClassLoader()).parseClass(script);
-			scriptClassCache.put(script, scriptClass);
-		} 
-		return scriptClass;
+    	try {
+			return scriptClassCache.get(script, () -> parseClass(script));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+    }
+    
+    /**
+     * Compile specified script with a new class loader without caching. Caller is responsible for 
+     * calling {@link #unload(Class)} when the class is no longer used
+     */
+    public static Class<?> parseClass(String script) {
+    	return new GroovyClassLoader(GroovyUtils.class.getClassLoader()).parseClass(script);
+    }
+    
+    /**
+     * Release all classes compiled together with specified script class so that they can be garbage 
+     * collected together with their class loader 
+     */
+    public static void unload(Class<?> scriptClass) {
+    	ClassLoader classLoader = scriptClass.getClassLoader();
+    	if (classLoader instanceof GroovyClassLoader.InnerLoader)
+    		classLoader = classLoader.getParent();
+    	if (classLoader instanceof GroovyClassLoader) {
+    		GroovyClassLoader groovyClassLoader = (GroovyClassLoader) classLoader;
+    		for (Class<?> loadedClass: groovyClassLoader.getLoadedClasses())
+    			InvokerHelper.removeClass(loadedClass);
+    		InvokerHelper.removeClass(scriptClass);
+    		groovyClassLoader.clearCache();
+    		try {
+				groovyClassLoader.close();
+			} catch (IOException e) {
+				logger.error("Error closing groovy class loader", e);
+			}
+    	}
+    }
+    
+    public static Map<String, String> getCacheMetrics() {
+    	return MetricUtils.getCacheMetrics(scriptClassCache);
     }
     
     private static Binding getBinding(Map<String, Object> variables) {
@@ -46,24 +110,30 @@ public class GroovyUtils {
     
     public static Object evalScript(String scriptText, Map<String, Object> variables) {
     	try {
-	    	Class<?> scriptClass = compile(scriptText);
-			Script script;
-			try {
-				Object instance = scriptClass.newInstance();
-				if (!(instance instanceof Script))
-					return scriptClass;
-				else 
-					script = (Script) instance;					
-			} catch (InstantiationException | IllegalAccessException e) {
-				throw new RuntimeException(e);
-			}
-			script.setBinding(getBinding(variables));
-			return script.run();
+    		return evalScript(compile(scriptText), variables);
 		} catch (RuntimeException e) {
 			throw new ScriptException(scriptText, e);
 		}
     }
     
+    /**
+     * Evaluate script compiled previously with {@link #parseClass(String)}
+     */
+    public static Object evalScript(Class<?> scriptClass, Map<String, Object> variables) {
+		Script script;
+		try {
+			Object instance = scriptClass.newInstance();
+			if (!(instance instanceof Script))
+				return scriptClass;
+			else 
+				script = (Script) instance;					
+		} catch (InstantiationException | IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		script.setBinding(getBinding(variables));
+		return script.run();
+    }
+    
     public static Object evalScript(String scriptText) {
     	return evalScript(scriptText, new HashMap<>());
     }
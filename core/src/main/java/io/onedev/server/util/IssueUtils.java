@@ -19,11 +19,10 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.Sets;
 
 import io.onedev.server.OneDev;
-import io.onedev.server.manager.ProjectManager;
+import io.onedev.server.manager.IssueFieldBeanManager;
 import io.onedev.server.manager.SettingManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
-import io.onedev.server.model.support.setting.GlobalIssueSetting;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.inputspec.InputSpec;
 import io.onedev.server.web.editable.BeanDescriptor;
@@ -33,29 +32,18 @@ public class IssueUtils {
 	
     private static final Set<String> FIX_ISSUE_WORDS = Sets.newHashSet("fix", "fixed", "fixes", "resolve", "resolved", "resolves");
     
-	private static final String BEAN_PREFIX = "IssueFieldBean";
-	
 	public static void clearFields(Serializable fieldBean) {
 		for (PropertyDescriptor property: new BeanDescriptor(fieldBean.getClass()).getPropertyDescriptors())
 			property.setPropertyValue(fieldBean, null);
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static Class<? extends Serializable> defineBeanClass(Project project) {
-		String className = BEAN_PREFIX + project.getId();
-		GlobalIssueSetting issueSetting = OneDev.getInstance(SettingManager.class).getIssueSetting();
-		return (Class<? extends Serializable>) InputSpec.defineClass(className, issueSetting.getFieldSpecs());
+		return OneDev.getInstance(IssueFieldBeanManager.class).defineBeanClass(project);
 	}
 	
 	@Nullable
 	public static Class<? extends Serializable> loadBeanClass(String className) {
-		if (className.startsWith(BEAN_PREFIX)) {
-			Long projectId = Long.parseLong(className.substring(BEAN_PREFIX.length()));
-			Project project = OneDev.getInstance(ProjectManager.class).load(projectId);
-			return defineBeanClass(project);
-		} else {
-			return null;
-		}
+		return OneDev.getInstance(IssueFieldBeanManager.class).loadBeanClass(className);
 	}
 	
 	public static Collection<String> getPropertyNames(Project project, Class<?> fieldBeanClass, 
@@ -0,0 +1,196 @@
+package io.onedev.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.annotation.Nullable;
+
+/**
+ * Gzip output stream compressing blocks of data in parallel. Data is split into fixed size
+ * blocks, and each block is deflated separately with last 32k of its previous block as preset
+ * dictionary, so that compression ratio is close to single threaded compression. Deflated
+ * blocks are sync flushed and concatenated into a single gzip member, which can be read by any
+ * gzip decompressor.
+ *
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+
+	private static final int BLOCK_SIZE = 128*1024;
+
+	private static final int DICTIONARY_SIZE = 32*1024;
+
+	private static final byte[] HEADER = new byte[] {0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte)0xff};
+
+	private final ExecutorService executor;
+
+	private final int maxPendingBlocks;
+
+	private final int level;
+
+	private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+	private final CRC32 crc = new CRC32();
+
+	private byte[] block = new byte[BLOCK_SIZE];
+
+	private int blockLength;
+
+	private byte[] dictionary;
+
+	private long totalLength;
+
+	private boolean closed;
+
+	/**
+	 * @param out
+	 * 			underlying output stream to write compressed data to
+	 * @param executor
+	 * 			executor to deflate blocks
+	 * @param maxPendingBlocks
+	 * 			max number of blocks being deflated at the same time. Writing will be blocked
+	 * 			until some blocks are deflated if this number is reached
+	 * @param level
+	 * 			compression level
+	 */
+	public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxPendingBlocks,
+			int level) throws IOException {
+		super(out);
+		this.executor = executor;
+		this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+		this.level = level;
+		out.write(HEADER);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxPendingBlocks)
+			throws IOException {
+		this(out, executor, maxPendingBlocks, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte)b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		crc.update(b, off, len);
+		totalLength += len;
+		while (len > 0) {
+			int count = Math.min(len, BLOCK_SIZE - blockLength);
+			System.arraycopy(b, off, block, blockLength, count);
+			blockLength += count;
+			off += count;
+			len -= count;
+			if (blockLength == BLOCK_SIZE)
+				submitBlock(false);
+		}
+	}
+
+	private void submitBlock(boolean last) throws IOException {
+		byte[] input = block;
+		int inputLength = blockLength;
+		byte[] inputDictionary = dictionary;
+
+		// Only the last block can be shorter than block size, and it does not need to prepare dictionary
+		if (!last)
+			dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+		block = new byte[BLOCK_SIZE];
+		blockLength = 0;
+
+		pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() throws Exception {
+				return deflate(input, inputLength, inputDictionary, last);
+			}
+
+		}));
+		while (pendingBlocks.size() > maxPendingBlocks)
+			writeBlock(pendingBlocks.remove());
+	}
+
+	private void writeBlock(Future<byte[]> future) throws IOException {
+		try {
+			out.write(future.get());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private byte[] deflate(byte[] input, int length, @Nullable byte[] dictionary, boolean last) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (dictionary != null)
+				deflater.setDictionary(dictionary);
+			deflater.setInput(input, 0, length);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(length/2 + 64);
+			byte[] buffer = new byte[DICTIONARY_SIZE];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int count = deflater.deflate(buffer);
+					baos.write(buffer, 0, count);
+				}
+			} else {
+				int count;
+				do {
+					count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					baos.write(buffer, 0, count);
+				} while (count == buffer.length);
+			}
+			return baos.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				submitBlock(true);
+				while (!pendingBlocks.isEmpty())
+					writeBlock(pendingBlocks.remove());
+				closed = true;
+				writeIntLE((int) crc.getValue());
+				writeIntLE((int) totalLength);
+				out.flush();
+			} finally {
+				closed = true;
+				for (Future<byte[]> future: pendingBlocks)
+					future.cancel(true);
+				pendingBlocks.clear();
+				out.close();
+			}
+		}
+	}
+
+	private void writeIntLE(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+		out.write((value >>> 16) & 0xff);
+		out.write((value >>> 24) & 0xff);
+	}
+
+}
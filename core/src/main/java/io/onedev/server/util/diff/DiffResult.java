@@ -0,0 +1,30 @@
+package io.onedev.server.util.diff;
+
+import java.util.List;
+
+/**
+ * Diff blocks along with whether calculation of them timed out. Diff blocks of a timed out
+ * calculation are still valid, but may report more changes than necessary. As timeout depends
+ * on server load, these diff blocks should not be cached or persisted.
+ *
+ */
+public class DiffResult<T> {
+
+	private final List<DiffBlock<T>> diffBlocks;
+
+	private final boolean timedOut;
+
+	public DiffResult(List<DiffBlock<T>> diffBlocks, boolean timedOut) {
+		this.diffBlocks = diffBlocks;
+		this.timedOut = timedOut;
+	}
+
+	public List<DiffBlock<T>> getDiffBlocks() {
+		return diffBlocks;
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+}
@@ -28,7 +28,12 @@ public class DiffUtils {
 
 	private static final int CHANGE_CALC_TIMEOUT = 100;
 	
-	public static final int MAX_DIFF_SIZE = 65535;
+	/*
+	 * Diff calculation is bounded by a timeout, and rendering of diff is bounded by number of 
+	 * changed lines and collapsed context. This limit only guards against excessive memory 
+	 * used by line keys and tokens
+	 */
+	public static final int MAX_DIFF_SIZE = 1000000;
 	
 	private static final Pattern pattern = Pattern.compile("\\w+");
 	
@@ -105,6 +110,15 @@ public class DiffUtils {
 	 */
 	public static List<DiffBlock<Tokenized>> diff(List<String> oldLines, @Nullable String oldFileName, 
 			List<String> newLines, @Nullable String newFileName, WhitespaceOption whitespaceOption) {
+		return calcDiff(oldLines, oldFileName, newLines, newFileName, whitespaceOption).getDiffBlocks();
+	}
+	
+	/**
+	 * Same as {@link #diff(List, String, List, String, WhitespaceOption)}, but also tells whether 
+	 * calculation timed out
+	 */
+	public static DiffResult<Tokenized> calcDiff(List<String> oldLines, @Nullable String oldFileName, 
+			List<String> newLines, @Nullable String newFileName, WhitespaceOption whitespaceOption) {
 		Preconditions.checkArgument(oldLines.size() + newLines.size() <= MAX_DIFF_SIZE, 
 				"Total size of old lines and new lines should be less than " + MAX_DIFF_SIZE + ".");
 		
@@ -119,73 +133,21 @@ public class DiffUtils {
 		List<Tokenized> oldTokenizedLines = tokenize(oldLines, oldFileName);
 		List<Tokenized> newTokenizedLines = tokenize(newLines, newFileName);
 
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		TokensToCharsResult<String> result1 = tokensToChars(processedOldLines, processedNewLines);
-		
-		List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result1.chars1, result1.chars2, false);
-
-		List<DiffBlock<Tokenized>> diffBlocks = new ArrayList<>();
-		int oldLineNo = 0;
-		int newLineNo = 0;
-		for (Diff diff : diffs) {
-			List<Tokenized> lines = new ArrayList<>();
-			if (diff.operation == Operation.EQUAL) {
-				for (int i = 0; i < diff.text.length(); i++) {
-					lines.add(newTokenizedLines.get(newLineNo));
-					oldLineNo++;
-					newLineNo++;
-				}
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo-lines.size(), newLineNo-lines.size()));
-			} else if (diff.operation == Operation.INSERT) {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(newTokenizedLines.get(newLineNo++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo, newLineNo-lines.size()));
-			} else {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(oldTokenizedLines.get(oldLineNo++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, lines, 
-						oldLineNo-lines.size(), newLineNo));
-			}
-		}
-		
-		return diffBlocks;
+		return SequenceDiff.diff(processedOldLines, oldTokenizedLines, processedNewLines, newTokenizedLines);
 	}
 	
 	public static <T> List<DiffBlock<T>> diff(List<T> oldLines, List<T> newLines) {
+		return calcDiff(oldLines, newLines).getDiffBlocks();
+	}
+	
+	/**
+	 * Same as {@link #diff(List, List)}, but also tells whether calculation timed out
+	 */
+	public static <T> DiffResult<T> calcDiff(List<T> oldLines, List<T> newLines) {
 		Preconditions.checkArgument(oldLines.size() + newLines.size() <= MAX_DIFF_SIZE, 
 				"Total size of old lines and new lines should be less than " + MAX_DIFF_SIZE + ".");
 		
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		TokensToCharsResult<T> result1 = tokensToChars(oldLines, newLines);
-		
-		List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result1.chars1, result1.chars2, false);
-
-		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
-		int oldLineNo = 0;
-		int newLineNo = 0;
-		for (Diff diff : diffs) {
-			List<T> lines = new ArrayList<>();
-			if (diff.operation == Operation.EQUAL) {
-				for (int i = 0; i < diff.text.length(); i++) {
-					lines.add(newLines.get(newLineNo));
-					oldLineNo++;
-					newLineNo++;
-				}
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo-lines.size(), newLineNo-lines.size()));
-			} else if (diff.operation == Operation.INSERT) {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(newLines.get(newLineNo++));
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo, newLineNo-lines.size()));
-			} else {
-				for (int i = 0; i < diff.text.length(); i++)
-					lines.add(oldLines.get(oldLineNo++));
-				diffBlocks.add(new DiffBlock<T>(diff.operation, lines, oldLineNo-lines.size(), newLineNo));
-			}
-		}
-		
-		return diffBlocks;
+		return SequenceDiff.diff(oldLines, newLines);
 	}
 	
 	/**
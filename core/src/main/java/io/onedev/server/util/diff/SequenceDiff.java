@@ -0,0 +1,244 @@
+package io.onedev.server.util.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HashedSequence;
+import org.eclipse.jgit.diff.HashedSequenceComparator;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.LowLevelDiffAlgorithm;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+/**
+ * Diff two lists of units such as lines. Units are interned into int arrays so that they are
+ * compared by int equality, and the arrays are diffed with histogram diff, which falls back to
+ * Myers diff for regions with too many repeated units. Different from {@link DiffMatchPatch}
+ * which encodes each distinct unit as a char, number of distinct units is not limited, and
+ * memory used besides the units themselves is linear to number of units.
+ * <p>
+ * Similar to {@link DiffMatchPatch}, calculation is bounded by a timeout. Units between common 
+ * prefix and common suffix are reported as a whole replacement if it takes longer, and the 
+ * result is marked as timed out. Regions falling back to Myers diff are also replaced as a whole 
+ * if they are too large, as time of Myers diff grows quadratically with the number of edits. 
+ * This only depends on the units, so the result is not marked as timed out in this case.
+ *
+ */
+public class SequenceDiff {
+
+	// Max milliseconds to calculate edits, the same as default timeout of DiffMatchPatch 
+	private static final long TIMEOUT = 1000;
+	
+	// Check for timeout once per this number of unit comparisons to keep the check cheap 
+	private static final int TIMEOUT_CHECK_INTERVAL = 0x10000;
+	
+	// Max product of old and new sizes of a region to be diffed with Myers diff
+	private static final long MAX_MYERS_SIZE = 100000000L;
+	
+	private static final LowLevelDiffAlgorithm MYERS = 
+			(LowLevelDiffAlgorithm) DiffAlgorithm.getAlgorithm(SupportedAlgorithm.MYERS);
+
+	/*
+	 * Get edits to change old units into new units. Edits are sorted by position, and adjacent 
+	 * edits are merged into one
+	 */
+	private static <T> Edits getEdits(List<T> oldUnits, List<T> newUnits) {
+		Map<T, Integer> ids = new HashMap<>();
+		IntSequence oldSequence = intern(oldUnits, ids);
+		IntSequence newSequence = intern(newUnits, ids);
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		HistogramDiff algorithm = new HistogramDiff();
+		algorithm.setFallbackAlgorithm(new BoundedMyersDiff(deadline));
+		EditList edits;
+		boolean timedOut;
+		try {
+			edits = algorithm.diff(new TimedComparator(deadline), oldSequence, newSequence);
+			timedOut = false;
+		} catch (DiffTimeoutException e) {
+			edits = replaceAsWhole(oldSequence, newSequence);
+			timedOut = true;
+		}
+
+		List<Edit> mergedEdits = new ArrayList<>();
+		for (Edit edit: edits) {
+			if (!mergedEdits.isEmpty()) {
+				Edit lastEdit = mergedEdits.get(mergedEdits.size()-1);
+				if (lastEdit.getEndA() == edit.getBeginA() && lastEdit.getEndB() == edit.getBeginB()) {
+					mergedEdits.set(mergedEdits.size()-1, new Edit(lastEdit.getBeginA(), edit.getEndA(),
+							lastEdit.getBeginB(), edit.getEndB()));
+					continue;
+				}
+			}
+			mergedEdits.add(edit);
+		}
+		return new Edits(mergedEdits, timedOut);
+	}
+
+	/**
+	 * Diff specified units. Equal units are compared with {@link Object#equals(Object)}
+	 */
+	public static <T> DiffResult<T> diff(List<T> oldUnits, List<T> newUnits) {
+		return diff(oldUnits, oldUnits, newUnits, newUnits);
+	}
+
+	/**
+	 * Diff units by comparing their keys. This is useful for instance to compare lines after
+	 * processing white spaces, while still returning original lines in diff blocks
+	 *
+	 * @param oldKeys
+	 * 			keys to compare old units with, should be of the same size as old units
+	 * @param newKeys
+	 * 			keys to compare new units with, should be of the same size as new units
+	 * @return
+	 * 			diff result. Units of equal blocks are taken from new units
+	 */
+	public static <K, T> DiffResult<T> diff(List<K> oldKeys, List<T> oldUnits,
+			List<K> newKeys, List<T> newUnits) {
+		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
+		int oldIndex = 0;
+		int newIndex = 0;
+		Edits edits = getEdits(oldKeys, newKeys);
+		for (Edit edit: edits.edits) {
+			if (edit.getBeginB() > newIndex) {
+				diffBlocks.add(new DiffBlock<T>(Operation.EQUAL,
+						new ArrayList<>(newUnits.subList(newIndex, edit.getBeginB())), oldIndex, newIndex));
+			}
+			if (edit.getEndA() > edit.getBeginA()) {
+				diffBlocks.add(new DiffBlock<T>(Operation.DELETE,
+						new ArrayList<>(oldUnits.subList(edit.getBeginA(), edit.getEndA())),
+						edit.getBeginA(), edit.getBeginB()));
+			}
+			if (edit.getEndB() > edit.getBeginB()) {
+				diffBlocks.add(new DiffBlock<T>(Operation.INSERT,
+						new ArrayList<>(newUnits.subList(edit.getBeginB(), edit.getEndB())),
+						edit.getEndA(), edit.getBeginB()));
+			}
+			oldIndex = edit.getEndA();
+			newIndex = edit.getEndB();
+		}
+		if (newIndex < newUnits.size()) {
+			diffBlocks.add(new DiffBlock<T>(Operation.EQUAL,
+					new ArrayList<>(newUnits.subList(newIndex, newUnits.size())), oldIndex, newIndex));
+		}
+		return new DiffResult<T>(diffBlocks, edits.timedOut);
+	}
+
+	private static EditList replaceAsWhole(IntSequence oldSequence, IntSequence newSequence) {
+		int oldEnd = oldSequence.size();
+		int newEnd = newSequence.size();
+		int begin = 0;
+		while (begin < oldEnd && begin < newEnd && oldSequence.values[begin] == newSequence.values[begin])
+			begin++;
+		while (oldEnd > begin && newEnd > begin 
+				&& oldSequence.values[oldEnd-1] == newSequence.values[newEnd-1]) {
+			oldEnd--;
+			newEnd--;
+		}
+		EditList edits = new EditList();
+		if (oldEnd > begin || newEnd > begin)
+			edits.add(new Edit(begin, oldEnd, begin, newEnd));
+		return edits;
+	}
+	
+	private static <T> IntSequence intern(List<T> units, Map<T, Integer> ids) {
+		int[] values = new int[units.size()];
+		int index = 0;
+		for (T unit: units) {
+			Integer id = ids.get(unit);
+			if (id == null) {
+				id = ids.size();
+				ids.put(unit, id);
+			}
+			values[index++] = id;
+		}
+		return new IntSequence(values);
+	}
+
+	private static class TimedComparator extends SequenceComparator<IntSequence> {
+
+		private final long deadline;
+		
+		private int comparisons;
+		
+		public TimedComparator(long deadline) {
+			this.deadline = deadline;
+		}
+		
+		@Override
+		public boolean equals(IntSequence a, int ai, IntSequence b, int bi) {
+			if (++comparisons % TIMEOUT_CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline)
+				throw new DiffTimeoutException();
+			return a.values[ai] == b.values[bi];
+		}
+
+		@Override
+		public int hash(IntSequence seq, int ptr) {
+			return seq.values[ptr];
+		}
+
+	}
+	
+	private static class BoundedMyersDiff extends LowLevelDiffAlgorithm {
+
+		private final long deadline;
+		
+		public BoundedMyersDiff(long deadline) {
+			this.deadline = deadline;
+		}
+		
+		@Override
+		public <S extends Sequence> void diffNonCommon(EditList edits, HashedSequenceComparator<S> cmp,
+				HashedSequence<S> a, HashedSequence<S> b, Edit region) {
+			if (System.currentTimeMillis() > deadline)
+				throw new DiffTimeoutException();
+			if ((long)region.getLengthA() * region.getLengthB() > MAX_MYERS_SIZE)
+				edits.add(region);
+			else
+				MYERS.diffNonCommon(edits, cmp, a, b, region);
+		}
+		
+	}
+	
+	private static class Edits {
+		
+		private final List<Edit> edits;
+		
+		private final boolean timedOut;
+		
+		public Edits(List<Edit> edits, boolean timedOut) {
+			this.edits = edits;
+			this.timedOut = timedOut;
+		}
+		
+	}
+	
+	private static class DiffTimeoutException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+	
+	private static class IntSequence extends Sequence {
+
+		private final int[] values;
+
+		public IntSequence(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+
+	}
+
+}
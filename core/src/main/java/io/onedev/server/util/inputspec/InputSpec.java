@@ -16,6 +16,7 @@ import org.unbescape.java.JavaEscape;
 
 import com.google.common.collect.Lists;
 
+import io.onedev.server.exception.ScriptException;
 import io.onedev.server.model.support.usermatcher.Anyone;
 import io.onedev.server.model.support.usermatcher.UserMatcher;
 import io.onedev.server.util.GroovyUtils;
@@ -300,7 +301,16 @@ public abstract class InputSpec implements Serializable {
 		
 		logger.trace("Class definition script:\n" + buffer.toString());
 		
-		return (Class<?>) GroovyUtils.evalScript(buffer.toString(), new HashMap<>());
+		/*
+		 * Do not cache the class by script text here, as the caller is expected to manage life cycle of 
+		 * defined classes. Call GroovyUtils.unload(Class) to release defined class
+		 */
+		String script = buffer.toString();
+		try {
+			return (Class<?>) GroovyUtils.evalScript(GroovyUtils.parseClass(script), new HashMap<>());
+		} catch (RuntimeException e) {
+			throw new ScriptException(script, e);
+		}
 	}
 
 	public void onRenameUser(String oldName, String newName) {
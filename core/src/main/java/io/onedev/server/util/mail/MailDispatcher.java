@@ -0,0 +1,337 @@
+package io.onedev.server.util.mail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.codec.CharEncoding;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.HtmlEmail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.launcher.bootstrap.Bootstrap;
+import io.onedev.server.model.support.setting.MailSetting;
+
+/**
+ * Send queued mails in a dedicated thread. The SMTP transport is kept open and reused across
+ * messages while there are mails to send, and sending rate is limited to avoid being throttled
+ * by the mail server.
+ * <p>
+ * Mails submitted with a digest key are sent to each recipient separately, and are held for a
+ * while so that further mails with the same digest key to the same recipient can be merged into
+ * a single mail.
+ *
+ */
+public class MailDispatcher implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MailDispatcher.class);
+
+	private static final long IDLE_TIMEOUT = 30000;
+
+	private final Supplier<MailSetting> mailSettingSupplier;
+
+	private final long digestWindow;
+
+	private final long minSendInterval;
+
+	private final DelayQueue<QueuedMail> queue = new DelayQueue<>();
+
+	private final Map<String, QueuedMail> pendingDigests = new HashMap<>();
+
+	private final AtomicLong sentCount = new AtomicLong(0);
+
+	private final AtomicLong failedCount = new AtomicLong(0);
+
+	private final AtomicLong mergedCount = new AtomicLong(0);
+
+	private final AtomicLong connectionCount = new AtomicLong(0);
+
+	private volatile Thread thread;
+
+	private Transport transport;
+
+	private String transportKey;
+
+	private long lastSendTime;
+
+	/**
+	 * @param mailSettingSupplier
+	 * 			supplier of current mail setting, called before each mail is sent
+	 * @param digestWindow
+	 * 			milliseconds to hold mails with digest key for merging
+	 * @param minSendInterval
+	 * 			minimum milliseconds between two mails sent to the mail server
+	 */
+	public MailDispatcher(Supplier<MailSetting> mailSettingSupplier, long digestWindow, long minSendInterval) {
+		this.mailSettingSupplier = mailSettingSupplier;
+		this.digestWindow = digestWindow;
+		this.minSendInterval = minSendInterval;
+	}
+
+	public synchronized void start() {
+		thread = new Thread(this, "Mail Dispatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the dispatcher after sending mails already due. Held digest mails are sent immediately
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+			this.thread = null;
+		}
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(IDLE_TIMEOUT);
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	/**
+	 * Queue a mail for sending
+	 *
+	 * @param digestKey
+	 * 			key of the digest, for instance a string identifying the issue, or <tt>null</tt> to send
+	 * 			the mail to all recipients without merging
+	 */
+	public void dispatch(Collection<String> toList, String subject, String body, @Nullable String digestKey) {
+		if (toList.isEmpty())
+			return;
+		if (digestKey != null && digestWindow > 0) {
+			synchronized (pendingDigests) {
+				for (String to: toList) {
+					String key = to + "\n" + digestKey;
+					QueuedMail mail = pendingDigests.get(key);
+					if (mail != null) {
+						mail.merge(body);
+						mergedCount.incrementAndGet();
+					} else {
+						mail = new QueuedMail(Lists.newArrayList(to), subject, body, key, digestWindow);
+						pendingDigests.put(key, mail);
+						queue.offer(mail);
+					}
+				}
+			}
+		} else {
+			queue.offer(new QueuedMail(toList, subject, body, null, 0));
+		}
+	}
+
+	@Override
+	public void run() {
+		while (thread != null || queue.peek() != null && queue.peek().getDelay(TimeUnit.MILLISECONDS) <= 0) {
+			QueuedMail mail;
+			try {
+				mail = queue.poll(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				flushDigests();
+				continue;
+			}
+			if (mail != null) {
+				if (mail.digestKey != null) synchronized (pendingDigests) {
+					pendingDigests.remove(mail.digestKey);
+				}
+				send(mail);
+			} else {
+				closeTransport();
+			}
+		}
+		closeTransport();
+	}
+
+	private void flushDigests() {
+		synchronized (pendingDigests) {
+			for (QueuedMail mail: pendingDigests.values()) {
+				queue.remove(mail);
+				mail.dueTime = System.currentTimeMillis();
+				queue.offer(mail);
+			}
+		}
+	}
+
+	private void send(QueuedMail mail) {
+		long waitTime = lastSendTime + minSendInterval - System.currentTimeMillis();
+		if (waitTime > 0) {
+			try {
+				Thread.sleep(waitTime);
+			} catch (InterruptedException e) {
+				flushDigests();
+			}
+		}
+		try {
+			MailSetting mailSetting = mailSettingSupplier.get();
+			if (mailSetting == null)
+				throw new RuntimeException("Mail setting is not defined.");
+			HtmlEmail email = createEmail(mailSetting, mail.toList, mail.subject, mail.body.toString());
+			email.buildMimeMessage();
+			MimeMessage message = email.getMimeMessage();
+			logger.debug("Sending email (to: {}, subject: {})... ", mail.toList, mail.subject);
+			try {
+				getTransport(email, mailSetting).sendMessage(message, message.getAllRecipients());
+			} catch (MessagingException e) {
+				// Server may close idle connection, or the connection is broken. Retry with a new one
+				closeTransport();
+				getTransport(email, mailSetting).sendMessage(message, message.getAllRecipients());
+			}
+			sentCount.incrementAndGet();
+		} catch (Exception e) {
+			failedCount.incrementAndGet();
+			closeTransport();
+			logger.error("Error sending email (to: " + mail.toList + ", subject: " + mail.subject + ")", e);
+		} finally {
+			lastSendTime = System.currentTimeMillis();
+		}
+	}
+
+	private Transport getTransport(HtmlEmail email, MailSetting mailSetting) throws EmailException, MessagingException {
+		String key = getTransportKey(mailSetting);
+		if (transport != null && (!key.equals(transportKey) || !transport.isConnected()))
+			closeTransport();
+		if (transport == null) {
+			Transport transport = email.getMailSession().getTransport();
+			transport.connect();
+			connectionCount.incrementAndGet();
+			this.transport = transport;
+			transportKey = key;
+		}
+		return transport;
+	}
+
+	private void closeTransport() {
+		if (transport != null) {
+			try {
+				transport.close();
+			} catch (MessagingException e) {
+			}
+			transport = null;
+			transportKey = null;
+		}
+	}
+
+	private String getTransportKey(MailSetting mailSetting) {
+		return mailSetting.getSmtpHost() + ":" + mailSetting.getSmtpPort() + ":" + mailSetting.isEnableSSL()
+				+ ":" + mailSetting.getSmtpUser() + ":" + mailSetting.getSmtpPassword() + ":" + mailSetting.getTimeout();
+	}
+
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		metrics.put("Queued Mails", String.valueOf(queue.size()));
+		synchronized (pendingDigests) {
+			metrics.put("Pending Digests", String.valueOf(pendingDigests.size()));
+		}
+		metrics.put("Sent Mails", String.valueOf(sentCount.get()));
+		metrics.put("Failed Mails", String.valueOf(failedCount.get()));
+		metrics.put("Merged Mails", String.valueOf(mergedCount.get()));
+		metrics.put("SMTP Connections", String.valueOf(connectionCount.get()));
+		return metrics;
+	}
+
+	public static HtmlEmail createEmail(MailSetting mailSetting, Collection<String> toList,
+			String subject, String body) {
+		HtmlEmail email = new HtmlEmail();
+		email.setSocketConnectionTimeout(Bootstrap.SOCKET_CONNECT_TIMEOUT);
+
+		if (mailSetting.getTimeout() != 0)
+			email.setSocketTimeout(mailSetting.getTimeout()*1000);
+
+		email.setStartTLSEnabled(true);
+		email.setSSLOnConnect(mailSetting.isEnableSSL());
+		email.setSSLCheckServerIdentity(false);
+
+		String senderEmail = mailSetting.getSenderAddress();
+		if (senderEmail == null) {
+			String hostName;
+			try {
+				hostName = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				throw new RuntimeException(e);
+			}
+			senderEmail = "onedev@" + hostName;
+		}
+		try {
+			email.setFrom(senderEmail);
+			for (String address: toList)
+				email.addTo(address);
+
+			email.setHostName(mailSetting.getSmtpHost());
+			email.setSmtpPort(mailSetting.getSmtpPort());
+			email.setSslSmtpPort(String.valueOf(mailSetting.getSmtpPort()));
+			String smtpUser = mailSetting.getSmtpUser();
+			if (smtpUser != null)
+				email.setAuthentication(smtpUser, mailSetting.getSmtpPassword());
+			email.setCharset(CharEncoding.UTF_8);
+
+			email.setSubject(subject);
+			email.setHtmlMsg(body);
+		} catch (EmailException e) {
+			throw new RuntimeException(e);
+		}
+		return email;
+	}
+
+	private static class QueuedMail implements Delayed {
+
+		private final Collection<String> toList;
+
+		private final String subject;
+
+		private final StringBuilder body;
+
+		private final String digestKey;
+
+		private final Collection<String> bodies = new ArrayList<>();
+
+		private volatile long dueTime;
+
+		QueuedMail(Collection<String> toList, String subject, String body, @Nullable String digestKey, long delay) {
+			this.toList = toList;
+			this.subject = subject;
+			this.body = new StringBuilder(body);
+			this.digestKey = digestKey;
+			bodies.add(body);
+			dueTime = System.currentTimeMillis() + delay;
+		}
+
+		void merge(String body) {
+			// Notifications of the same entity often have identical body, only append distinct ones
+			if (!bodies.contains(body)) {
+				bodies.add(body);
+				this.body.append("<hr>").append(body);
+			}
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(dueTime, ((QueuedMail) other).dueTime);
+		}
+
+	}
+
+}
@@ -1,5 +1,7 @@
 package io.onedev.server.util.markdown;
 
+import java.util.Collection;
+
 import io.onedev.server.OneDev;
 import io.onedev.server.manager.IssueManager;
 import io.onedev.server.model.Issue;
@@ -8,8 +10,8 @@ import io.onedev.server.model.Project;
 public class IssueParser extends ReferenceParser<Issue> {
 
 	@Override
-	protected Issue findReferenceable(Project project, long number) {
-		return OneDev.getInstance(IssueManager.class).find(project, number);
+	protected Collection<Issue> findReferenceables(Project project, Collection<Long> numbers) {
+		return OneDev.getInstance(IssueManager.class).query(project, numbers);
 	}
 	
 }
@@ -1,7 +1,9 @@
 package io.onedev.server.util.markdown;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,14 +47,25 @@ public class MentionParser {
 		NodeTraversor tranversor = new NodeTraversor(visitor);
 		tranversor.traverse(document);
 		
-		UserManager userManager = OneDev.getInstance(UserManager.class);
+		Collection<String> userNames = new HashSet<>();
+		for (TextNode node : visitor.getMatchedNodes()) {
+			Matcher matcher = PATTERN.matcher(node.getWholeText());
+			while (matcher.find()) 
+				userNames.add(matcher.group(2));
+		}
+		
+		Map<String, User> users;
+		if (!userNames.isEmpty())
+			users = OneDev.getInstance(UserManager.class).findByNames(userNames);
+		else
+			users = new HashMap<>();
 		
 		for (TextNode node : visitor.getMatchedNodes()) {
 			Matcher matcher = PATTERN.matcher(node.getWholeText());
 			while (matcher.find()) {
 				String userName = matcher.group(2);
 				String userTag;
-				User user = userManager.findByName(userName);
+				User user = users.get(userName);
 				if (user != null) {
 					mentions.add(user);
 					userTag = toHtml(user);
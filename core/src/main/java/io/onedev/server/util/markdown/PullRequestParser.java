@@ -1,5 +1,7 @@
 package io.onedev.server.util.markdown;
 
+import java.util.Collection;
+
 import io.onedev.server.OneDev;
 import io.onedev.server.manager.PullRequestManager;
 import io.onedev.server.model.Project;
@@ -8,8 +10,8 @@ import io.onedev.server.model.PullRequest;
 public class PullRequestParser extends ReferenceParser<PullRequest> {
 
 	@Override
-	protected PullRequest findReferenceable(Project project, long number) {
-		return OneDev.getInstance(PullRequestManager.class).find(project, number);
+	protected Collection<PullRequest> findReferenceables(Project project, Collection<Long> numbers) {
+		return OneDev.getInstance(PullRequestManager.class).query(project, numbers);
 	}
 	
 }
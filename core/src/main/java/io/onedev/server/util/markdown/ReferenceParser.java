@@ -1,8 +1,12 @@
 package io.onedev.server.util.markdown;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -14,6 +18,7 @@ import org.jsoup.nodes.TextNode;
 import org.jsoup.select.NodeTraversor;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.manager.ProjectManager;
@@ -30,6 +35,8 @@ public abstract class ReferenceParser<T extends Referenceable> {
 	
 	private static final Collection<String> IGNORED_TAGS = ImmutableSet.of("pre", "code", "a");
 	
+	private static final int MAX_BATCH_SIZE = 1000;
+	
 	private final Pattern pattern;
 	
 	private final String referenceType;
@@ -54,11 +61,21 @@ public abstract class ReferenceParser<T extends Referenceable> {
 		return parseReferences(project, Jsoup.parseBodyFragment(rendered));		
 	}
 	
-	protected abstract T findReferenceable(Project project, long number);
+	/**
+	 * Find referenceables of specified numbers in specified project. This is called once per 
+	 * project referenced in a document, so implementations should query in batch
+	 * 
+	 * @return
+	 * 			found referenceables. Referenceables not found will not be included
+	 */
+	protected abstract Collection<T> findReferenceables(Project project, Collection<Long> numbers);
 	
+	/**
+	 * Parse references in two phases: references in all matched text nodes are collected first, 
+	 * and then resolved in batch per referenced project, so that documents with many references 
+	 * do not issue one query per reference
+	 */
 	public Collection<T> parseReferences(@Nullable Project project, Document document) {
-		Collection<T> references = new HashSet<>();
-		
 		TextNodeVisitor visitor = new TextNodeVisitor() {
 			
 			@Override
@@ -74,28 +91,51 @@ public abstract class ReferenceParser<T extends Referenceable> {
 		NodeTraversor tranversor = new NodeTraversor(visitor);
 		tranversor.traverse(document);
 		
+		Map<String, Set<Long>> referenceNumbers = new HashMap<>();
+		for (TextNode node : visitor.getMatchedNodes()) {
+			Matcher matcher = pattern.matcher(node.getWholeText());
+			while (matcher.find()) {
+				String referenceProjectName = matcher.group(3);
+				Set<Long> numbers = referenceNumbers.get(referenceProjectName);
+				if (numbers == null) {
+					numbers = new HashSet<>();
+					referenceNumbers.put(referenceProjectName, numbers);
+				}
+				numbers.add(Long.valueOf(matcher.group(4)));
+			}
+		}
+		
+		Map<String, Map<Long, T>> referenceables = new HashMap<>();
+		for (Map.Entry<String, Set<Long>> entry: referenceNumbers.entrySet()) {
+			Project referenceProject;
+			if (StringUtils.isNotBlank(entry.getKey()))
+				referenceProject = OneDev.getInstance(ProjectManager.class).find(entry.getKey());
+			else
+				referenceProject = project;
+			Map<Long, T> referenceablesOfProject = new HashMap<>();
+			if (referenceProject != null) {
+				for (List<Long> numbers: Lists.partition(new ArrayList<>(entry.getValue()), MAX_BATCH_SIZE)) {
+					for (T referenceable: findReferenceables(referenceProject, numbers))
+						referenceablesOfProject.put(referenceable.getNumber(), referenceable);
+				}
+			}
+			referenceables.put(entry.getKey(), referenceablesOfProject);
+		}
+		
+		Collection<T> references = new HashSet<>();
 		for (TextNode node : visitor.getMatchedNodes()) {
 			Matcher matcher = pattern.matcher(node.getWholeText());
 			while (matcher.find()) {
 				String referenceProjectName = matcher.group(3);
-				Project referenceProject;
-				if (StringUtils.isNotBlank(referenceProjectName))
-					referenceProject = OneDev.getInstance(ProjectManager.class).find(referenceProjectName);
-				else
-					referenceProject = project;
 				Long referenceNumber = Long.valueOf(matcher.group(4));
 				String referenceText = referenceProjectName + "#" + referenceNumber;
 				String referenceTag;
-				if (referenceProject != null) {
-					T referenceable = findReferenceable(referenceProject, referenceNumber);
-					if (referenceable != null) {
-						references.add(referenceable);
-						referenceTag = toHtml(referenceable, referenceText);
-					} else {
-						referenceTag = referenceText;
-					}
+				T referenceable = referenceables.get(referenceProjectName).get(referenceNumber);
+				if (referenceable != null) {
+					references.add(referenceable);
+					referenceTag = toHtml(referenceable, referenceText);
 				} else {
-					referenceTag = referenceText; 
+					referenceTag = referenceText;
 				}
 				HtmlUtils.appendReplacement(matcher, node, matcher.group(1) + matcher.group(2) + referenceTag + matcher.group(5));
 			}
@@ -0,0 +1,20 @@
+package io.onedev.server.util.metric;
+
+import java.util.Map;
+
+/**
+ * Contribute runtime metrics such as cache hit ratios and queue depths. Contributed metrics 
+ * are displayed in server information page
+ * 
+ */
+public interface MetricContribution {
+	
+	String getMetricGroup();
+	
+	/**
+	 * @return
+	 * 			ordered map of metric name to metric value
+	 */
+	Map<String, String> getMetrics();
+	
+}
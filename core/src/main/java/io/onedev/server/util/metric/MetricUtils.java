@@ -0,0 +1,26 @@
+package io.onedev.server.util.metric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+public class MetricUtils {
+
+	public static Map<String, String> getCacheMetrics(Cache<?, ?> cache) {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		CacheStats stats = cache.stats();
+		metrics.put("Entries", String.valueOf(cache.size()));
+		metrics.put("Hit Ratio", formatRatio(stats.hitRate()));
+		metrics.put("Hits", String.valueOf(stats.hitCount()));
+		metrics.put("Misses", String.valueOf(stats.missCount()));
+		metrics.put("Evictions", String.valueOf(stats.evictionCount()));
+		return metrics;
+	}
+	
+	public static String formatRatio(double ratio) {
+		return String.format("%.1f%%", ratio*100);
+	}
+	
+}
@@ -29,4 +29,37 @@ public interface ServerConfig {
 	 * 			web session timeout in seconds
 	 */
 	int getSessionTimeout();
+	
+	/**
+	 * Get max number of merge previews of pull requests to be calculated in parallel.
+	 * <p>
+	 * @return
+	 * 			max number of merge previews to be calculated in parallel
+	 */
+	int getMergePreviewConcurrency();
+	
+	/**
+	 * Get max size of blob contents to be cached in memory, in megabytes.
+	 * <p>
+	 * @return
+	 * 			max size of cached blob contents in megabytes, or <i>0</i> to disable blob cache
+	 */
+	int getBlobCacheSize();
+	
+	/**
+	 * Get max size of calculated text diffs to be cached in memory, in megabytes.
+	 * <p>
+	 * @return
+	 * 			max size of cached text diffs in megabytes, or <i>0</i> to disable diff cache
+	 */
+	int getDiffCacheSize();
+	
+	/**
+	 * Get max size of cached repository archives on disk, in megabytes.
+	 * <p>
+	 * @return
+	 * 			max size of cached archives in megabytes
+	 */
+	int getArchiveCacheSize();
+	
 }
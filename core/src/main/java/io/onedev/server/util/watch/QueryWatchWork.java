@@ -0,0 +1,67 @@
+package io.onedev.server.util.watch;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+
+import javax.annotation.Nullable;
+
+import io.onedev.utils.concurrent.Prioritized;
+
+/**
+ * Work to evaluate query watches of an issue or pull request after an event. Works queued for the 
+ * same entity are evaluated together in a single batch 
+ *
+ */
+public class QueryWatchWork extends Prioritized {
+
+	private final Date eventDate;
+	
+	private final boolean notifyWatchers;
+	
+	private final Collection<Long> excludedUserIds = new HashSet<>();
+	
+	public QueryWatchWork(int priority, Date eventDate, boolean notifyWatchers) {
+		super(priority);
+		this.eventDate = eventDate;
+		this.notifyWatchers = notifyWatchers;
+	}
+
+	public Date getEventDate() {
+		return eventDate;
+	}
+
+	/**
+	 * @return
+	 * 			whether or not users starting to watch by queries should be notified of the event
+	 */
+	public boolean isNotifyWatchers() {
+		return notifyWatchers;
+	}
+
+	/**
+	 * @return
+	 * 			ids of users who should not be notified of the event, for instance the event user 
+	 */
+	public Collection<Long> getExcludedUserIds() {
+		return excludedUserIds;
+	}
+	
+	public QueryWatchWork exclude(@Nullable Long userId) {
+		if (userId != null)
+			excludedUserIds.add(userId);
+		return this;
+	}
+	
+	/**
+	 * Check whether or not specified user should be notified of the event
+	 * 
+	 * @param visitDate
+	 * 			date the user visited the entity last time, <tt>null</tt> if never visited 
+	 */
+	public boolean shouldNotify(Long userId, @Nullable Date visitDate) {
+		return notifyWatchers && !excludedUserIds.contains(userId) 
+				&& (visitDate == null || visitDate.getTime()<eventDate.getTime());
+	}
+	
+}
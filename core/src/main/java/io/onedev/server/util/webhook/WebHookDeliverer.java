@@ -0,0 +1,386 @@
+package io.onedev.server.util.webhook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.server.model.support.WebHookDelivery;
+import io.onedev.server.util.metric.MetricUtils;
+
+/**
+ * Deliver web hook requests with pooled http connections. Requests are queued per endpoint (scheme,
+ * host and port of post url), and each endpoint is limited to a few concurrent requests so that a
+ * slow receiver can not occupy all delivery threads. Failed requests caused by network errors or
+ * server side errors are retried with exponential backoff.
+ *
+ */
+public class WebHookDeliverer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebHookDeliverer.class);
+
+	public static final String SIGNATURE_HEAD = "X-OneDev-Signature";
+
+	private static final int MAX_THREADS = 32;
+
+	private static final int MAX_ERROR_LENGTH = 1000;
+
+	private final int maxConcurrencyPerEndpoint;
+
+	private final int maxAttempts;
+
+	private final long initialBackoff;
+
+	private final DeliveryListener listener;
+
+	private final CloseableHttpClient client;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+	private final AtomicLong succeededCount = new AtomicLong(0);
+
+	private final AtomicLong failedCount = new AtomicLong(0);
+
+	private final AtomicLong retriedCount = new AtomicLong(0);
+
+	private final AtomicLong totalLatency = new AtomicLong(0);
+
+	private final AtomicLong maxLatency = new AtomicLong(0);
+
+	private boolean closed;
+
+	/**
+	 * @param timeout
+	 * 			connect and read timeout in milliseconds
+	 * @param maxConcurrencyPerEndpoint
+	 * 			max number of concurrent requests to the same endpoint
+	 * @param maxAttempts
+	 * 			max number of attempts of a request, including the initial attempt
+	 * @param initialBackoff
+	 * 			milliseconds to wait before the first retry. Wait time doubles with each further retry
+	 * @param listener
+	 * 			listener to be notified of delivery outcome
+	 */
+	public WebHookDeliverer(int timeout, int maxConcurrencyPerEndpoint, int maxAttempts,
+			long initialBackoff, DeliveryListener listener) {
+		this.maxConcurrencyPerEndpoint = maxConcurrencyPerEndpoint;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.listener = listener;
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_THREADS);
+		connectionManager.setDefaultMaxPerRoute(maxConcurrencyPerEndpoint);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(timeout)
+				.setConnectionRequestTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.build();
+		client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+
+		executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private String getEndpointKey(String postUrl) {
+		try {
+			URI uri = URI.create(postUrl);
+			return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+		} catch (Exception e) {
+			return postUrl;
+		}
+	}
+
+	public synchronized void deliver(Request request) {
+		if (closed) {
+			logger.warn("Web hook deliverer is closed, discarding request to '{}'", request.getPostUrl());
+			return;
+		}
+		String endpointKey = getEndpointKey(request.getPostUrl());
+		Endpoint endpoint = endpoints.get(endpointKey);
+		if (endpoint == null) {
+			endpoint = new Endpoint(endpointKey);
+			endpoints.put(endpointKey, endpoint);
+		}
+		endpoint.queue.add(request);
+		dispatch(endpoint);
+	}
+
+	private void dispatch(Endpoint endpoint) {
+		while (!closed && endpoint.active < maxConcurrencyPerEndpoint && !endpoint.queue.isEmpty()) {
+			Request request = endpoint.queue.poll();
+			endpoint.active++;
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					attempt(endpoint, request);
+				}
+
+			});
+		}
+	}
+
+	private synchronized void release(Endpoint endpoint) {
+		endpoint.active--;
+		if (endpoint.active == 0 && endpoint.queue.isEmpty())
+			endpoints.remove(endpoint.key);
+		else
+			dispatch(endpoint);
+	}
+
+	private void attempt(Endpoint endpoint, Request request) {
+		request.attempts++;
+		int statusCode = 0;
+		String error;
+		boolean retryable;
+		try {
+			HttpPost httpPost = new HttpPost(request.getPostUrl());
+			httpPost.setEntity(new StringEntity(request.getPayload(), ContentType.APPLICATION_JSON));
+			httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+			httpPost.setHeader(SIGNATURE_HEAD, request.getSecret());
+
+			try (CloseableHttpResponse response = client.execute(httpPost)) {
+				statusCode = response.getStatusLine().getStatusCode();
+				String responseText;
+				if (response.getEntity() != null)
+					responseText = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+				else
+					responseText = null;
+				if (statusCode >= 200 && statusCode < 300) {
+					error = null;
+					retryable = false;
+				} else {
+					error = "Http status " + statusCode;
+					if (StringUtils.isNotBlank(responseText))
+						error += ": " + StringUtils.abbreviate(responseText, MAX_ERROR_LENGTH);
+					retryable = statusCode >= 500 || statusCode == 429;
+				}
+			}
+		} catch (IOException e) {
+			error = e.getClass().getName() + ": " + e.getMessage();
+			retryable = true;
+		} catch (Exception e) {
+			error = e.getClass().getName() + ": " + e.getMessage();
+			retryable = false;
+		}
+
+		if (error != null && retryable && request.attempts < maxAttempts && !isClosed()) {
+			retriedCount.incrementAndGet();
+			long backoff = initialBackoff * (1L << (request.attempts-1));
+			logger.debug("Error delivering web hook request to '{}' (attempt {}), retrying in {} ms: {}",
+					request.getPostUrl(), request.attempts, backoff, error);
+			release(endpoint);
+			try {
+				retryScheduler.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						redeliver(request);
+					}
+
+				}, backoff, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				complete(request, statusCode, error);
+			}
+		} else {
+			// Release first so that pending count is accurate when listener is notified 
+			release(endpoint);
+			complete(request, statusCode, error);
+		}
+	}
+
+	private synchronized void redeliver(Request request) {
+		if (closed) {
+			complete(request, 0, "Web hook deliverer is closed");
+		} else {
+			String endpointKey = getEndpointKey(request.getPostUrl());
+			Endpoint endpoint = endpoints.get(endpointKey);
+			if (endpoint == null) {
+				endpoint = new Endpoint(endpointKey);
+				endpoints.put(endpointKey, endpoint);
+			}
+			endpoint.queue.add(request);
+			dispatch(endpoint);
+		}
+	}
+
+	private void complete(Request request, int statusCode, @Nullable String error) {
+		long latency = System.currentTimeMillis() - request.getDate().getTime();
+		totalLatency.addAndGet(latency);
+		maxLatency.accumulateAndGet(latency, Math::max);
+		if (error == null) {
+			succeededCount.incrementAndGet();
+		} else {
+			failedCount.incrementAndGet();
+			logger.error("Error delivering web hook request to '{}': {}", request.getPostUrl(), error);
+		}
+		WebHookDelivery delivery = new WebHookDelivery(request.getPostUrl(), request.getEventType(),
+				request.getDate(), request.attempts, statusCode, error, latency);
+		try {
+			listener.delivered(request, delivery);
+		} catch (Exception e) {
+			logger.error("Error notifying web hook delivery", e);
+		}
+	}
+
+	private synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public synchronized int getPendingCount() {
+		int count = 0;
+		for (Endpoint endpoint: endpoints.values())
+			count += endpoint.queue.size() + endpoint.active;
+		return count;
+	}
+
+	public Map<String, String> getMetrics() {
+		Map<String, String> metrics = new LinkedHashMap<>();
+		long succeeded = succeededCount.get();
+		long failed = failedCount.get();
+		metrics.put("Pending Deliveries", String.valueOf(getPendingCount()));
+		metrics.put("Succeeded Deliveries", String.valueOf(succeeded));
+		metrics.put("Failed Deliveries", String.valueOf(failed));
+		metrics.put("Retried Attempts", String.valueOf(retriedCount.get()));
+		if (succeeded + failed != 0) {
+			metrics.put("Success Ratio", MetricUtils.formatRatio(succeeded*1.0/(succeeded+failed)));
+			metrics.put("Average Latency", totalLatency.get()/(succeeded+failed) + " ms");
+		}
+		metrics.put("Max Latency", maxLatency.get() + " ms");
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		retryScheduler.shutdownNow();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+		}
+		try {
+			client.close();
+		} catch (IOException e) {
+		}
+	}
+
+	public static class Request {
+
+		private final String postUrl;
+
+		private final String secret;
+
+		private final String eventType;
+
+		private final String payload;
+
+		private final Object context;
+
+		private final Date date = new Date();
+
+		private int attempts;
+
+		/**
+		 * @param context
+		 * 			context of the request, for instance project the event happens in. This will be
+		 * 			passed back via {@link DeliveryListener}
+		 */
+		public Request(String postUrl, String secret, String eventType, String payload,
+				@Nullable Object context) {
+			this.postUrl = postUrl;
+			this.secret = secret;
+			this.eventType = eventType;
+			this.payload = payload;
+			this.context = context;
+		}
+
+		public String getPostUrl() {
+			return postUrl;
+		}
+
+		public String getSecret() {
+			return secret;
+		}
+
+		public String getEventType() {
+			return eventType;
+		}
+
+		public String getPayload() {
+			return payload;
+		}
+
+		@Nullable
+		public Object getContext() {
+			return context;
+		}
+
+		public Date getDate() {
+			return date;
+		}
+
+	}
+
+	public static interface DeliveryListener {
+
+		void delivered(Request request, WebHookDelivery delivery);
+
+	}
+
+	private static class Endpoint {
+
+		private final String key;
+
+		private final Queue<Request> queue = new LinkedList<>();
+
+		private int active;
+
+		Endpoint(String key) {
+			this.key = key;
+		}
+
+	}
+
+}
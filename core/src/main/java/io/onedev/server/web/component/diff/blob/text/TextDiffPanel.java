@@ -47,7 +47,7 @@ import io.onedev.server.git.BlameCommit;
 import io.onedev.server.git.BlobChange;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.GitUtils;
-import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.manager.BlameManager;
 import io.onedev.server.manager.CodeCommentManager;
 import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.Project;
@@ -152,11 +152,10 @@ public class TextDiffPanel extends Panel implements SourceAware {
 	
 	private BlameInfo getBlameInfo() {
 		blameInfo = new BlameInfo();
-		BlameCommand cmd = new BlameCommand(projectModel.getObject().getGitDir());
+		BlameManager blameManager = OneDev.getInstance(BlameManager.class);
 		String oldPath = change.getOldBlobIdent().path;
 		if (oldPath != null) {
-			cmd.commitHash(getOldCommit().name()).file(oldPath);
-			for (BlameBlock blame: cmd.call()) {
+			for (BlameBlock blame: blameManager.getBlame(projectModel.getObject(), getOldCommit(), oldPath, null)) {
 				for (Range range: blame.getRanges()) {
 					for (int i=range.getFrom(); i<=range.getTo(); i++) 
 						blameInfo.oldBlame.put(i, blame.getCommit());
@@ -165,8 +164,7 @@ public class TextDiffPanel extends Panel implements SourceAware {
 		}
 		String newPath = change.getNewBlobIdent().path;
 		if (newPath != null) {
-			cmd.commitHash(getNewCommit().name()).file(newPath);
-			for (BlameBlock blame: cmd.call()) {
+			for (BlameBlock blame: blameManager.getBlame(projectModel.getObject(), getNewCommit(), newPath, null)) {
 				for (Range range: blame.getRanges()) {
 					for (int i=range.getFrom(); i<=range.getTo(); i++) 
 						blameInfo.newBlame.put(i, blame.getCommit());
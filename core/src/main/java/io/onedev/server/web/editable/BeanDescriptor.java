@@ -1,7 +1,6 @@
 package io.onedev.server.web.editable;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -13,8 +12,6 @@ import javax.annotation.Nullable;
 import com.google.common.collect.Sets;
 
 import io.onedev.server.exception.OneException;
-import io.onedev.server.web.editable.annotation.Editable;
-import io.onedev.utils.BeanUtils;
 
 @SuppressWarnings("serial")
 public class BeanDescriptor implements Serializable {
@@ -32,18 +29,12 @@ public class BeanDescriptor implements Serializable {
 		
 		propertyDescriptors = new ArrayList<>();
 
-		List<Method> propertyGetters = BeanUtils.findGetters(getBeanClass());
-		EditableUtils.sortAnnotatedElements(propertyGetters);
-		
-		for (Method propertyGetter: propertyGetters) {
-			if (propertyGetter.getAnnotation(Editable.class) != null) {
-				PropertyDescriptor propertyDescriptor = new PropertyDescriptor(propertyGetter); 
-				propertyDescriptors.add(propertyDescriptor);
-				String propertyName = BeanUtils.getPropertyName(propertyGetter);
-				propertyDescriptor.setPropertyExcluded(BeanUtils.findSetter(propertyGetter) == null 
-						|| properties.contains(propertyName) && excluded 
-						|| !properties.contains(propertyName) && !excluded);
-			}
+		for (BeanIntrospector.Property property: BeanIntrospector.of(beanClass).getEditableProperties()) {
+			PropertyDescriptor propertyDescriptor = new PropertyDescriptor(property); 
+			propertyDescriptors.add(propertyDescriptor);
+			propertyDescriptor.setPropertyExcluded(property.getSetter() == null 
+					|| properties.contains(property.getName()) && excluded 
+					|| !properties.contains(property.getName()) && !excluded);
 		}
 	}
 	
@@ -63,7 +54,7 @@ public class BeanDescriptor implements Serializable {
 	public Map<String, PropertyDescriptor> getMapOfDisplayNameToPropertyDescriptor() {
 		Map<String, PropertyDescriptor> propertyDescriptors = new HashMap<>();
 		for (PropertyDescriptor propertyDescriptor: getPropertyDescriptors())
-			propertyDescriptors.put(EditableUtils.getDisplayName(propertyDescriptor.getPropertyGetter()), propertyDescriptor);
+			propertyDescriptors.put(propertyDescriptor.getDisplayName(), propertyDescriptor);
 		return propertyDescriptors;
 	}
 
@@ -0,0 +1,156 @@
+package io.onedev.server.web.editable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.web.editable.annotation.Editable;
+import io.onedev.utils.BeanUtils;
+import io.onedev.utils.ExceptionUtils;
+
+/**
+ * Introspects bean classes once and caches the result per class. Reflection and annotation lookups
+ * are expensive, and bean descriptors are constructed many times when rendering bean editors and
+ * viewers.
+ * <p>
+ * Cached information is attached to the bean class itself, so it does not prevent classes from
+ * being unloaded. However bean classes generated dynamically should be invalidated via
+ * {@link #invalidate(Class)} when they are redefined.
+ *
+ */
+public class BeanIntrospector {
+
+	private static final ClassValue<BeanIntrospector> introspectors = new ClassValue<BeanIntrospector>() {
+
+		@Override
+		protected BeanIntrospector computeValue(Class<?> type) {
+			return new BeanIntrospector(type);
+		}
+
+	};
+
+	private final Map<String, Property> properties = new HashMap<>();
+
+	private final List<Property> editableProperties = new ArrayList<>();
+
+	private BeanIntrospector(Class<?> beanClass) {
+		List<Method> getters = BeanUtils.findGetters(beanClass);
+		EditableUtils.sortAnnotatedElements(getters);
+		for (Method getter: getters) {
+			Property property = new Property(getter);
+			properties.put(property.getName(), property);
+			if (property.isEditable())
+				editableProperties.add(property);
+		}
+	}
+
+	public static BeanIntrospector of(Class<?> beanClass) {
+		return introspectors.get(beanClass);
+	}
+
+	public static void invalidate(Class<?> beanClass) {
+		introspectors.remove(beanClass);
+	}
+
+	/**
+	 * @return
+	 * 			properties annotated with {@link Editable}, sorted by their display order
+	 */
+	public List<Property> getEditableProperties() {
+		return Collections.unmodifiableList(editableProperties);
+	}
+
+	@Nullable
+	public Property getProperty(String propertyName) {
+		return properties.get(propertyName);
+	}
+
+	public static class Property {
+
+		private final String name;
+
+		private final Method getter;
+
+		private final Method setter;
+
+		private final MethodHandle getterHandle;
+
+		private final MethodHandle setterHandle;
+
+		private final boolean editable;
+
+		private final String displayName;
+
+		private Property(Method getter) {
+			this.getter = getter;
+			name = BeanUtils.getPropertyName(getter);
+			setter = BeanUtils.findSetter(getter);
+			editable = getter.getAnnotation(Editable.class) != null;
+			displayName = EditableUtils.getDisplayName(getter);
+
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			try {
+				getter.setAccessible(true);
+				getterHandle = lookup.unreflect(getter).asType(MethodType.methodType(Object.class, Object.class));
+				if (setter != null) {
+					setter.setAccessible(true);
+					setterHandle = lookup.unreflect(setter).asType(
+							MethodType.methodType(void.class, Object.class, Object.class));
+				} else {
+					setterHandle = null;
+				}
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Method getGetter() {
+			return getter;
+		}
+
+		@Nullable
+		public Method getSetter() {
+			return setter;
+		}
+
+		public boolean isEditable() {
+			return editable;
+		}
+
+		public String getDisplayName() {
+			return displayName;
+		}
+
+		public Object getValue(Object bean) {
+			try {
+				return getterHandle.invokeExact(bean);
+			} catch (Throwable e) {
+				throw ExceptionUtils.unchecked(e);
+			}
+		}
+
+		public void setValue(Object bean, Object value) {
+			if (setterHandle == null)
+				throw new RuntimeException("Setter not found for property: " + name);
+			try {
+				setterHandle.invokeExact(bean, value);
+			} catch (Throwable e) {
+				throw ExceptionUtils.unchecked(e);
+			}
+		}
+
+	}
+
+}
@@ -1,7 +1,6 @@
 package io.onedev.server.web.editable;
 
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashSet;
 import java.util.Set;
@@ -36,9 +35,7 @@ public class PropertyDescriptor implements Serializable {
 	
 	private final Set<String> dependencyPropertyNames = new HashSet<>();
 	
-	private transient Method propertyGetter;
-	
-	private transient Method propertySetter;
+	private transient BeanIntrospector.Property property;
 	
 	public PropertyDescriptor(Class<?> beanClass, String propertyName) {
 		this.beanClass = beanClass;
@@ -50,10 +47,17 @@ public class PropertyDescriptor implements Serializable {
 		this.propertyName = BeanUtils.getPropertyName(propertyGetter);
 	}
 	
+	PropertyDescriptor(BeanIntrospector.Property property) {
+		this.beanClass = property.getGetter().getDeclaringClass();
+		this.propertyName = property.getName();
+		this.property = property;
+	}
+	
 	public PropertyDescriptor(PropertyDescriptor propertyDescriptor) {
 		this.beanClass = propertyDescriptor.getBeanClass();
 		this.propertyName = propertyDescriptor.getPropertyName();
 		this.propertyExcluded = propertyDescriptor.isPropertyExcluded();
+		this.property = propertyDescriptor.property;
 	}
 	
 	public Class<?> getBeanClass() {
@@ -64,15 +68,23 @@ public class PropertyDescriptor implements Serializable {
 		return propertyName;
 	}
 
+	private BeanIntrospector.Property getProperty() {
+		if (property == null) {
+			property = BeanIntrospector.of(beanClass).getProperty(propertyName);
+			if (property == null)
+				throw new RuntimeException("Getter not found for property: " + propertyName);
+		}
+		return property;
+	}
+	
 	public Method getPropertyGetter() {
-		if (propertyGetter == null)
-			propertyGetter = BeanUtils.getGetter(beanClass, propertyName);
-		return propertyGetter;
+		return getProperty().getGetter();
 	}
 	
 	public Method getPropertySetter() {
-		if (propertySetter == null) 
-			propertySetter = BeanUtils.getSetter(getPropertyGetter());
+		Method propertySetter = getProperty().getSetter();
+		if (propertySetter == null)
+			throw new RuntimeException("Setter not found for property: " + propertyName);
 		return propertySetter;
 	}
 
@@ -89,19 +101,11 @@ public class PropertyDescriptor implements Serializable {
 	}
 
 	public Object getPropertyValue(Object bean) {
-		try {
-			return getPropertyGetter().invoke(bean);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-			throw new RuntimeException(e);
-		}
+		return getProperty().getValue(bean);
 	}
 
 	public void setPropertyValue(Object bean, Object propertyValue) {
-		try {
-			getPropertySetter().invoke(bean, propertyValue);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-			throw new RuntimeException(e);
-		}
+		getProperty().setValue(bean, propertyValue);
 	}
 
 	public Class<?> getPropertyClass() {
@@ -139,7 +143,7 @@ public class PropertyDescriptor implements Serializable {
 	}
 	
 	public String getDisplayName() {
-		return EditableUtils.getDisplayName(getPropertyGetter());
+		return getProperty().getDisplayName();
 	}
 	
 	public String getDisplayName(Component component) {
@@ -1,15 +1,26 @@
 package io.onedev.server.web.page.admin.serverinformation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import de.agilecoders.wicket.core.markup.html.bootstrap.components.progress.ProgressBar;
 import de.agilecoders.wicket.core.markup.html.bootstrap.components.progress.ProgressBar.Type;
+import io.onedev.server.OneDev;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.util.metric.MetricContribution;
 import io.onedev.server.web.page.admin.AdministrationPage;
 import io.onedev.utils.FileUtils;
 
@@ -68,5 +79,50 @@ public class ServerInformationPage extends AdministrationPage {
 			}
 			
 		});
+		
+		add(new ListView<MetricContribution>("metricGroups", new LoadableDetachableModel<List<MetricContribution>>() {
+
+			@Override
+			protected List<MetricContribution> load() {
+				List<MetricContribution> contributions = new ArrayList<>(OneDev.getExtensions(MetricContribution.class));
+				Collections.sort(contributions, new Comparator<MetricContribution>() {
+
+					@Override
+					public int compare(MetricContribution o1, MetricContribution o2) {
+						return o1.getMetricGroup().compareTo(o2.getMetricGroup());
+					}
+					
+				});
+				return contributions;
+			}
+			
+		}) {
+
+			@Override
+			protected void populateItem(ListItem<MetricContribution> item) {
+				item.add(new Label("group", item.getModelObject().getMetricGroup()));
+				item.add(new ListView<Pair<String, String>>("metrics", 
+						new LoadableDetachableModel<List<Pair<String, String>>>() {
+
+					@Override
+					protected List<Pair<String, String>> load() {
+						List<Pair<String, String>> metrics = new ArrayList<>();
+						for (Map.Entry<String, String> entry: item.getModelObject().getMetrics().entrySet())
+							metrics.add(new ImmutablePair<>(entry.getKey(), entry.getValue()));
+						return metrics;
+					}
+					
+				}) {
+
+					@Override
+					protected void populateItem(ListItem<Pair<String, String>> item) {
+						item.add(new Label("name", item.getModelObject().getLeft()));
+						item.add(new Label("value", item.getModelObject().getRight()));
+					}
+					
+				});
+			}
+			
+		});
 	}
 }
@@ -97,7 +97,7 @@ public class ProjectListPage extends LayoutPage {
 		protected List<ProjectFacade> load() {
 			List<ProjectFacade> projects = new ArrayList<>(OneDev.getInstance(ProjectManager.class)
 					.getAccessibleProjects(getLoginUser()));
-			projects.sort(ProjectFacade::compareLastVisit);
+			ProjectFacade.sortByLastVisit(projects);
 			return MatchScoreUtils.filterAndSort(projects, new MatchScoreProvider<ProjectFacade>() {
 
 				@Override
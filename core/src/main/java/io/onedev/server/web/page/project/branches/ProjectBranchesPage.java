@@ -1,16 +1,13 @@
 package io.onedev.server.web.page.project.branches;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -47,13 +44,13 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.filter.RevFilter;
 
 import com.google.common.base.Preconditions;
 
 import de.agilecoders.wicket.core.markup.html.bootstrap.common.NotificationPanel;
 import io.onedev.server.OneDev;
+import io.onedev.server.git.AheadBehind;
+import io.onedev.server.git.AheadBehindCache;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.RefInfo;
@@ -129,7 +126,6 @@ public class ProjectBranchesPage extends ProjectPage {
 	private final IModel<Map<ObjectId, AheadBehind>> aheadBehindsModel = 
 			new LoadableDetachableModel<Map<ObjectId, AheadBehind>>() {
 
-		@SuppressWarnings("unused")
 		@Override
 		protected Map<ObjectId, AheadBehind> load() {
 			List<ObjectId> compareIds = new ArrayList<>(); 
@@ -142,77 +138,8 @@ public class ProjectBranchesPage extends ProjectPage {
 			}
 
 			Ref baseRef = Preconditions.checkNotNull(getProject().getBranchRef(baseBranch));
-			Map<ObjectId, AheadBehind> aheadBehinds = new HashMap<>();
-			
-			try (RevWalk revWalk = new RevWalk(getProject().getRepository())) {
-				RevCommit baseCommit = revWalk.lookupCommit(baseRef.getObjectId());
-				revWalk.markStart(baseCommit);
-				Map<ObjectId, RevCommit> compareCommits = new HashMap<>();
-				for (ObjectId compareId: compareIds) {
-					RevCommit compareCommit = revWalk.lookupCommit(compareId);
-					compareCommits.put(compareId, compareCommit);
-					revWalk.markStart(compareCommit);
-				}
-				revWalk.setRevFilter(RevFilter.MERGE_BASE);
-				RevCommit mergeBase = revWalk.next();
-				
-				revWalk.reset();
-				revWalk.setRevFilter(RevFilter.ALL);
-
-				if (mergeBase != null) {
-					revWalk.markStart(baseCommit);
-					revWalk.markUninteresting(mergeBase);
-					Set<ObjectId> baseSet = new HashSet<>();
-					for (RevCommit commit: revWalk) 
-						baseSet.add(commit.copy());
-					revWalk.reset();
-					
-					for (ObjectId compareId: compareIds) {
-						RevCommit compareCommit = Preconditions.checkNotNull(compareCommits.get(compareId));
-						revWalk.markStart(compareCommit);
-						revWalk.markUninteresting(mergeBase);
-						Set<ObjectId> compareSet = new HashSet<>();
-						for (RevCommit commit: revWalk) 
-							compareSet.add(commit.copy());
-						revWalk.reset();
-						
-						int ahead = 0;
-						for (ObjectId each: compareSet) {
-							if (!baseSet.contains(each))
-								ahead++;
-						}
-						int behind = 0;
-						for (ObjectId each: baseSet) {
-							if (!compareSet.contains(each))
-								behind++;
-						}
-						aheadBehinds.put(compareId, new AheadBehind(ahead, behind));
-					}					
-				} else {
-					for (ObjectId compareId: compareIds) {
-						RevCommit compareCommit = Preconditions.checkNotNull(compareCommits.get(compareId));
-						revWalk.markUninteresting(baseCommit);
-						revWalk.markStart(compareCommit);
-						int ahead = 0;
-						for (RevCommit commit: revWalk)
-							ahead++;
-						revWalk.reset();
-						
-						revWalk.markUninteresting(compareCommit);
-						revWalk.markStart(baseCommit);
-						int behind = 0;
-						for (RevCommit commit: revWalk)
-							behind++;
-						revWalk.reset();
-						
-						aheadBehinds.put(compareId, new AheadBehind(ahead, behind));
-					}					
-				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-			
-			return aheadBehinds;
+			return OneDev.getInstance(AheadBehindCache.class).getAheadBehinds(getProject(), 
+					baseRef.getObjectId(), compareIds);
 		}
 	};
 	
@@ -39,6 +39,7 @@ import org.eclipse.jgit.revwalk.RevWalk;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.MergeResultCache;
 import io.onedev.server.manager.CodeCommentManager;
 import io.onedev.server.manager.PullRequestManager;
 import io.onedev.server.model.CodeComment;
@@ -690,7 +691,7 @@ public class NewPullRequestPage extends ProjectPage implements CommentSupport {
 				PullRequest request = getPullRequest();
 				MergePreview mergePreview = new MergePreview(request.getTarget().getObjectName(), 
 						request.getHeadCommitHash(), request.getMergeStrategy(), null);
-				ObjectId merged = mergePreview.getMergeStrategy().merge(request);
+				ObjectId merged = OneDev.getInstance(MergeResultCache.class).merge(request, mergePreview.getMergeStrategy());
 				if (merged != null)
 					mergePreview.setMerged(merged.name());
 				request.setLastMergePreview(mergePreview);
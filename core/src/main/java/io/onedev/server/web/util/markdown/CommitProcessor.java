@@ -1,11 +1,14 @@
 package io.onedev.server.web.util.markdown;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.NodeTraversor;
@@ -46,13 +49,31 @@ public class CommitProcessor implements MarkdownProcessor {
 			NodeTraversor tranversor = new NodeTraversor(visitor);
 			tranversor.traverse(rendered);
 			
+			Set<ObjectId> commitIds = new HashSet<>();
+			for (TextNode node : visitor.getMatchedNodes()) {
+				Matcher matcher = PATTERN_COMMIT.matcher(node.getWholeText());
+				while (matcher.find()) 
+					commitIds.add(ObjectId.fromString(matcher.group(2)));
+			}
+			
+			// Check existence of all referenced commits with a single rev walk
+			Set<ObjectId> existingCommitIds = new HashSet<>();
+			if (!commitIds.isEmpty()) {
+				try (RevWalk revWalk = new RevWalk(project.getRepository())) {
+					for (ObjectId commitId: commitIds) {
+						if (GitUtils.parseCommit(revWalk, commitId) != null)
+							existingCommitIds.add(commitId);
+					}
+				}
+			}
+			
 			for (TextNode node : visitor.getMatchedNodes()) {
 				Matcher matcher = PATTERN_COMMIT.matcher(node.getWholeText());
 				while (matcher.find()) {
 					String commitHash = matcher.group(2);
 					String commitTag;
 					ObjectId commitId = ObjectId.fromString(commitHash);
-					if (project.getRevCommit(commitId, false) != null) {
+					if (existingCommitIds.contains(commitId)) {
 						commitTag = toHtml(project, commitId);
 					} else {
 						commitTag = commitId.name();
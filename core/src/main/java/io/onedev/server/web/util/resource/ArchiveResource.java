@@ -1,26 +1,28 @@
 package io.onedev.server.web.util.resource;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.tika.mime.MimeTypes;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.AbstractResource;
-import org.eclipse.jgit.api.ArchiveCommand;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.archive.TgzFormat;
-import org.eclipse.jgit.archive.ZipFormat;
+import org.eclipse.jgit.revwalk.RevCommit;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 
 import io.onedev.server.OneDev;
+import io.onedev.server.git.ArchiveCache;
 import io.onedev.server.manager.ProjectManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.security.SecurityUtils;
@@ -35,9 +37,15 @@ public class ArchiveResource extends AbstractResource {
 	
 	private static final String PARAM_FORMAT = "format";
 	
-	public static final String FORMAT_ZIP = "zip";
+	public static final String FORMAT_ZIP = ArchiveCache.FORMAT_ZIP;
 	
-	public static final String FORMAT_TGZ = "tgz";
+	public static final String FORMAT_TGZ = ArchiveCache.FORMAT_TGZ;
+	
+	private static final String HEADER_ETAG = "ETag";
+	
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	
+	private static final int BUFFER_SIZE = 64*1024;
 	
 	@Override
 	protected ResourceResponse newResourceResponse(Attributes attributes) {
@@ -64,11 +72,32 @@ public class ArchiveResource extends AbstractResource {
 		if (!SecurityUtils.canReadCode(project.getFacade())) 
 			throw new UnauthorizedException();
 
+		RevCommit commit = project.getRevCommit(revision);
+		
 		ResourceResponse response = new ResourceResponse();
 		response.setContentType(MimeTypes.OCTET_STREAM);
 		
 		response.disableCaching();
 		
+		/*
+		 * Archive content only depends on commit and format. Caching is still disabled above as 
+		 * revision may be a branch, but clients can revalidate with the etag 
+		 */
+		String etag = "\"" + commit.name() + "-" + format + "\"";
+		response.getHeaders().addHeader(HEADER_ETAG, etag);
+		HttpServletRequest request = (HttpServletRequest) attributes.getRequest().getContainerRequest();
+		if (etag.equals(request.getHeader(HEADER_IF_NONE_MATCH))) {
+			response.setStatusCode(HttpServletResponse.SC_NOT_MODIFIED);
+			response.setWriteCallback(new WriteCallback() {
+
+				@Override
+				public void writeData(Attributes attributes) throws IOException {
+				}
+				
+			});
+			return response;
+		}
+		
 		try {
 			String fileName;
 			if (FORMAT_ZIP.equals(format))
@@ -79,24 +108,49 @@ public class ArchiveResource extends AbstractResource {
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
+		
+		/*
+		 * Archive is opened again when data is written, and it is built again with the same 
+		 * content if evicted in between, as archive content only depends on commit and format 
+		 */
+		ArchiveCache archiveCache = OneDev.getInstance(ArchiveCache.class);
+		long length;
+		try (RandomAccessFile archive = archiveCache.openArchive(project, commit, format)) {
+			length = archive.length();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		response.setAcceptRange(ContentRangeType.BYTES);
+		response.setContentLength(length);
+		
 		response.setWriteCallback(new WriteCallback() {
 
 			@Override
 			public void writeData(Attributes attributes) throws IOException {
-				if (format.equals("zip"))
-					ArchiveCommand.registerFormat(format, new ZipFormat());
-				else
-					ArchiveCommand.registerFormat(format, new TgzFormat());
-				try {
-					ArchiveCommand archive = Git.wrap(project.getRepository()).archive();
-					archive.setFormat(format);
-					archive.setTree(project.getRevCommit(revision).getId());
-					archive.setOutputStream(attributes.getResponse().getOutputStream());
-					archive.call();
-				} catch (GitAPIException e) {
-					throw new RuntimeException(e);
-				} finally {
-					ArchiveCommand.unregisterFormat(format);
+				try (RandomAccessFile archive = archiveCache.openArchive(project, commit, format)) {
+					// Never send bytes of a different archive than the one content length is reported for
+					if (archive.length() != length) {
+						throw new IOException("Length of archive changed from " + length + " to " 
+								+ archive.length() + " after being rebuilt");
+					}
+					Long startByte = RequestCycle.get().getMetaData(CONTENT_RANGE_STARTBYTE);
+					Long endByte = RequestCycle.get().getMetaData(CONTENT_RANGE_ENDBYTE);
+					if (startByte == null)
+						startByte = 0L;
+					if (endByte == null || endByte == -1)
+						endByte = length - 1;
+					
+					archive.seek(startByte);
+					OutputStream os = attributes.getResponse().getOutputStream();
+					byte[] buffer = new byte[BUFFER_SIZE];
+					long bytesToCopy = endByte - startByte + 1;
+					while (bytesToCopy > 0) {
+						int bytesRead = archive.read(buffer, 0, (int) Math.min(buffer.length, bytesToCopy));
+						if (bytesRead == -1)
+							break;
+						os.write(buffer, 0, bytesRead);
+						bytesToCopy -= bytesRead;
+					}
 				}
 			}				
 		});
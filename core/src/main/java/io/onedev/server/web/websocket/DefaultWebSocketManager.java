@@ -1,12 +1,17 @@
 package io.onedev.server.web.websocket;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -19,24 +24,58 @@ import org.apache.wicket.protocol.ws.api.registry.IWebSocketConnectionRegistry;
 import org.apache.wicket.protocol.ws.api.registry.PageIdKey;
 import org.apache.wicket.protocol.ws.api.registry.SimpleWebSocketConnectionRegistry;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
 
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.metric.MetricContribution;
 import io.onedev.server.web.page.base.BasePage;
 
 @Singleton
-public class DefaultWebSocketManager implements WebSocketManager {
+public class DefaultWebSocketManager implements WebSocketManager, MetricContribution {
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultWebSocketManager.class);
+	
+	private static final int NOTIFY_THREADS = 4;
+	
+	/*
+	 * Connections are split into shards with keep alive of each shard scheduled at different 
+	 * time, so that keep alive messages are not sent to all connections at once  
+	 */
+	private static final int KEEP_ALIVE_SHARDS = 8;
+	
+	/*
+	 * Changes of same observable happened within this period (in milliseconds) will be 
+	 * notified only once 
+	 */
+	private static final int COALESCE_WINDOW = 200;
+	
 	private final Application application;
 	
 	private final Dao dao;
 	
 	private final ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
 	
+	private final ScheduledExecutorService notifyExecutorService = Executors.newScheduledThreadPool(NOTIFY_THREADS);
+	
 	private final WebSocketPolicy webSocketPolicy;
 	
 	private final Map<String, Map<IKey, Collection<String>>> observables = new ConcurrentHashMap<>();
 	
+	/*
+	 * Inverted index of observables, used to find pages to notify without iterating all connections
+	 */
+	private final Map<String, Set<PageKey>> observers = new ConcurrentHashMap<>();
+	
+	/*
+	 * Observables changed but not notified yet, mapped to the page originating the change. Absent 
+	 * page means that all observers should be notified 
+	 */
+	private final Map<String, Optional<PageKey>> pendingObservables = new ConcurrentHashMap<>();
+	
 	private final IWebSocketConnectionRegistry connectionRegistry = new SimpleWebSocketConnectionRegistry();
 
 	@Inject
@@ -55,13 +94,57 @@ public class DefaultWebSocketManager implements WebSocketManager {
 				sessionPages = new ConcurrentHashMap<>();
 				observables.put(sessionId, sessionPages);
 			}
-			sessionPages.put(new PageIdKey(page.getPageId()), page.findWebSocketObservables());
+			IKey pageId = new PageIdKey(page.getPageId());
+			PageKey pageKey = new PageKey(sessionId, pageId);
+			Collection<String> pageObservables = page.findWebSocketObservables();
+			Collection<String> prevPageObservables = sessionPages.put(pageId, pageObservables);
+			if (prevPageObservables != null) {
+				for (String observable: prevPageObservables) {
+					if (!pageObservables.contains(observable))
+						removeObserver(observable, pageKey);
+				}
+			}
+			for (String observable: pageObservables) 
+				addObserver(observable, pageKey);
 		}
 	}
 	
+	private void addObserver(String observable, PageKey pageKey) {
+		observers.compute(observable, new BiFunction<String, Set<PageKey>, Set<PageKey>>() {
+
+			@Override
+			public Set<PageKey> apply(String observable, Set<PageKey> pageKeys) {
+				if (pageKeys == null)
+					pageKeys = ConcurrentHashMap.newKeySet();
+				pageKeys.add(pageKey);
+				return pageKeys;
+			}
+			
+		});
+	}
+	
+	private void removeObserver(String observable, PageKey pageKey) {
+		observers.computeIfPresent(observable, new BiFunction<String, Set<PageKey>, Set<PageKey>>() {
+
+			@Override
+			public Set<PageKey> apply(String observable, Set<PageKey> pageKeys) {
+				pageKeys.remove(pageKey);
+				return pageKeys.isEmpty()? null: pageKeys;
+			}
+			
+		});
+	}
+	
 	@Override
 	public void onDestroySession(String sessionId) {
-		observables.remove(sessionId);
+		Map<IKey, Collection<String>> sessionPages = observables.remove(sessionId);
+		if (sessionPages != null) {
+			for (Map.Entry<IKey, Collection<String>> entry: sessionPages.entrySet()) {
+				PageKey pageKey = new PageKey(sessionId, entry.getKey());
+				for (String observable: entry.getValue())
+					removeObserver(observable, pageKey);
+			}
+		}
 	}
 
 	@Sessional
@@ -71,50 +154,151 @@ public class DefaultWebSocketManager implements WebSocketManager {
 
 			@Override
 			public void run() {
-				for (IWebSocketConnection connection: connectionRegistry.getConnections(application)) {
-					PageKey pageKey = ((WebSocketConnection) connection).getPageKey();
-					if (connection.isOpen() && (sourcePageKey == null || !sourcePageKey.equals(pageKey))) {
-						Map<IKey, Collection<String>> sessionPages = observables.get(pageKey.getSessionId());
-						if (sessionPages != null) {
-							Collection<String> pageObservables = sessionPages.get(pageKey.getPageId());
-							if (pageObservables != null && pageObservables.contains(observable)) {
-								try {
-									connection.sendMessage(OBSERVABLE_CHANGED + ":" + observable);
-								} catch (IOException e) {
-									throw new RuntimeException(e);
-								}
-							}
+				Optional<PageKey> source = Optional.fromNullable(sourcePageKey);
+				AtomicBoolean newlyPending = new AtomicBoolean(false);
+				pendingObservables.compute(observable, new BiFunction<String, Optional<PageKey>, Optional<PageKey>>() {
+
+					@Override
+					public Optional<PageKey> apply(String observable, Optional<PageKey> prevSource) {
+						if (prevSource == null) {
+							newlyPending.set(true);
+							return source;
+						} else if (prevSource.equals(source)) {
+							return prevSource;
+						} else {
+							// changed by different pages within the window, notify all observers then
+							return Optional.absent();
 						}
 					}
+					
+				});
+				if (newlyPending.get()) {
+					notifyExecutorService.schedule(new Runnable() {
+
+						@Override
+						public void run() {
+							Optional<PageKey> source = pendingObservables.remove(observable);
+							if (source != null)
+								notifyObservers(observable, source.orNull());
+						}
+						
+					}, COALESCE_WINDOW, TimeUnit.MILLISECONDS);
 				}
 			}
 			
 		});
 	}
 	
+	private void notifyObservers(String observable, @Nullable PageKey sourcePageKey) {
+		Set<PageKey> pageKeys = observers.get(observable);
+		if (pageKeys != null) {
+			for (PageKey pageKey: new ArrayList<>(pageKeys)) {
+				if (sourcePageKey == null || !sourcePageKey.equals(pageKey)) {
+					IWebSocketConnection connection = connectionRegistry.getConnection(
+							application, pageKey.getSessionId(), pageKey.getPageId());
+					if (connection != null && connection.isOpen()) {
+						try {
+							connection.sendMessage(OBSERVABLE_CHANGED + ":" + observable);
+						} catch (Exception e) {
+							logger.debug("Error notifying observable change", e);
+						}
+					}
+				}
+			}
+		}
+	}
+	
 	@Override
 	public void start() {
+		long keepAliveInterval = webSocketPolicy.getIdleTimeout()/2;
 		scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
 
 			@Override
 			public void run() {
-				for (IWebSocketConnection connection: new SimpleWebSocketConnectionRegistry().getConnections(application)) {
-					if (connection.isOpen()) {
-						try {
-							connection.sendMessage(WebSocketManager.KEEP_ALIVE);
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						}
-					}
+				try {
+					keepAlive(keepAliveInterval);
+				} catch (Exception e) {
+					logger.error("Error sending keep alive messages", e);
 				}
 			}
 			
-		}, 0, webSocketPolicy.getIdleTimeout()/2, TimeUnit.MILLISECONDS);
+		}, 0, keepAliveInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	private void keepAlive(long keepAliveInterval) {
+		List<List<WebSocketConnection>> shards = new ArrayList<>();
+		for (int i=0; i<KEEP_ALIVE_SHARDS; i++)
+			shards.add(new ArrayList<>());
+		for (IWebSocketConnection connection: connectionRegistry.getConnections(application)) {
+			WebSocketConnection webSocketConnection = (WebSocketConnection) connection;
+			shards.get(Math.floorMod(webSocketConnection.getPageKey().hashCode(), KEEP_ALIVE_SHARDS))
+					.add(webSocketConnection);
+		}
+		for (int i=0; i<KEEP_ALIVE_SHARDS; i++) {
+			List<WebSocketConnection> shard = shards.get(i);
+			scheduledExecutorService.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						keepAlive(shard, keepAliveInterval);
+					} catch (Exception e) {
+						logger.error("Error sending keep alive messages", e);
+					}
+				}
+				
+			}, keepAliveInterval*i/KEEP_ALIVE_SHARDS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private void keepAlive(List<WebSocketConnection> connections, long keepAliveInterval) {
+		long now = System.currentTimeMillis();
+		for (WebSocketConnection connection: connections) {
+			/*
+			 * Do not ping connections active recently or still sending data, the latter also 
+			 * prevents messages from being piled up for slow clients. A connection skipped here 
+			 * has been idle for less than half of the interval, so it will be pinged next round 
+			 * before idle timeout 
+			 */
+			if (connection.isOpen()
+					&& now - connection.getLastActiveTime() >= keepAliveInterval/2
+					&& connection.getPendingSends() == 0) {
+				try {
+					connection.sendMessage(WebSocketManager.KEEP_ALIVE);
+				} catch (Exception e) {
+					logger.debug("Error sending keep alive message", e);
+				}
+			}
+		}
 	}
 
 	@Override
 	public void stop() {
 		scheduledExecutorService.shutdown();
+		notifyExecutorService.shutdown();
+	}
+
+	@Override
+	public String getMetricGroup() {
+		return "Web Socket";
+	}
+
+	@Override
+	public Map<String, String> getMetrics() {
+		int connections = 0;
+		int pendingSends = 0;
+		for (IWebSocketConnection connection: connectionRegistry.getConnections(application)) {
+			if (connection.isOpen()) {
+				connections++;
+				pendingSends += ((WebSocketConnection) connection).getPendingSends();
+			}
+		}
+		Map<String, String> metrics = new LinkedHashMap<>();
+		metrics.put("Open Connections", String.valueOf(connections));
+		metrics.put("Pending Sends", String.valueOf(pendingSends));
+		metrics.put("Observed Observables", String.valueOf(observers.size()));
+		metrics.put("Pending Notifications", String.valueOf(pendingObservables.size()));
+		return metrics;
 	}
 
 }
@@ -18,12 +18,14 @@ package io.onedev.server.web.websocket;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.protocol.ws.api.AbstractWebSocketConnection;
 import org.apache.wicket.protocol.ws.api.AbstractWebSocketProcessor;
 import org.apache.wicket.protocol.ws.api.IWebSocketConnection;
 import org.apache.wicket.util.lang.Args;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 
 /**
  * A wrapper around Jetty9's native WebSocketConnection.
@@ -36,6 +38,10 @@ public class WebSocketConnection extends AbstractWebSocketConnection
 
 	private final PageKey pageKey;
 	
+	private final AtomicInteger pendingSends = new AtomicInteger(0);
+	
+	private volatile long lastActiveTime = System.currentTimeMillis();
+	
 	/**
 	 * Constructor.
 	 *
@@ -68,12 +74,49 @@ public class WebSocketConnection extends AbstractWebSocketConnection
 		return pageKey;
 	}
 
+	/**
+	 * Mark this connection as active, called when data is sent to or received from the client
+	 */
+	public void markActive() {
+		lastActiveTime = System.currentTimeMillis();
+	}
+	
+	public long getLastActiveTime() {
+		return lastActiveTime;
+	}
+	
+	/**
+	 * @return
+	 * 			number of messages queued for sending but not yet written to the client
+	 */
+	public int getPendingSends() {
+		return pendingSends.get();
+	}
+	
+	private WriteCallback newWriteCallback() {
+		pendingSends.incrementAndGet();
+		return new WriteCallback() {
+
+			@Override
+			public void writeFailed(Throwable x) {
+				pendingSends.decrementAndGet();
+			}
+
+			@Override
+			public void writeSuccess() {
+				pendingSends.decrementAndGet();
+				markActive();
+			}
+			
+		};
+	}
+
 	@Override
 	public IWebSocketConnection sendMessage(String message) throws IOException
 	{
 		checkClosed();
 
-		session.getRemote().sendStringByFuture(message);
+		session.getRemote().sendString(message, newWriteCallback());
 		return this;
 	}
 
@@ -84,7 +127,7 @@ public class WebSocketConnection extends AbstractWebSocketConnection
 		checkClosed();
 
 		ByteBuffer buf = ByteBuffer.wrap(message, offset, length);
-		session.getRemote().sendBytesByFuture(buf);
+		session.getRemote().sendBytes(buf, newWriteCallback());
 		return this;
 	}
 
@@ -43,6 +43,8 @@ public class WebSocketProcessor extends AbstractWebSocketProcessor implements We
 
 	private final ServletUpgradeRequest request;
 	
+	private volatile WebSocketConnection connection;
+	
 	/**
 	 * Constructor.
 	 *
@@ -67,13 +69,19 @@ public class WebSocketProcessor extends AbstractWebSocketProcessor implements We
 			@Override
 			public void run() {
 				PageKey pageKey = new PageKey(getSessionId(), getRegistryKey());
-				WebSocketConnection connection = new WebSocketConnection(session, WebSocketProcessor.this, pageKey);
+				connection = new WebSocketConnection(session, WebSocketProcessor.this, pageKey);
 				onConnect(connection);
 			}
 			
 		});
 	}
 	
+	private void markActive() {
+		WebSocketConnection connection = this.connection;
+		if (connection != null)
+			connection.markActive();
+	}
+	
 	private void run(Runnable runnable) {
 		if (OneDev.getInstance().isReady()) {
 			UnitOfWork unitOfWork = AppLoader.getInstance(UnitOfWork.class);
@@ -91,6 +99,7 @@ public class WebSocketProcessor extends AbstractWebSocketProcessor implements We
 	
 	@Override
 	public void onWebSocketText(final String message) {
+		markActive();
 		run(new Runnable() {
 
 			@Override
@@ -103,6 +112,7 @@ public class WebSocketProcessor extends AbstractWebSocketProcessor implements We
 
 	@Override
 	public void onWebSocketBinary(final byte[] payload, final int offset, final int len) {
+		markActive();
 		run(new Runnable() {
 
 			@Override
@@ -366,6 +366,13 @@ public final class LastCommitsOfChildren extends HashMap<String, Value> {
 			this.summary = StringUtils.substringBefore(commit.getFullMessage(), "\n").trim();
 		}
 
+		public Value(ObjectId id, PersonIdent author, Date commitDate, String summary) {
+			this.id = id;
+			this.author = author;
+			this.commitDate = commitDate;
+			this.summary = summary;
+		}
+
 		public ObjectId getId() {
 			return id;
 		}
@@ -0,0 +1,185 @@
+package io.onedev.server.manager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Joiner;
+
+import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.BlameBlock;
+import io.onedev.server.git.BlameCommit;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.utils.FileUtils;
+import io.onedev.utils.Range;
+
+public class DefaultBlameManagerTest extends AbstractGitTest {
+
+	private static final int REVISIONS = 200;
+
+	private File infoDir;
+
+	private DefaultBlameManager blameManager;
+
+	private Project project;
+
+	private List<ObjectId> commitIds;
+
+	private int blameCommands;
+
+	@Override
+	protected void setup() {
+		super.setup();
+
+		infoDir = FileUtils.createTempDir();
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectInfoDir(Mockito.anyLong())).thenReturn(infoDir);
+		blameManager = new DefaultBlameManager(storageManager) {
+
+			@Override
+			protected BlameCommit[] calculate(Project project, ObjectId commitId, String file) {
+				blameCommands++;
+				return super.calculate(project, commitId, file);
+			}
+			
+		};
+
+		project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		Mockito.when(project.getRepository()).thenReturn(git.getRepository());
+		Mockito.when(project.getGitDir()).thenReturn(git.getRepository().getDirectory());
+
+		/*
+		 * Generate history of a file with lines modified, inserted and removed at random
+		 * positions. Some revisions only touch another file to exercise commits not changing
+		 * the blamed file. Braces and blank lines repeat a lot as in source files, so that 
+		 * diff of some revisions is ambiguous
+		 */
+		Random random = new Random(1);
+		List<String> lines = new ArrayList<>();
+		int lineSerial = 0;
+		commitIds = new ArrayList<>();
+		for (int i=0; i<REVISIONS; i++) {
+			if (i != 0 && random.nextInt(4) == 0) {
+				addFileAndCommit("other", "revision " + i + "\n", "revision " + i);
+			} else {
+				int operations = 1 + random.nextInt(5);
+				for (int j=0; j<operations; j++) {
+					int position = lines.isEmpty()? 0: random.nextInt(lines.size());
+					int operation = lines.isEmpty()? 1: random.nextInt(3);
+					if (operation == 0) {
+						lines.set(position, newLine(random, lineSerial++));
+					} else if (operation == 1) {
+						int count = 1 + random.nextInt(4);
+						for (int k=0; k<count; k++)
+							lines.add(position, newLine(random, lineSerial++));
+					} else if (lines.size() > 1) {
+						lines.remove(position);
+					}
+				}
+				addFileAndCommit("file", Joiner.on("\n").join(lines) + "\n", "revision " + i);
+			}
+			try {
+				commitIds.add(git.getRepository().resolve("master"));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private String newLine(Random random, int lineSerial) {
+		switch (random.nextInt(8)) {
+		case 0:
+		case 1:
+			return "}";
+		case 2:
+			return "{";
+		case 3:
+			return "";
+		default:
+			return "line " + lineSerial;
+		}
+	}
+
+	@Override
+	protected void teardown() {
+		blameManager.removeEnv("1");
+		FileUtils.deleteDir(infoDir);
+		super.teardown();
+	}
+
+	private Map<String, String> getBlameOfCommand(ObjectId commitId, Range range) {
+		return toMap(new BlameCommand(git.getRepository().getDirectory())
+				.commitHash(commitId.name())
+				.file("file")
+				.range(range)
+				.call());
+	}
+
+	private Map<String, String> toMap(Collection<BlameBlock> blocks) {
+		Map<String, String> map = new TreeMap<>();
+		for (BlameBlock block: blocks)
+			map.put(block.getCommit().getHash(), block.toString());
+		return map;
+	}
+
+	@Test
+	public void shouldMatchBlameOfCommand() {
+		// Latest revision first, so that it is derived from blame of an earlier revision
+		ObjectId latestId = commitIds.get(REVISIONS-1);
+		assertEquals(getBlameOfCommand(latestId, null),
+				toMap(blameManager.getBlame(project, latestId, "file", null)));
+
+		for (ObjectId commitId: commitIds) {
+			assertEquals(commitId.name(), getBlameOfCommand(commitId, null),
+					toMap(blameManager.getBlame(project, commitId, "file", null)));
+		}
+
+		// Blame of stored revisions should be read as is
+		for (ObjectId commitId: commitIds) {
+			assertEquals(commitId.name(), getBlameOfCommand(commitId, null),
+					toMap(blameManager.getBlame(project, commitId, "file", null)));
+		}
+	}
+
+	@Test
+	public void shouldRunBlameCommandAtMostOnce() {
+		// Latest revision first, so that no stored blame is found within derivation depth
+		for (int i=REVISIONS-1; i>=0; i--) {
+			int blameCommandsBefore = blameCommands;
+			blameManager.getBlame(project, commitIds.get(i), "file", null);
+			assertTrue(blameCommands - blameCommandsBefore <= 1);
+		}
+
+		// Blame of stored revisions should be read as is
+		int blameCommandsBefore = blameCommands;
+		for (ObjectId commitId: commitIds)
+			blameManager.getBlame(project, commitId, "file", null);
+		assertEquals(blameCommandsBefore, blameCommands);
+	}
+
+	@Test
+	public void shouldMatchBlameOfCommandInRange() {
+		for (int i=REVISIONS-1; i>=REVISIONS/2; i-=10) {
+			ObjectId commitId = commitIds.get(i);
+			Range range = new Range(3, 12);
+			assertEquals(commitId.name(), getBlameOfCommand(commitId, range),
+					toMap(blameManager.getBlame(project, commitId, "file", range)));
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package io.onedev.server.manager.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.launcher.loader.ListenerRegistry;
+import io.onedev.server.manager.BatchWorkManager;
+import io.onedev.server.manager.IssueManager;
+import io.onedev.server.manager.ProjectManager;
+import io.onedev.server.manager.StorageManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.User;
+import io.onedev.server.persistence.UnitOfWork;
+import io.onedev.server.util.facade.ProjectFacade;
+import io.onedev.server.util.facade.UserFacade;
+import io.onedev.utils.FileUtils;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/*
+ * Synthetic store populated here is also used by CommitInfoBenchmark
+ */
+public class DefaultCommitInfoManagerTest {
+
+	private static final int USERS = 200;
+	
+	private static final int DIRS = 50;
+	
+	private static final int FILES_PER_DIR = 20;
+	
+	private File infoDir;
+	
+	DefaultCommitInfoManager commitInfoManager;
+	
+	ProjectFacade project;
+	
+	List<UserFacade> users;
+	
+	@Before
+	public void before() {
+		infoDir = FileUtils.createTempDir();
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectInfoDir(Mockito.anyLong())).thenReturn(infoDir);
+		commitInfoManager = new DefaultCommitInfoManager(Mockito.mock(ProjectManager.class), storageManager, 
+				Mockito.mock(BatchWorkManager.class), Mockito.mock(UnitOfWork.class), 
+				Mockito.mock(ExecutorService.class), Mockito.mock(ListenerRegistry.class), 
+				Mockito.mock(IssueManager.class));
+		
+		Project project = new Project();
+		project.setId(1L);
+		this.project = new ProjectFacade(project);
+		
+		users = new ArrayList<>();
+		for (int i=0; i<USERS; i++) {
+			User user = new User();
+			user.setId((long)i);
+			user.setEmail("user" + i + "@example.com");
+			users.add(new UserFacade(user));
+		}
+		
+		/*
+		 * Populate a synthetic store: each user edits files in a few directories, and a 
+		 * directory is also recorded as edited when any file inside it is edited 
+		 */
+		Environment env = commitInfoManager.getEnv("1");
+		Store emailToIndexStore = commitInfoManager.getStore(env, "emailToIndex");
+		Store pathToIndexStore = commitInfoManager.getStore(env, "pathToIndex");
+		Store editsStore = commitInfoManager.getStore(env, "edits");
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				for (int i=0; i<USERS; i++) {
+					commitInfoManager.writeInt(emailToIndexStore, txn, 
+							new AbstractEnvironmentManager.StringByteIterable(users.get(i).getEmail()), i);
+				}
+				int pathIndex = 0;
+				Map<String, Integer> pathIndexes = new HashMap<>();
+				for (int i=0; i<DIRS; i++) {
+					String dir = "dir" + i;
+					pathIndexes.put(dir, pathIndex++);
+					for (int j=0; j<FILES_PER_DIR; j++) 
+						pathIndexes.put(dir + "/file" + j, pathIndex++);
+				}
+				pathIndexes.put("", pathIndex++);
+				for (Map.Entry<String, Integer> entry: pathIndexes.entrySet()) {
+					commitInfoManager.writeInt(pathToIndexStore, txn, 
+							new AbstractEnvironmentManager.StringByteIterable(entry.getKey()), entry.getValue());
+				}
+				for (int i=0; i<USERS; i++) {
+					for (int j=0; j<FILES_PER_DIR; j++) {
+						// Leave file0 of each directory unedited to exercise ancestor fallback
+						if (j != 0 && (i+j) % 7 == 0) {
+							int dir = (i+j) % DIRS;
+							writeEdits(txn, i, pathIndexes.get("dir" + dir + "/file" + j), i+j);
+							writeEdits(txn, i, pathIndexes.get("dir" + dir), i+j);
+							writeEdits(txn, i, pathIndexes.get(""), i+j);
+						}
+					}
+				}
+			}
+
+			private void writeEdits(Transaction txn, int userIndex, int pathIndex, int edits) {
+				long editsKey = (userIndex<<32)|pathIndex;
+				AbstractEnvironmentManager.LongByteIterable key = 
+						new AbstractEnvironmentManager.LongByteIterable(editsKey);
+				int existing = commitInfoManager.readInt(editsStore, txn, key, 0);
+				commitInfoManager.writeInt(editsStore, txn, key, existing + edits);
+			}
+			
+		});
+	}
+	
+	@After
+	public void after() {
+		commitInfoManager.removeEnv("1");
+		FileUtils.deleteDir(infoDir);
+	}
+	
+	Map<String, Integer> getPathWeights() {
+		Map<String, Integer> pathWeights = new LinkedHashMap<>();
+		for (int i=0; i<100; i++) 
+			pathWeights.put("dir" + (i%DIRS) + "/file" + (i%FILES_PER_DIR), i+1);
+		pathWeights.put("newdir/newfile", 5);
+		return pathWeights;
+	}
+	
+	/*
+	 * Contributions calculated the way reviewer suggestion did before, with one lookup per user and path 
+	 */
+	Map<Long, Long> getContributionsOneByOne(Map<String, Integer> pathWeights) {
+		Map<Long, Long> contributions = new HashMap<>();
+		for (UserFacade user: users)
+			contributions.put(user.getId(), 0L);
+		for (Map.Entry<String, Integer> entry: pathWeights.entrySet()) {
+			String path = entry.getKey();
+			int addedEdits = addContributions(contributions, path, entry.getValue());
+			while (addedEdits == 0) {
+				if (path.contains("/")) {
+					path = path.substring(0, path.lastIndexOf('/'));
+					addedEdits = addContributions(contributions, path, entry.getValue());
+				} else {
+					addContributions(contributions, "", entry.getValue());
+					break;
+				}
+			}
+		}
+		return contributions;
+	}
+	
+	private int addContributions(Map<Long, Long> contributions, String path, int weight) {
+		int addedEdits = 0;
+		for (UserFacade user: users) {
+			int edits = commitInfoManager.getEdits(project, user, path);
+			contributions.put(user.getId(), contributions.get(user.getId()) + weight*edits);
+			addedEdits += edits;
+		}
+		return addedEdits;
+	}
+	
+	@Test
+	public void shouldMatchContributionsCalculatedOneByOne() {
+		Map<String, Integer> pathWeights = getPathWeights();
+		assertEquals(getContributionsOneByOne(pathWeights), 
+				commitInfoManager.getContributions(project, users, pathWeights));
+	}
+	
+}
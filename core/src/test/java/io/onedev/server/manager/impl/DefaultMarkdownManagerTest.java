@@ -0,0 +1,59 @@
+package io.onedev.server.manager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashSet;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.manager.CacheManager;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.dao.Dao;
+
+public class DefaultMarkdownManagerTest {
+
+	private DefaultMarkdownManager newManager() {
+		return new DefaultMarkdownManager(Mockito.mock(Dao.class), Mockito.mock(CacheManager.class), 
+				new HashSet<>(), new HashSet<>());
+	}
+	
+	@Test
+	public void shouldReuseRenderedHtml() {
+		DefaultMarkdownManager markdownManager = newManager();
+		String rendered = markdownManager.render("# hello\n\n| a | b |\n|---|---|\n| 1 | 2 |");
+		assertSame(rendered, markdownManager.render("# hello\n\n| a | b |\n|---|---|\n| 1 | 2 |"));
+		assertEquals("<p><strong>bold</strong></p>\n", markdownManager.render("**bold**"));
+	}
+	
+	@Test
+	public void shouldReuseProcessedHtml() {
+		DefaultMarkdownManager markdownManager = newManager();
+		String rendered = markdownManager.render("some *text*");
+		String processed = markdownManager.process(null, rendered, null);
+		assertSame(processed, markdownManager.process(null, rendered, null));
+		assertEquals("1", markdownManager.getMetrics().get("Process Hits"));
+	}
+	
+	@Test
+	public void shouldInvalidateProcessedHtmlOnlyWithReferencedCommits() {
+		DefaultMarkdownManager markdownManager = newManager();
+		Project project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		String plain = markdownManager.render("some *text*");
+		String withCommit = markdownManager.render("fixed in " + ObjectId.zeroId().name().replace('0', 'a'));
+		markdownManager.process(project, plain, null);
+		markdownManager.process(project, withCommit, null);
+		
+		markdownManager.on(new RefUpdated(project, "refs/heads/master", ObjectId.zeroId(), 
+				ObjectId.fromString("1111111111111111111111111111111111111111")));
+		markdownManager.process(project, plain, null);
+		assertEquals("1", markdownManager.getMetrics().get("Process Hits"));
+		markdownManager.process(project, withCommit, null);
+		assertEquals("1", markdownManager.getMetrics().get("Process Hits"));
+	}
+	
+}
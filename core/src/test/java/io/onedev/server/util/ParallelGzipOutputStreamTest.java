@@ -0,0 +1,58 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void before() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void after() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void shouldDecompressToOriginalData() throws IOException {
+		Random random = new Random(1);
+		for (int size: new int[] {0, 1, 1000, 128*1024, 128*1024+1, 1000000}) {
+			byte[] data = new byte[size];
+			for (int i=0; i<size; i++)
+				data[i] = (byte) ('a' + random.nextInt(10));
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (OutputStream os = new ParallelGzipOutputStream(baos, executor, 8)) {
+				int offset = 0;
+				while (offset < size) {
+					int length = Math.min(size-offset, 1+random.nextInt(70000));
+					os.write(data, offset, length);
+					offset += length;
+				}
+			}
+
+			try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+				assertArrayEquals(data, IOUtils.toByteArray(is));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package io.onedev.server.util.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+public class SequenceDiffTest {
+
+	/*
+	 * Generate new lines by modifying, inserting and removing lines at random positions
+	 */
+	private List<String> modify(List<String> lines, int operations, Random random) {
+		List<String> newLines = new ArrayList<>(lines);
+		for (int i=0; i<operations; i++) {
+			int position = newLines.isEmpty()? 0: random.nextInt(newLines.size());
+			int operation = newLines.isEmpty()? 1: random.nextInt(3);
+			if (operation == 0) {
+				newLines.set(position, newLine(random));
+			} else if (operation == 1) {
+				int count = 1 + random.nextInt(5);
+				for (int j=0; j<count; j++)
+					newLines.add(position, newLine(random));
+			} else {
+				int count = Math.min(1 + random.nextInt(5), newLines.size() - position);
+				for (int j=0; j<count; j++)
+					newLines.remove(position);
+			}
+		}
+		return newLines;
+	}
+
+	// Braces and blank lines repeat a lot as in source files
+	private String newLine(Random random) {
+		if (random.nextInt(4) == 0)
+			return "}";
+		else if (random.nextInt(4) == 0)
+			return "";
+		else
+			return "line " + random.nextLong();
+	}
+
+	private List<String> newLines(int count, Random random) {
+		List<String> lines = new ArrayList<>();
+		for (int i=0; i<count; i++)
+			lines.add(newLine(random));
+		return lines;
+	}
+
+	private void assertDiffBlocks(List<String> oldLines, List<String> newLines, List<DiffBlock<String>> diffBlocks) {
+		List<String> rebuiltOldLines = new ArrayList<>();
+		List<String> rebuiltNewLines = new ArrayList<>();
+		DiffBlock<String> lastBlock = null;
+		for (DiffBlock<String> block: diffBlocks) {
+			assertEquals(rebuiltOldLines.size(), block.getOldStart());
+			assertEquals(rebuiltNewLines.size(), block.getNewStart());
+			if (lastBlock != null) {
+				assertNotEquals(lastBlock.getOperation(), block.getOperation());
+				// Deleted lines should always be displayed before inserted lines
+				if (lastBlock.getOperation() == Operation.INSERT)
+					assertNotEquals(Operation.DELETE, block.getOperation());
+			}
+			if (block.getOperation() != Operation.INSERT)
+				rebuiltOldLines.addAll(block.getUnits());
+			if (block.getOperation() != Operation.DELETE)
+				rebuiltNewLines.addAll(block.getUnits());
+			lastBlock = block;
+		}
+		assertEquals(oldLines, rebuiltOldLines);
+		assertEquals(newLines, rebuiltNewLines);
+	}
+
+	@Test
+	public void shouldRebuildOldAndNewLines() {
+		Random random = new Random(1);
+		for (int i=0; i<200; i++) {
+			List<String> oldLines = newLines(random.nextInt(200), random);
+			List<String> newLines = modify(oldLines, random.nextInt(20), random);
+			assertDiffBlocks(oldLines, newLines, SequenceDiff.diff(oldLines, newLines).getDiffBlocks());
+		}
+		assertDiffBlocks(new ArrayList<>(), new ArrayList<>(),
+				SequenceDiff.diff(new ArrayList<String>(), new ArrayList<String>()).getDiffBlocks());
+	}
+
+	@Test
+	public void shouldDiffMoreDistinctLinesThanChars() {
+		Random random = new Random(1);
+		List<String> oldLines = newLines(200000, random);
+		List<String> newLines = modify(oldLines, 100, random);
+		DiffResult<String> result = SequenceDiff.diff(oldLines, newLines);
+		assertFalse(result.isTimedOut());
+		List<DiffBlock<String>> diffBlocks = result.getDiffBlocks();
+		assertDiffBlocks(oldLines, newLines, diffBlocks);
+
+		int changedLines = 0;
+		for (DiffBlock<String> block: diffBlocks) {
+			if (block.getOperation() != Operation.EQUAL)
+				changedLines += block.getUnits().size();
+		}
+		// Each operation modifies, inserts or removes at most 5 lines
+		assertTrue(changedLines <= 100*10);
+	}
+
+	@Test
+	public void shouldBoundDiffOfRepeatedLines() {
+		// Few distinct lines make histogram diff fall back to Myers diff for the whole region
+		Random random = new Random(1);
+		List<String> oldLines = new ArrayList<>();
+		List<String> newLines = new ArrayList<>();
+		for (int i=0; i<50000; i++) {
+			oldLines.add(String.valueOf(random.nextInt(3)));
+			newLines.add(String.valueOf(random.nextInt(3)));
+		}
+		long time = System.currentTimeMillis();
+		List<DiffBlock<String>> diffBlocks = SequenceDiff.diff(oldLines, newLines).getDiffBlocks();
+		assertTrue(System.currentTimeMillis() - time < 10000);
+		assertDiffBlocks(oldLines, newLines, diffBlocks);
+	}
+
+}
@@ -0,0 +1,169 @@
+package io.onedev.server.util.mail;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.model.support.setting.MailSetting;
+
+public class MailDispatcherTest {
+
+	private ServerSocket serverSocket;
+	
+	private final AtomicInteger connections = new AtomicInteger(0);
+	
+	private final List<String> messages = new CopyOnWriteArrayList<>();
+	
+	private MailSetting mailSetting;
+	
+	@Before
+	public void before() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						connections.incrementAndGet();
+						new Thread(new Runnable() {
+
+							@Override
+							public void run() {
+								serve(socket);
+							}
+							
+						}).start();
+					} catch (IOException e) {
+					}
+				}
+			}
+			
+		});
+		thread.setDaemon(true);
+		thread.start();
+		
+		mailSetting = new MailSetting();
+		mailSetting.setSmtpHost("127.0.0.1");
+		mailSetting.setSmtpPort(serverSocket.getLocalPort());
+		mailSetting.setSenderAddress("onedev@example.com");
+	}
+	
+	/*
+	 * A minimal SMTP server accepting all messages
+	 */
+	private void serve(Socket socket) {
+		try (	BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)) {
+			writer.print("220 localhost SMTP stub\r\n");
+			writer.flush();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String command = line.toUpperCase();
+				if (command.startsWith("DATA")) {
+					writer.print("354 End data with <CR><LF>.<CR><LF>\r\n");
+					writer.flush();
+					StringBuilder data = new StringBuilder();
+					while ((line = reader.readLine()) != null && !line.equals(".")) 
+						data.append(line).append("\n");
+					messages.add(data.toString());
+					writer.print("250 OK\r\n");
+				} else if (command.startsWith("QUIT")) {
+					writer.print("221 Bye\r\n");
+					writer.flush();
+					break;
+				} else {
+					writer.print("250 OK\r\n");
+				}
+				writer.flush();
+			}
+			socket.close();
+		} catch (IOException e) {
+		}
+	}
+	
+	@After
+	public void after() throws IOException {
+		serverSocket.close();
+	}
+	
+	private MailDispatcher newDispatcher(long digestWindow) {
+		return new MailDispatcher(new Supplier<MailSetting>() {
+
+			@Override
+			public MailSetting get() {
+				return mailSetting;
+			}
+			
+		}, digestWindow, 0);
+	}
+	
+	private void waitForMessages(int count) throws InterruptedException {
+		long time = System.currentTimeMillis();
+		while (messages.size() < count && System.currentTimeMillis()-time < 10000)
+			Thread.sleep(10);
+	}
+	
+	@Test
+	public void shouldReuseTransport() throws Exception {
+		MailDispatcher dispatcher = newDispatcher(0);
+		dispatcher.start();
+		try {
+			for (int i=0; i<3; i++)
+				dispatcher.dispatch(Lists.newArrayList("user" + i + "@example.com"), "subject" + i, "body" + i, null);
+			waitForMessages(3);
+			assertEquals(3, messages.size());
+			assertEquals(1, connections.get());
+		} finally {
+			dispatcher.stop();
+		}
+	}
+	
+	@Test
+	public void shouldMergeDigests() throws Exception {
+		MailDispatcher dispatcher = newDispatcher(500);
+		dispatcher.start();
+		try {
+			dispatcher.dispatch(Lists.newArrayList("user1@example.com", "user2@example.com"), 
+					"New activities in issue #1", "visit issue 1", "issue-1");
+			dispatcher.dispatch(Lists.newArrayList("user1@example.com"), 
+					"New activities in issue #1", "visit issue 1", "issue-1");
+			dispatcher.dispatch(Lists.newArrayList("user1@example.com"), 
+					"New activities in issue #2", "visit issue 2", "issue-2");
+			waitForMessages(3);
+			Thread.sleep(200);
+			assertEquals(3, messages.size());
+			assertEquals("1", dispatcher.getMetrics().get("Merged Mails"));
+		} finally {
+			dispatcher.stop();
+		}
+	}
+	
+	@Test
+	public void shouldSendHeldDigestsWhenStopped() throws Exception {
+		MailDispatcher dispatcher = newDispatcher(60000);
+		dispatcher.start();
+		dispatcher.dispatch(Lists.newArrayList("user1@example.com"), "subject", "body", "issue-1");
+		dispatcher.stop();
+		assertEquals(1, messages.size());
+	}
+	
+}
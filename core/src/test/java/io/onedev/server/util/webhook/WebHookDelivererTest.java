@@ -0,0 +1,157 @@
+package io.onedev.server.util.webhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.onedev.server.model.support.WebHookDelivery;
+
+public class WebHookDelivererTest {
+
+	private HttpServer server;
+	
+	private String postUrl;
+	
+	private volatile HttpHandler handler;
+	
+	private final List<WebHookDelivery> deliveries = new CopyOnWriteArrayList<>();
+	
+	private CountDownLatch latch;
+	
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/hook", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handler.handle(exchange);
+			}
+			
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		postUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+	}
+	
+	@After
+	public void after() {
+		server.stop(0);
+	}
+	
+	private WebHookDeliverer newDeliverer(int maxConcurrencyPerEndpoint, int expectedDeliveries) {
+		latch = new CountDownLatch(expectedDeliveries);
+		return new WebHookDeliverer(5000, maxConcurrencyPerEndpoint, 3, 10, new WebHookDeliverer.DeliveryListener() {
+
+			@Override
+			public void delivered(WebHookDeliverer.Request request, WebHookDelivery delivery) {
+				deliveries.add(delivery);
+				latch.countDown();
+			}
+			
+		});
+	}
+	
+	private static void respond(HttpExchange exchange, int statusCode) throws IOException {
+		exchange.getRequestBody().close();
+		byte[] body = "ok".getBytes();
+		exchange.sendResponseHeaders(statusCode, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+	
+	@Test
+	public void shouldRetryServerErrors() throws Exception {
+		AtomicInteger calls = new AtomicInteger(0);
+		List<String> signatures = new CopyOnWriteArrayList<>();
+		handler = new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				// Record the signature to assert on the test thread, as failures here are not reported
+				signatures.add(exchange.getRequestHeaders().getFirst(WebHookDeliverer.SIGNATURE_HEAD));
+				respond(exchange, calls.incrementAndGet()<3?500:200);
+			}
+			
+		};
+		try (WebHookDeliverer deliverer = newDeliverer(2, 1)) {
+			deliverer.deliver(new WebHookDeliverer.Request(postUrl, "secret", "ISSUE", "{}", null));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(3, deliveries.get(0).getAttempts());
+			assertEquals(3, signatures.size());
+			for (String signature: signatures)
+				assertEquals("secret", signature);
+			assertTrue(deliveries.get(0).isSuccessful());
+			assertEquals(200, deliveries.get(0).getStatusCode());
+		}
+	}
+	
+	@Test
+	public void shouldNotRetryClientErrors() throws Exception {
+		AtomicInteger calls = new AtomicInteger(0);
+		handler = new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				calls.incrementAndGet();
+				respond(exchange, 404);
+			}
+			
+		};
+		try (WebHookDeliverer deliverer = newDeliverer(2, 1)) {
+			deliverer.deliver(new WebHookDeliverer.Request(postUrl, "secret", "ISSUE", "{}", null));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(1, calls.get());
+			assertFalse(deliveries.get(0).isSuccessful());
+			assertEquals(404, deliveries.get(0).getStatusCode());
+		}
+	}
+	
+	@Test
+	public void shouldLimitConcurrencyPerEndpoint() throws Exception {
+		AtomicInteger active = new AtomicInteger(0);
+		AtomicInteger maxActive = new AtomicInteger(0);
+		handler = new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				active.decrementAndGet();
+				respond(exchange, 200);
+			}
+			
+		};
+		try (WebHookDeliverer deliverer = newDeliverer(2, 10)) {
+			for (int i=0; i<10; i++)
+				deliverer.deliver(new WebHookDeliverer.Request(postUrl, "secret", "ISSUE", "{}", null));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(10, deliveries.size());
+			assertTrue(maxActive.get() <= 2);
+			assertEquals(0, deliverer.getPendingCount());
+		}
+	}
+	
+}
@@ -0,0 +1,84 @@
+package io.onedev.server.web.editable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.onedev.server.web.editable.annotation.Editable;
+
+public class BeanDescriptorTest {
+
+	@Test
+	public void shouldSortAndExcludeProperties() {
+		BeanDescriptor descriptor = new BeanDescriptor(TestBean.class);
+		List<PropertyDescriptor> properties = descriptor.getPropertyDescriptors();
+		assertEquals(3, properties.size());
+		assertEquals("name", properties.get(0).getPropertyName());
+		assertEquals("Age of Person", properties.get(1).getDisplayName());
+		assertEquals("id", properties.get(2).getPropertyName());
+		assertTrue(properties.get(2).isPropertyExcluded());
+	}
+	
+	@Test
+	public void shouldAccessPropertiesThroughCachedHandles() {
+		TestBean bean = new TestBean();
+		BeanDescriptor descriptor = new BeanDescriptor(TestBean.class);
+		descriptor.getPropertyDescriptor("name").setPropertyValue(bean, "robin");
+		descriptor.getPropertyDescriptor("age").setPropertyValue(bean, 10);
+		assertEquals("robin", bean.getName());
+		assertEquals(10, descriptor.getPropertyDescriptor("age").getPropertyValue(bean));
+		
+		TestBean copy = new TestBean();
+		descriptor.copyProperties(bean, copy);
+		assertEquals("robin", copy.getName());
+		assertEquals(10, copy.getAge());
+	}
+	
+	@Test
+	public void shouldReintrospectAfterInvalidation() {
+		BeanIntrospector introspector = BeanIntrospector.of(TestBean.class);
+		assertSame(introspector, BeanIntrospector.of(TestBean.class));
+		BeanIntrospector.invalidate(TestBean.class);
+		assertNotSame(introspector, BeanIntrospector.of(TestBean.class));
+	}
+	
+	public static class TestBean implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+		
+		private int age;
+		
+		@Editable(order=100)
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		@Editable(name="Age of Person", order=200)
+		public int getAge() {
+			return age;
+		}
+
+		public void setAge(int age) {
+			this.age = age;
+		}
+		
+		@Editable(order=300)
+		public Long getId() {
+			return 1L;
+		}
+		
+	}
+	
+}
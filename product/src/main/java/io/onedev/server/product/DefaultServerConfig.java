@@ -23,9 +23,25 @@ public class DefaultServerConfig implements ServerConfig {
 	
 	private static final String PROP_KEYSTOREKEYPASSWORD = "keystoreKeyPassword";
 	
+	private static final String PROP_MERGEPREVIEWCONCURRENCY = "mergePreviewConcurrency";
+	
+	private static final String PROP_BLOBCACHESIZE = "blobCacheSize";
+	
+	private static final String PROP_DIFFCACHESIZE = "diffCacheSize";
+	
+	private static final String PROP_ARCHIVECACHESIZE = "archiveCacheSize";
+	
 	private int httpPort;
 	
 	private int sessionTimeout;
+	
+	private int mergePreviewConcurrency;
+	
+	private int blobCacheSize;
+	
+	private int diffCacheSize;
+	
+	private int archiveCacheSize;
 
 	private SslConfig sslConfig;
 	
@@ -79,6 +95,30 @@ public class DefaultServerConfig implements ServerConfig {
 		else
 			throw new RuntimeException("sessionTimeout is not specified.");
 		
+		String mergePreviewConcurrencyStr = props.getProperty(PROP_MERGEPREVIEWCONCURRENCY);
+		if (StringUtils.isNotBlank(mergePreviewConcurrencyStr))
+			mergePreviewConcurrency = Integer.parseInt(mergePreviewConcurrencyStr.trim());
+		else
+			mergePreviewConcurrency = Runtime.getRuntime().availableProcessors();
+		
+		String blobCacheSizeStr = props.getProperty(PROP_BLOBCACHESIZE);
+		if (StringUtils.isNotBlank(blobCacheSizeStr))
+			blobCacheSize = Integer.parseInt(blobCacheSizeStr.trim());
+		else
+			blobCacheSize = (int) (Runtime.getRuntime().maxMemory() / 16 / 1024 / 1024);
+		
+		String diffCacheSizeStr = props.getProperty(PROP_DIFFCACHESIZE);
+		if (StringUtils.isNotBlank(diffCacheSizeStr))
+			diffCacheSize = Integer.parseInt(diffCacheSizeStr.trim());
+		else
+			diffCacheSize = (int) (Runtime.getRuntime().maxMemory() / 16 / 1024 / 1024);
+		
+		String archiveCacheSizeStr = props.getProperty(PROP_ARCHIVECACHESIZE);
+		if (StringUtils.isNotBlank(archiveCacheSizeStr))
+			archiveCacheSize = Integer.parseInt(archiveCacheSizeStr.trim());
+		else
+			archiveCacheSize = 1024;
+		
 	}
 	
 	@Override
@@ -96,4 +136,24 @@ public class DefaultServerConfig implements ServerConfig {
 		return sessionTimeout;
 	}
 
+	@Override
+	public int getMergePreviewConcurrency() {
+		return mergePreviewConcurrency;
+	}
+
+	@Override
+	public int getBlobCacheSize() {
+		return blobCacheSize;
+	}
+
+	@Override
+	public int getDiffCacheSize() {
+		return diffCacheSize;
+	}
+
+	@Override
+	public int getArchiveCacheSize() {
+		return archiveCacheSize;
+	}
+
 }